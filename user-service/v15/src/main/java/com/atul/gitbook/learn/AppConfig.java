@@ -1,12 +1,21 @@
 package com.atul.gitbook.learn;
 
+import com.atul.gitbook.learn.journal.JournalConfig;
 import com.atul.gitbook.learn.postgres.RepoConfig;
 import com.atul.gitbook.learn.postgres.RepositoryJdbcDaoSupport;
 import com.atul.gitbook.learn.users.models.User;
 import com.atul.gitbook.learn.users.service.IUserRepository;
 import com.atul.gitbook.learn.users.service.IUserService;
+import com.atul.gitbook.learn.users.service.impl.DurableInMemoryRepository;
+import com.atul.gitbook.learn.users.service.impl.GroupCommitRepository;
+import com.atul.gitbook.learn.users.service.impl.InMemoryRepository;
+import com.atul.gitbook.learn.users.service.impl.OffHeapRepository;
 import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import com.atul.gitbook.learn.users.service.impl.ShardedRepository;
 import com.atul.gitbook.learn.users.service.impl.UserService;
+import com.atul.gitbook.learn.users.service.impl.VersionedRepository;
+import com.atul.gitbook.learn.users.service.impl.WriteBehindRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,6 +23,7 @@ import org.springframework.context.annotation.Import;
 import org.springframework.jdbc.core.RowMapper;
 
 import javax.sql.DataSource;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.util.UUID;
 
@@ -27,17 +37,83 @@ public class AppConfig {
     }
 
     @Bean
-    IUserRepository configureUserRepository(RepositoryJdbcDaoSupport jdbcDaoSupport,
-                                            RowMapper<User> rowMapper) {
-        return new PostgresRepository(jdbcDaoSupport, rowMapper);
+    IUserRepository configureUserRepository(@Value("${repository.user.type}") String repositoryType,
+                                            @Value("${repository.user.offheap.slab.size}") int slabSize,
+                                            @Value("${repository.user.shards}") int shardCount,
+                                            @Value("${repository.user.typed.writes}") boolean typedWrites,
+                                            @Value("${repository.user.write.behind.window.ms}") long writeBehindWindowMillis,
+                                            @Value("${repository.user.write.behind.max.pending}") int writeBehindMaxPending,
+                                            @Value("${repository.user.group.commit.delay.us}") long groupCommitDelayMicros,
+                                            @Value("${repository.user.group.commit.batch}") int groupCommitBatchSize,
+                                            RepositoryJdbcDaoSupport jdbcDaoSupport,
+                                            RowMapper<User> rowMapper,
+                                            JournalConfig journalConfig,
+                                            MeterRegistry meterRegistry) {
+        switch (repositoryType) {
+            case "postgres":
+                IUserRepository repository = new PostgresRepository(jdbcDaoSupport, rowMapper, typedWrites);
+                if (groupCommitDelayMicros > 0)
+                    repository = new GroupCommitRepository(repository, groupCommitDelayMicros, groupCommitBatchSize);
+                if (writeBehindWindowMillis > 0)
+                    repository = new WriteBehindRepository(repository, writeBehindWindowMillis, writeBehindMaxPending, meterRegistry);
+                return repository;
+            case "in_memory":
+                return new InMemoryRepository();
+            case "off_heap":
+                return new OffHeapRepository(slabSize);
+            case "durable_in_memory":
+                return new DurableInMemoryRepository(journalConfig);
+            case "versioned":
+                return new VersionedRepository();
+            case "sharded":
+                return new ShardedRepository(shardCount);
+            default:
+                throw new IllegalArgumentException("Unknown user repository type: " + repositoryType);
+        }
+    }
+
+    @Bean
+    JournalConfig configureJournalConfig(@Value("${repository.user.journal.directory}") String directory,
+                                         @Value("${repository.user.journal.segment.size}") int segmentSize,
+                                         @Value("${repository.user.journal.fsync.batch}") int fsyncBatchSize,
+                                         @Value("${repository.user.journal.fsync.interval.ms}") long fsyncIntervalMillis,
+                                         @Value("${repository.user.journal.snapshot.interval.seconds}") long snapshotIntervalSeconds) {
+        return new JournalConfig(Paths.get(directory), segmentSize, fsyncBatchSize, fsyncIntervalMillis, snapshotIntervalSeconds);
     }
 
     @Bean
     RepoConfig configureRepoConfig(@Value("${function.user.create}") String createUserSproc,
                                    @Value("${function.user.get}") String getUserSproc,
                                    @Value("${function.user.update}") String updateUserSproc,
-                                   @Value("${function.user.delete}") String deleteUserSproc) {
-        return new RepoConfig(createUserSproc, getUserSproc, updateUserSproc, deleteUserSproc);
+                                   @Value("${function.user.delete}") String deleteUserSproc,
+                                   @Value("${function.users.create}") String createUsersSproc,
+                                   @Value("${function.user.create.typed}") String createUserTypedSproc,
+                                   @Value("${function.user.update.typed}") String updateUserTypedSproc,
+                                   @Value("${function.users.get}") String getUsersSproc,
+                                   @Value("${function.users.page}") String pageUsersSproc,
+                                   @Value("${function.users.export}") String exportUsersSproc,
+                                   @Value("${function.user.update.if.version}") String updateUserIfVersionSproc,
+                                   @Value("${function.user.update.to.version}") String updateUserToVersionSproc,
+                                   @Value("${function.users.get.by.email}") String getUsersByEmailSproc,
+                                   @Value("${function.users.get.by.phone}") String getUsersByPhoneSproc,
+                                   @Value("${function.users.search}") String searchUsersSproc) {
+        return RepoConfig.builder()
+                .createSproc(createUserSproc)
+                .getSproc(getUserSproc)
+                .updateSproc(updateUserSproc)
+                .deleteSproc(deleteUserSproc)
+                .createAllSproc(createUsersSproc)
+                .createTypedSproc(createUserTypedSproc)
+                .updateTypedSproc(updateUserTypedSproc)
+                .getAllSproc(getUsersSproc)
+                .pageSproc(pageUsersSproc)
+                .exportSproc(exportUsersSproc)
+                .updateIfVersionSproc(updateUserIfVersionSproc)
+                .updateToVersionSproc(updateUserToVersionSproc)
+                .getByEmailSproc(getUsersByEmailSproc)
+                .getByPhoneSproc(getUsersByPhoneSproc)
+                .searchSproc(searchUsersSproc)
+                .build();
     }
 
     @Bean
@@ -54,7 +130,8 @@ public class AppConfig {
             final var phone = rs.getString("phone");
             final var email = rs.getString("email");
             final var administrator = rs.getBoolean("administrator");
-            return new User(id, name, phone, email, administrator);
+            final var version = rs.getLong("version");
+            return new User(id, name, phone, email, administrator, version);
         };
     }
 }
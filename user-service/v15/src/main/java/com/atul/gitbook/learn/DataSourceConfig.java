@@ -1,38 +1,141 @@
 package com.atul.gitbook.learn;
 
+import com.atul.gitbook.learn.postgres.PoolConfig;
+import com.atul.gitbook.learn.postgres.ReadRoutingDataSource;
+import com.atul.gitbook.learn.postgres.ReplicaConfig;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.MigrationVersion;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.sql.DataSource;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @Configuration
 public class DataSourceConfig {
 
+    static final String POOL_NAME = "user-pool";
+    /**
+     * The flyway placeholder for the number of hash partitions of the users table, used by the
+     * migration that partitions it.
+     */
+    public static final String USERS_PARTITION_COUNT = "users_partition_count";
+
+    /**
+     * The primary's pool, or, when replicas are configured, a {@link ReadRoutingDataSource} over
+     * the pools of the primary and of each replica. The replicas are reached with the url of the
+     * primary, with its host and port replaced.
+     */
     @Bean("data_source")
     DataSource configureDataSource(
             @Value("${database.url}") final String jdbcUrl,
             @Value("${database.username}") final String username,
             @Value("${database.password}") final String password,
-            @Value("${flyway.default.locations}") final Set<String> flywayLocations) {
-        final var dataSource = DataSourceBuilder.create()
-                .url(jdbcUrl).username(username).password(password).build();
-        configureFlyway(dataSource, flywayLocations);
-        return dataSource;
+            @Value("${flyway.default.locations}") final Set<String> flywayLocations,
+            @Value("${flyway.users.partition.count}") final int usersPartitionCount,
+            final PoolConfig poolConfig,
+            final ReplicaConfig replicaConfig,
+            final MeterRegistry meterRegistry) {
+        final var dataSource = buildDataSource(jdbcUrl, username, password, poolConfig, meterRegistry);
+        configureFlyway(dataSource, flywayLocations, usersPartitionCount);
+        if (replicaConfig.getHosts().isEmpty())
+            return dataSource;
+        final var replicas = new ArrayList<HikariDataSource>();
+        for (var host : replicaConfig.getHosts()) {
+            replicas.add(buildDataSource(replicaUrl(jdbcUrl, host), username, password,
+                    POOL_NAME + "-replica-" + replicas.size(), poolConfig, meterRegistry));
+        }
+        return new ReadRoutingDataSource(dataSource, replicas, replicaConfig);
+    }
+
+    @Bean
+    ReplicaConfig configureReplicaConfig(
+            @Value("${database.replica.hosts}") final List<String> hosts,
+            @Value("${database.replica.health.check.interval.ms}") final long healthCheckIntervalMillis,
+            @Value("${database.replica.read.your.writes.ms}") final long readYourWritesMillis) {
+        return new ReplicaConfig(hosts, healthCheckIntervalMillis, readYourWritesMillis);
+    }
+
+    @Bean
+    PoolConfig configurePoolConfig(
+            @Value("${database.pool.size.max}") final int maximumPoolSize,
+            @Value("${database.pool.size.min.idle}") final int minimumIdle,
+            @Value("${database.pool.connection.timeout.ms}") final long connectionTimeoutMillis,
+            @Value("${database.pool.idle.timeout.ms}") final long idleTimeoutMillis,
+            @Value("${database.pool.max.lifetime.ms}") final long maxLifetimeMillis,
+            @Value("${database.pool.leak.detection.threshold.ms}") final long leakDetectionThresholdMillis) {
+        return new PoolConfig(maximumPoolSize, minimumIdle, connectionTimeoutMillis, idleTimeoutMillis,
+                maxLifetimeMillis, leakDetectionThresholdMillis);
+    }
+
+    /**
+     * Builds the connection pool of the primary. See {@link #buildDataSource(String, String, String, String, PoolConfig, MeterRegistry)}.
+     */
+    static HikariDataSource buildDataSource(
+            final String jdbcUrl,
+            final String username,
+            final String password,
+            final PoolConfig poolConfig,
+            final MeterRegistry meterRegistry) {
+        return buildDataSource(jdbcUrl, username, password, POOL_NAME, poolConfig, meterRegistry);
+    }
+
+    /**
+     * Builds a connection pool. Its active, idle and pending connection counts and the time
+     * taken to acquire a connection are published to the meter registry as the
+     * {@code hikaricp.connections.*} meters, tagged with the pool name.
+     */
+    static HikariDataSource buildDataSource(
+            final String jdbcUrl,
+            final String username,
+            final String password,
+            final String poolName,
+            final PoolConfig poolConfig,
+            final MeterRegistry meterRegistry) {
+        final var config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(poolConfig.getMaximumPoolSize());
+        config.setMinimumIdle(poolConfig.getMinimumIdle());
+        config.setConnectionTimeout(poolConfig.getConnectionTimeoutMillis());
+        config.setIdleTimeout(poolConfig.getIdleTimeoutMillis());
+        config.setMaxLifetime(poolConfig.getMaxLifetimeMillis());
+        config.setLeakDetectionThreshold(poolConfig.getLeakDetectionThresholdMillis());
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * @return the jdbc url with its host and port replaced by the given ones.
+     */
+    static String replicaUrl(final String jdbcUrl, final String hostAndPort) {
+        // substring(5) strips the "jdbc:" from the front of the URI, otherwise .create() fails.
+        final var uri = URI.create(jdbcUrl.substring(5));
+        final var query = uri.getRawQuery();
+        return "jdbc:" + uri.getScheme() + "://" + hostAndPort + uri.getRawPath() + (query == null ? "" : "?" + query);
     }
 
     private static void configureFlyway(
             final DataSource dataSource,
-            final Set<String> flywayLocations) {
+            final Set<String> flywayLocations,
+            final int usersPartitionCount) {
         Flyway.configure()
                 .dataSource(dataSource)
                 .baselineOnMigrate(true)
                 .baselineVersion("0")
                 .locations(flywayLocations.toArray(new String[]{}))
+                .placeholders(Map.of(USERS_PARTITION_COUNT, String.valueOf(usersPartitionCount)))
                 .target(MigrationVersion.LATEST)
                 .validateOnMigrate(true)
                 .load()
@@ -1,7 +1,14 @@
 package com.atul.gitbook.learn;
 
+import java.util.regex.Pattern;
+
 public class Preconditions {
 
+    private static final Pattern PHONE_NUMBER_PATTERN = Pattern.compile("[0-9]{10}");
+    // Same language as "^([\\w-\\.]+){1,64}@([\\w&&[^_]]+){2,255}.[a-z]{2,}$", without the nested
+    // quantifiers that made every failed match attempt backtrack through all ways of splitting the input.
+    private static final Pattern EMAIL_PATTERN = Pattern.compile("^[\\w-\\.]+@[\\w&&[^_]]{2,}.[a-z]{2,}$");
+
     public static void validateNotNull(Object field) {
         if (field == null) {
             throw new IllegalArgumentException();
@@ -9,13 +16,13 @@ public class Preconditions {
     }
 
     public static void validatePhoneNumber(String phone) {
-        if (!phone.matches("[0-9]{10}")) {
+        if (!PHONE_NUMBER_PATTERN.matcher(phone).matches()) {
             throw new IllegalArgumentException();
         }
     }
 
     public static void validateEmail(String email) {
-        if (!email.matches("^([\\w-\\.]+){1,64}@([\\w&&[^_]]+){2,255}.[a-z]{2,}$")) {
+        if (!EMAIL_PATTERN.matcher(email).matches()) {
             throw new IllegalArgumentException();
         }
     }
@@ -0,0 +1,33 @@
+package com.atul.gitbook.learn.collections;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A growable stack of primitive {@code long}s. Not thread-safe.
+ */
+public class LongStack {
+
+    private long[] fElements = new long[16];
+    private int fSize;
+
+    public void push(long value) {
+        if (fSize == fElements.length)
+            fElements = Arrays.copyOf(fElements, fSize << 1);
+        fElements[fSize++] = value;
+    }
+
+    public long pop() {
+        if (fSize == 0)
+            throw new NoSuchElementException();
+        return fElements[--fSize];
+    }
+
+    public boolean isEmpty() {
+        return fSize == 0;
+    }
+
+    public int size() {
+        return fSize;
+    }
+}
@@ -0,0 +1,343 @@
+package com.atul.gitbook.learn.collections;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * An immutable hash array mapped trie keyed by {@link UUID}. {@link #put(UUID, Object)} and
+ * {@link #remove(UUID)} return a new map that shares every untouched node with this one, so an
+ * update copies only the path from the root to the changed entry, i.e. at most seven small arrays.
+ * <p>
+ * Since a map never changes once built, any number of threads can read it without
+ * synchronization, and holding on to a map is a consistent point-in-time snapshot. Old versions
+ * need no bookkeeping; the garbage collector reclaims their nodes once no one references them.
+ * <p>
+ * Values can't be null.
+ *
+ * @param <V> the type of the values.
+ */
+public final class PersistentUuidMap<V> {
+
+    private static final int BITS_PER_LEVEL = 5;
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    private static final PersistentUuidMap<?> EMPTY = new PersistentUuidMap<>(BitmapNode.EMPTY, 0);
+
+    private final Node fRoot;
+    private final int fSize;
+
+    private PersistentUuidMap(Node root, int size) {
+        fRoot = root;
+        fSize = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentUuidMap<V> empty() {
+        return (PersistentUuidMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return fSize;
+    }
+
+    public boolean isEmpty() {
+        return fSize == 0;
+    }
+
+    /**
+     * @return the value mapped to the key, or null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(UUID key) {
+        final var mostSigBits = key.getMostSignificantBits();
+        final var leastSigBits = key.getLeastSignificantBits();
+        final var entry = fRoot.find(UuidHashing.hash(mostSigBits, leastSigBits), 0, mostSigBits, leastSigBits);
+        return entry == null ? null : (V) entry.fValue;
+    }
+
+    public boolean containsKey(UUID key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return a map with the key mapped to the value, or this map if it already holds exactly
+     * that value.
+     */
+    public PersistentUuidMap<V> put(UUID key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("Null values can't be stored in the map.");
+        final var previous = get(key);
+        if (previous == value)
+            return this;
+        final var entry = new Entry(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+        return new PersistentUuidMap<>(fRoot.put(entry, 0), previous == null ? fSize + 1 : fSize);
+    }
+
+    /**
+     * @return a map without the key, or this map if the key is absent.
+     */
+    public PersistentUuidMap<V> remove(UUID key) {
+        final var mostSigBits = key.getMostSignificantBits();
+        final var leastSigBits = key.getLeastSignificantBits();
+        final var root = fRoot.remove(UuidHashing.hash(mostSigBits, leastSigBits), 0, mostSigBits, leastSigBits);
+        if (root == fRoot)
+            return this;
+        return new PersistentUuidMap<>(root == null ? BitmapNode.EMPTY : root, fSize - 1);
+    }
+
+    /**
+     * Passes every entry to the consumer.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<UUID, V> consumer) {
+        fRoot.forEach(entry -> consumer.accept(new UUID(entry.fMostSigBits, entry.fLeastSigBits), (V) entry.fValue));
+    }
+
+    private static final class Entry {
+
+        private final long fMostSigBits;
+        private final long fLeastSigBits;
+        private final int fHash;
+        private final Object fValue;
+
+        private Entry(long mostSigBits, long leastSigBits, Object value) {
+            fMostSigBits = mostSigBits;
+            fLeastSigBits = leastSigBits;
+            fHash = UuidHashing.hash(mostSigBits, leastSigBits);
+            fValue = value;
+        }
+
+        private boolean hasKey(long mostSigBits, long leastSigBits) {
+            return fMostSigBits == mostSigBits && fLeastSigBits == leastSigBits;
+        }
+
+        private boolean hasSameKey(Entry other) {
+            return hasKey(other.fMostSigBits, other.fLeastSigBits);
+        }
+    }
+
+    private abstract static class Node {
+
+        abstract Entry find(int hash, int shift, long mostSigBits, long leastSigBits);
+
+        abstract Node put(Entry entry, int shift);
+
+        /**
+         * @return the node without the key, this node if the key is absent, or null if the node
+         * would be left empty.
+         */
+        abstract Node remove(int hash, int shift, long mostSigBits, long leastSigBits);
+
+        /**
+         * @return the only entry of the node if it holds exactly one entry and no child nodes,
+         * else null. Such nodes are inlined into their parent to keep the trie shallow.
+         */
+        abstract Entry singleEntry();
+
+        abstract void forEach(Consumer<Entry> consumer);
+    }
+
+    /**
+     * A trie level holding up to 32 slots. The bitmap tells which slots are in use, and the
+     * array holds only those, in slot order, each either an {@link Entry} or a child {@link Node}.
+     */
+    private static final class BitmapNode extends Node {
+
+        private static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int fBitmap;
+        private final Object[] fSlots;
+
+        private BitmapNode(int bitmap, Object[] slots) {
+            fBitmap = bitmap;
+            fSlots = slots;
+        }
+
+        @Override
+        Entry find(int hash, int shift, long mostSigBits, long leastSigBits) {
+            final var bit = bit(hash, shift);
+            if ((fBitmap & bit) == 0)
+                return null;
+            final var slot = fSlots[index(bit)];
+            if (slot instanceof Entry) {
+                final var entry = (Entry) slot;
+                return entry.hasKey(mostSigBits, leastSigBits) ? entry : null;
+            }
+            return ((Node) slot).find(hash, shift + BITS_PER_LEVEL, mostSigBits, leastSigBits);
+        }
+
+        @Override
+        Node put(Entry entry, int shift) {
+            final var bit = bit(entry.fHash, shift);
+            final var index = index(bit);
+            if ((fBitmap & bit) == 0) {
+                final var slots = new Object[fSlots.length + 1];
+                System.arraycopy(fSlots, 0, slots, 0, index);
+                slots[index] = entry;
+                System.arraycopy(fSlots, index, slots, index + 1, fSlots.length - index);
+                return new BitmapNode(fBitmap | bit, slots);
+            }
+            final var slot = fSlots[index];
+            final Object replacement;
+            if (slot instanceof Entry) {
+                final var existing = (Entry) slot;
+                replacement = existing.hasSameKey(entry) ? entry : merge(existing, entry, shift + BITS_PER_LEVEL);
+            } else {
+                replacement = ((Node) slot).put(entry, shift + BITS_PER_LEVEL);
+            }
+            return withSlot(index, replacement);
+        }
+
+        @Override
+        Node remove(int hash, int shift, long mostSigBits, long leastSigBits) {
+            final var bit = bit(hash, shift);
+            if ((fBitmap & bit) == 0)
+                return this;
+            final var index = index(bit);
+            final var slot = fSlots[index];
+            if (slot instanceof Entry) {
+                if (!((Entry) slot).hasKey(mostSigBits, leastSigBits))
+                    return this;
+                return withoutSlot(index, bit);
+            }
+            final var child = (Node) slot;
+            final var newChild = child.remove(hash, shift + BITS_PER_LEVEL, mostSigBits, leastSigBits);
+            if (newChild == child)
+                return this;
+            if (newChild == null)
+                return withoutSlot(index, bit);
+            final var single = newChild.singleEntry();
+            return withSlot(index, single == null ? newChild : single);
+        }
+
+        @Override
+        Entry singleEntry() {
+            return fSlots.length == 1 && fSlots[0] instanceof Entry ? (Entry) fSlots[0] : null;
+        }
+
+        @Override
+        void forEach(Consumer<Entry> consumer) {
+            for (var slot : fSlots) {
+                if (slot instanceof Entry)
+                    consumer.accept((Entry) slot);
+                else
+                    ((Node) slot).forEach(consumer);
+            }
+        }
+
+        private BitmapNode withSlot(int index, Object slot) {
+            final var slots = fSlots.clone();
+            slots[index] = slot;
+            return new BitmapNode(fBitmap, slots);
+        }
+
+        private BitmapNode withoutSlot(int index, int bit) {
+            if (fSlots.length == 1)
+                return null;
+            final var slots = new Object[fSlots.length - 1];
+            System.arraycopy(fSlots, 0, slots, 0, index);
+            System.arraycopy(fSlots, index + 1, slots, index, slots.length - index);
+            return new BitmapNode(fBitmap & ~bit, slots);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(fBitmap & (bit - 1));
+        }
+
+        private static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & LEVEL_MASK);
+        }
+    }
+
+    /**
+     * Holds entries whose 32-bit hashes are equal, which the bitmap levels can't tell apart.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int fHash;
+        private final Entry[] fEntries;
+
+        private CollisionNode(int hash, Entry[] entries) {
+            fHash = hash;
+            fEntries = entries;
+        }
+
+        @Override
+        Entry find(int hash, int shift, long mostSigBits, long leastSigBits) {
+            if (hash != fHash)
+                return null;
+            for (var entry : fEntries) {
+                if (entry.hasKey(mostSigBits, leastSigBits))
+                    return entry;
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Entry entry, int shift) {
+            if (entry.fHash != fHash) {
+                // Push this node one level down and let the bitmap level separate the two hashes.
+                final var level = new BitmapNode(BitmapNode.bit(fHash, shift), new Object[]{this});
+                return level.put(entry, shift);
+            }
+            for (var i = 0; i < fEntries.length; i++) {
+                if (fEntries[i].hasSameKey(entry)) {
+                    final var entries = fEntries.clone();
+                    entries[i] = entry;
+                    return new CollisionNode(fHash, entries);
+                }
+            }
+            final var entries = Arrays.copyOf(fEntries, fEntries.length + 1);
+            entries[fEntries.length] = entry;
+            return new CollisionNode(fHash, entries);
+        }
+
+        @Override
+        Node remove(int hash, int shift, long mostSigBits, long leastSigBits) {
+            if (hash != fHash)
+                return this;
+            for (var i = 0; i < fEntries.length; i++) {
+                if (fEntries[i].hasKey(mostSigBits, leastSigBits)) {
+                    if (fEntries.length == 1)
+                        return null;
+                    final var entries = new Entry[fEntries.length - 1];
+                    System.arraycopy(fEntries, 0, entries, 0, i);
+                    System.arraycopy(fEntries, i + 1, entries, i, entries.length - i);
+                    return new CollisionNode(fHash, entries);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        Entry singleEntry() {
+            return fEntries.length == 1 ? fEntries[0] : null;
+        }
+
+        @Override
+        void forEach(Consumer<Entry> consumer) {
+            for (var entry : fEntries) {
+                consumer.accept(entry);
+            }
+        }
+    }
+
+    /**
+     * @return a node at the given shift holding both entries, whose keys differ.
+     */
+    private static Node merge(Entry first, Entry second, int shift) {
+        if (first.fHash == second.fHash)
+            return new CollisionNode(first.fHash, new Entry[]{first, second});
+        // The hashes differ, so they differ in some level before the shift runs past 32 bits.
+        final var firstBit = BitmapNode.bit(first.fHash, shift);
+        final var secondBit = BitmapNode.bit(second.fHash, shift);
+        if (firstBit == secondBit)
+            return new BitmapNode(firstBit, new Object[]{merge(first, second, shift + BITS_PER_LEVEL)});
+        final var slots = Integer.compareUnsigned(firstBit, secondBit) < 0
+                ? new Object[]{first, second}
+                : new Object[]{second, first};
+        return new BitmapNode(firstBit | secondBit, slots);
+    }
+}
@@ -0,0 +1,28 @@
+package com.atul.gitbook.learn.collections;
+
+import java.util.UUID;
+
+/**
+ * Hashing shared by the UUID keyed collections. Random (version 4) UUIDs are already well
+ * distributed, but ids created elsewhere may not be, so the halves are run through the
+ * MurmurHash3 finalizer before being reduced to a table slot.
+ */
+public final class UuidHashing {
+
+    private UuidHashing() {
+    }
+
+    public static int hash(UUID key) {
+        return hash(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    public static int hash(long mostSigBits, long leastSigBits) {
+        var h = mostSigBits ^ Long.rotateLeft(leastSigBits, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
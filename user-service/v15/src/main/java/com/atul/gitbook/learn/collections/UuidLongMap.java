@@ -0,0 +1,175 @@
+package com.atul.gitbook.learn.collections;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * An open-addressing hash map from a {@link UUID} to a primitive {@code long}. The keys are kept
+ * as their two {@code long} halves in parallel arrays, so neither the keys nor the values are
+ * boxed and a lookup never touches a {@link UUID} object on the heap.
+ * <p>
+ * Collisions are resolved with linear probing and removals use backward-shift deletion, so the
+ * table never accumulates tombstones. {@link #NO_VALUE} marks an empty slot and can't be stored.
+ * <p>
+ * This class is not thread-safe; callers must guard it with their own lock.
+ */
+public class UuidLongMap {
+
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] fMostSigBits;
+    private long[] fLeastSigBits;
+    private long[] fValues;
+    private int fMask;
+    private int fSize;
+    private int fResizeThreshold;
+
+    public UuidLongMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should hold without resizing.
+     */
+    public UuidLongMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * @return the value mapped to the key, or {@link #NO_VALUE} if the key is absent.
+     */
+    public long get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    public long get(long mostSigBits, long leastSigBits) {
+        var slot = UuidHashing.hash(mostSigBits, leastSigBits) & fMask;
+        while (fValues[slot] != NO_VALUE) {
+            if (fMostSigBits[slot] == mostSigBits && fLeastSigBits[slot] == leastSigBits)
+                return fValues[slot];
+            slot = (slot + 1) & fMask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * @return the previous value mapped to the key, or {@link #NO_VALUE} if the key was absent.
+     */
+    public long put(UUID key, long value) {
+        return put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    public long put(long mostSigBits, long leastSigBits, long value) {
+        if (value == NO_VALUE)
+            throw new IllegalArgumentException("NO_VALUE can't be stored in the map.");
+        var slot = UuidHashing.hash(mostSigBits, leastSigBits) & fMask;
+        while (fValues[slot] != NO_VALUE) {
+            if (fMostSigBits[slot] == mostSigBits && fLeastSigBits[slot] == leastSigBits) {
+                final var previous = fValues[slot];
+                fValues[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & fMask;
+        }
+        fMostSigBits[slot] = mostSigBits;
+        fLeastSigBits[slot] = leastSigBits;
+        fValues[slot] = value;
+        if (++fSize > fResizeThreshold)
+            allocateAndRehash(fValues.length << 1);
+        return NO_VALUE;
+    }
+
+    /**
+     * @return the value that was mapped to the key, or {@link #NO_VALUE} if the key was absent.
+     */
+    public long remove(UUID key) {
+        return remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    public long remove(long mostSigBits, long leastSigBits) {
+        var slot = UuidHashing.hash(mostSigBits, leastSigBits) & fMask;
+        while (fValues[slot] != NO_VALUE) {
+            if (fMostSigBits[slot] == mostSigBits && fLeastSigBits[slot] == leastSigBits) {
+                final var previous = fValues[slot];
+                shiftBackFrom(slot);
+                fSize--;
+                return previous;
+            }
+            slot = (slot + 1) & fMask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Passes every value to the consumer, in no particular order. The map must not be changed meanwhile.
+     */
+    public void forEachValue(LongConsumer consumer) {
+        for (var value : fValues) {
+            if (value != NO_VALUE)
+                consumer.accept(value);
+        }
+    }
+
+    /**
+     * Closes the gap left at {@code slot} by moving back every following entry of the probe run
+     * that would otherwise become unreachable.
+     */
+    private void shiftBackFrom(int slot) {
+        var gap = slot;
+        var next = (gap + 1) & fMask;
+        while (fValues[next] != NO_VALUE) {
+            final var home = UuidHashing.hash(fMostSigBits[next], fLeastSigBits[next]) & fMask;
+            // Move the entry if its home slot is not within the cyclic range (gap, next].
+            if (((next - home) & fMask) >= ((next - gap) & fMask)) {
+                fMostSigBits[gap] = fMostSigBits[next];
+                fLeastSigBits[gap] = fLeastSigBits[next];
+                fValues[gap] = fValues[next];
+                gap = next;
+            }
+            next = (next + 1) & fMask;
+        }
+        fValues[gap] = NO_VALUE;
+    }
+
+    private void allocateAndRehash(int capacity) {
+        final var mostSigBits = fMostSigBits;
+        final var leastSigBits = fLeastSigBits;
+        final var values = fValues;
+        allocate(capacity);
+        for (var i = 0; i < values.length; i++) {
+            if (values[i] != NO_VALUE) {
+                var slot = UuidHashing.hash(mostSigBits[i], leastSigBits[i]) & fMask;
+                while (fValues[slot] != NO_VALUE) {
+                    slot = (slot + 1) & fMask;
+                }
+                fMostSigBits[slot] = mostSigBits[i];
+                fLeastSigBits[slot] = leastSigBits[i];
+                fValues[slot] = values[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        fMostSigBits = new long[capacity];
+        fLeastSigBits = new long[capacity];
+        fValues = new long[capacity];
+        Arrays.fill(fValues, NO_VALUE);
+        fMask = capacity - 1;
+        fResizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        final var minimum = (long) Math.ceil(Math.max(expectedSize, DEFAULT_CAPACITY) / (double) LOAD_FACTOR);
+        if (minimum > (1 << 30))
+            throw new IllegalArgumentException("Expected size is too large: " + expectedSize);
+        return Integer.highestOneBit((int) minimum - 1) << 1;
+    }
+}
@@ -0,0 +1,232 @@
+package com.atul.gitbook.learn.collections;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * An open-addressing hash map keyed by {@link UUID}. The keys are kept as their two
+ * {@code long} halves in parallel arrays next to the values, so a lookup compares primitives
+ * instead of dereferencing and hashing a {@link UUID} object, and the map holds no per-entry node
+ * objects. It is meant for the user index of the in-memory repositories and for any cache keyed
+ * by user id.
+ * <p>
+ * Collisions are resolved with linear probing and removals use backward-shift deletion, like
+ * {@link UuidLongMap}. Values can't be null; a null value marks an empty slot.
+ * <p>
+ * This class is not thread-safe; callers must guard writes with their own lock. Reads may race
+ * with a writer as long as the caller validates them afterwards, e.g. with a
+ * {@link java.util.concurrent.locks.StampedLock} optimistic read: the arrays are swapped as one
+ * {@link Table} and probing is bounded by the capacity, so a racing {@link #get(UUID)} never
+ * throws or loops forever, but it may return a stale or wrong value until validated.
+ *
+ * @param <V> the type of the values.
+ */
+public class UuidMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private Table fTable;
+    private int fSize;
+
+    public UuidMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of entries the map should hold without resizing.
+     */
+    public UuidMap(int expectedSize) {
+        fTable = new Table(UuidLongMap.tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return fSize;
+    }
+
+    public boolean isEmpty() {
+        return fSize == 0;
+    }
+
+    /**
+     * @return the value mapped to the key, or null if the key is absent.
+     */
+    public V get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long mostSigBits, long leastSigBits) {
+        final var table = fTable;
+        final var mask = table.fMask;
+        var slot = UuidHashing.hash(mostSigBits, leastSigBits) & mask;
+        for (var probes = 0; probes <= mask; probes++) {
+            final var value = table.fValues[slot];
+            if (value == null)
+                return null;
+            if (table.fMostSigBits[slot] == mostSigBits && table.fLeastSigBits[slot] == leastSigBits)
+                return (V) value;
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(UUID key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value mapped to the key, or null if the key was absent.
+     */
+    public V put(UUID key, V value) {
+        return put(key.getMostSignificantBits(), key.getLeastSignificantBits(), value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long mostSigBits, long leastSigBits, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("Null values can't be stored in the map.");
+        final var table = fTable;
+        var slot = UuidHashing.hash(mostSigBits, leastSigBits) & table.fMask;
+        while (table.fValues[slot] != null) {
+            if (table.fMostSigBits[slot] == mostSigBits && table.fLeastSigBits[slot] == leastSigBits) {
+                final var previous = (V) table.fValues[slot];
+                table.fValues[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & table.fMask;
+        }
+        table.fMostSigBits[slot] = mostSigBits;
+        table.fLeastSigBits[slot] = leastSigBits;
+        table.fValues[slot] = value;
+        if (++fSize > table.fResizeThreshold)
+            fTable = table.rehash(table.fValues.length << 1);
+        return null;
+    }
+
+    /**
+     * Replaces the value of a present key with the result of the function.
+     *
+     * @return the new value, or null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V computeIfPresent(UUID key, BiFunction<UUID, V, V> function) {
+        final var table = fTable;
+        final var mostSigBits = key.getMostSignificantBits();
+        final var leastSigBits = key.getLeastSignificantBits();
+        var slot = UuidHashing.hash(mostSigBits, leastSigBits) & table.fMask;
+        while (table.fValues[slot] != null) {
+            if (table.fMostSigBits[slot] == mostSigBits && table.fLeastSigBits[slot] == leastSigBits) {
+                final var value = function.apply(key, (V) table.fValues[slot]);
+                if (value == null) {
+                    shiftBackFrom(table, slot);
+                    fSize--;
+                } else {
+                    table.fValues[slot] = value;
+                }
+                return value;
+            }
+            slot = (slot + 1) & table.fMask;
+        }
+        return null;
+    }
+
+    /**
+     * @return the value that was mapped to the key, or null if the key was absent.
+     */
+    public V remove(UUID key) {
+        return remove(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long mostSigBits, long leastSigBits) {
+        final var table = fTable;
+        var slot = UuidHashing.hash(mostSigBits, leastSigBits) & table.fMask;
+        while (table.fValues[slot] != null) {
+            if (table.fMostSigBits[slot] == mostSigBits && table.fLeastSigBits[slot] == leastSigBits) {
+                final var previous = (V) table.fValues[slot];
+                shiftBackFrom(table, slot);
+                fSize--;
+                return previous;
+            }
+            slot = (slot + 1) & table.fMask;
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(fTable.fValues, null);
+        fSize = 0;
+    }
+
+    /**
+     * Passes every entry to the consumer. The map must not be modified while iterating.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<UUID, V> consumer) {
+        final var table = fTable;
+        for (var i = 0; i < table.fValues.length; i++) {
+            if (table.fValues[i] != null)
+                consumer.accept(new UUID(table.fMostSigBits[i], table.fLeastSigBits[i]), (V) table.fValues[i]);
+        }
+    }
+
+    /**
+     * Closes the gap left at {@code slot} by moving back every following entry of the probe run
+     * that would otherwise become unreachable.
+     */
+    private static void shiftBackFrom(Table table, int slot) {
+        var gap = slot;
+        var next = (gap + 1) & table.fMask;
+        while (table.fValues[next] != null) {
+            final var home = UuidHashing.hash(table.fMostSigBits[next], table.fLeastSigBits[next]) & table.fMask;
+            // Move the entry if its home slot is not within the cyclic range (gap, next].
+            if (((next - home) & table.fMask) >= ((next - gap) & table.fMask)) {
+                table.fMostSigBits[gap] = table.fMostSigBits[next];
+                table.fLeastSigBits[gap] = table.fLeastSigBits[next];
+                table.fValues[gap] = table.fValues[next];
+                gap = next;
+            }
+            next = (next + 1) & table.fMask;
+        }
+        table.fValues[gap] = null;
+    }
+
+    private static final class Table {
+
+        private final long[] fMostSigBits;
+        private final long[] fLeastSigBits;
+        private final Object[] fValues;
+        private final int fMask;
+        private final int fResizeThreshold;
+
+        private Table(int capacity) {
+            fMostSigBits = new long[capacity];
+            fLeastSigBits = new long[capacity];
+            fValues = new Object[capacity];
+            fMask = capacity - 1;
+            fResizeThreshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        /**
+         * @return a new table of the given capacity holding every entry of this one.
+         */
+        private Table rehash(int capacity) {
+            final var table = new Table(capacity);
+            for (var i = 0; i < fValues.length; i++) {
+                if (fValues[i] != null) {
+                    var slot = UuidHashing.hash(fMostSigBits[i], fLeastSigBits[i]) & table.fMask;
+                    while (table.fValues[slot] != null) {
+                        slot = (slot + 1) & table.fMask;
+                    }
+                    table.fMostSigBits[slot] = fMostSigBits[i];
+                    table.fLeastSigBits[slot] = fLeastSigBits[i];
+                    table.fValues[slot] = fValues[i];
+                }
+            }
+            return table;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.atul.gitbook.learn.collections;
+
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * The order PostgreSQL sorts {@code uuid} values in: byte by byte, unsigned. {@link UUID#compareTo}
+ * compares the two halves as signed longs and so puts the ids with the top bit set first; the
+ * in-memory stores page in this order instead, so a listing is in the same order whatever the store.
+ */
+public final class UuidOrder {
+
+    public static final Comparator<UUID> COMPARATOR = UuidOrder::compare;
+
+    private UuidOrder() {
+    }
+
+    public static int compare(UUID a, UUID b) {
+        final var mostSigBits = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        if (mostSigBits != 0)
+            return mostSigBits;
+        return Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
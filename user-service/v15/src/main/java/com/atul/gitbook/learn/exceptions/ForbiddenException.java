@@ -4,6 +4,8 @@ import org.springframework.http.HttpStatus;
 
 public class ForbiddenException extends ServiceException {
 
+    private static final long serialVersionUID = 1L;
+
     public ForbiddenException(String msg) {
         super(msg, HttpStatus.FORBIDDEN);
     }
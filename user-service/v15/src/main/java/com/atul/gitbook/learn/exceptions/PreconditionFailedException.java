@@ -0,0 +1,12 @@
+package com.atul.gitbook.learn.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+public class PreconditionFailedException extends ServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PreconditionFailedException(String msg) {
+        super(msg, HttpStatus.PRECONDITION_FAILED);
+    }
+}
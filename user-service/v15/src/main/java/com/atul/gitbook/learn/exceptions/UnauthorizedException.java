@@ -4,6 +4,8 @@ import org.springframework.http.HttpStatus;
 
 public class UnauthorizedException extends ServiceException {
 
+    private static final long serialVersionUID = 1L;
+
     public UnauthorizedException(String msg) {
         super(msg, HttpStatus.UNAUTHORIZED);
     }
@@ -0,0 +1,65 @@
+package com.atul.gitbook.learn.exports;
+
+import com.atul.gitbook.learn.jackson.Serializer;
+import com.atul.gitbook.learn.jackson.Serializers;
+import com.atul.gitbook.learn.users.models.User;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Writes each user passed to it as one line of JSON, in UTF-8, through a fixed size buffer. Nothing
+ * is kept of a user once its line is buffered, so the memory used doesn't depend on how many users
+ * are written.
+ */
+public class NdjsonUserWriter implements Consumer<User>, Flushable {
+
+    private static final Serializer<User> SERIALIZER_USER = Serializers.newJsonSerializer(User.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer fWriter;
+    private long fUsers;
+
+    public NdjsonUserWriter(OutputStream out) {
+        validateNotNull(out);
+        fWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * @throws UncheckedIOException if the stream can't be written to, e.g. when the client has gone.
+     */
+    @Override
+    public void accept(User user) {
+        try {
+            fWriter.write(SERIALIZER_USER.serialize(user));
+            fWriter.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fUsers++;
+    }
+
+    /**
+     * Writes out the buffered lines.
+     */
+    @Override
+    public void flush() throws IOException {
+        fWriter.flush();
+    }
+
+    /**
+     * @return the number of users written so far.
+     */
+    public long getUsers() {
+        return fUsers;
+    }
+}
@@ -0,0 +1,80 @@
+package com.atul.gitbook.learn.imports;
+
+import com.atul.gitbook.learn.users.models.User;
+
+import java.io.Reader;
+import java.util.Iterator;
+
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Encodes users as the CSV rows read by {@code COPY ... (id, name, phone, email, administrator)
+ * FROM STDIN WITH (FORMAT csv)}. A user is taken from the iterator only when the previous row
+ * has been read, so at most one row is held at a time however many users are streamed.
+ */
+public class CopyRowReader extends Reader {
+
+    private final Iterator<User> fUsers;
+    private final StringBuilder fRow = new StringBuilder();
+    private int fPosition;
+    private long fRows;
+
+    public CopyRowReader(Iterator<User> users) {
+        validateNotNull(users);
+        fUsers = users;
+    }
+
+    /**
+     * Fills as much of the buffer as it can, so each read hands the driver many rows at once.
+     */
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        var read = 0;
+        while (read < length) {
+            if (fPosition == fRow.length() && !nextRow())
+                break;
+            final var count = Math.min(length - read, fRow.length() - fPosition);
+            fRow.getChars(fPosition, fPosition + count, buffer, offset + read);
+            fPosition += count;
+            read += count;
+        }
+        return read == 0 && length > 0 ? -1 : read;
+    }
+
+    /**
+     * @return the number of rows encoded so far.
+     */
+    public long getRows() {
+        return fRows;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private boolean nextRow() {
+        if (!fUsers.hasNext())
+            return false;
+        final var user = fUsers.next();
+        fRow.setLength(0);
+        fPosition = 0;
+        fRow.append(user.getId()).append(',');
+        appendQuoted(user.getName()).append(',');
+        fRow.append(user.getPhone()).append(',');
+        appendQuoted(user.getEmail()).append(',');
+        fRow.append(user.isAdministrator()).append('\n');
+        fRows++;
+        return true;
+    }
+
+    private StringBuilder appendQuoted(String value) {
+        fRow.append('"');
+        for (var i = 0; i < value.length(); i++) {
+            final var c = value.charAt(i);
+            if (c == '"')
+                fRow.append('"');
+            fRow.append(c);
+        }
+        return fRow.append('"');
+    }
+}
@@ -0,0 +1,45 @@
+package com.atul.gitbook.learn.imports;
+
+import org.springframework.http.MediaType;
+
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * The formats a user import can be streamed in, one user per line.
+ */
+public enum ImportFormat {
+
+    /**
+     * One JSON object per line, with the fields of a user.
+     */
+    NDJSON("application/x-ndjson"),
+
+    /**
+     * A header line naming the columns, followed by one user per line.
+     */
+    CSV("text/csv");
+
+    private final MediaType fMediaType;
+
+    ImportFormat(String mediaType) {
+        fMediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    public String getMediaType() {
+        return fMediaType.toString();
+    }
+
+    /**
+     * @param contentType the content type of the request, parameters such as the charset are ignored.
+     * @throws IllegalArgumentException if no format has that content type.
+     */
+    public static ImportFormat fromContentType(String contentType) {
+        validateNotNull(contentType);
+        final var mediaType = MediaType.parseMediaType(contentType);
+        for (var format : values()) {
+            if (format.fMediaType.equalsTypeAndSubtype(mediaType))
+                return format;
+        }
+        throw new IllegalArgumentException("Users can't be imported from " + contentType + ".");
+    }
+}
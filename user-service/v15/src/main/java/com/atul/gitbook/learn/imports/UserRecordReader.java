@@ -0,0 +1,227 @@
+package com.atul.gitbook.learn.imports;
+
+import com.atul.gitbook.learn.users.models.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Reads users, one per line, from a stream in one of the {@link ImportFormat}s. Lines are read
+ * only as the users are asked for, so a stream of any size is read in constant memory.
+ * <p>
+ * Every line is validated as a {@link User} is, plus the column lengths of the users table. A line
+ * that fails is counted as rejected and skipped, and the import goes on with the next line. The
+ * first rejected line numbers are kept, for reporting.
+ * <p>
+ * The id of a user is optional; users without one get a new random id.
+ */
+public class UserRecordReader implements Iterator<User> {
+
+    public static final int MAX_NAME_LENGTH = 100;
+    public static final int MAX_EMAIL_LENGTH = 50;
+    // The most rejected line numbers kept, so that a stream of bad lines can't grow the reader.
+    public static final int MAX_REJECTED_LINES_KEPT = 10;
+
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_PHONE = "phone";
+    private static final String COLUMN_EMAIL = "email";
+    private static final String COLUMN_ADMINISTRATOR = "administrator";
+    private static final List<String> COLUMNS = List.of(COLUMN_ID, COLUMN_NAME, COLUMN_PHONE, COLUMN_EMAIL, COLUMN_ADMINISTRATOR);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader fReader;
+    private final ImportFormat fFormat;
+    private final List<Long> fRejectedLines = new ArrayList<>();
+    // The index of each column in a CSV line, read from the header.
+    private Map<String, Integer> fCsvColumns;
+    private long fLineNumber;
+    private long fRowsRead;
+    private long fRowsRejected;
+    private User fNext;
+
+    public UserRecordReader(Reader reader, ImportFormat format) {
+        validateNotNull(reader);
+        validateNotNull(format);
+        fReader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        fFormat = format;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the stream is a CSV one whose header is missing or invalid.
+     * @throws UncheckedIOException     if the stream can't be read.
+     */
+    @Override
+    public boolean hasNext() {
+        while (fNext == null) {
+            final var line = readLine();
+            if (line == null)
+                return false;
+            if (line.trim().isEmpty())
+                continue;
+            if (fFormat == ImportFormat.CSV && fCsvColumns == null) {
+                fCsvColumns = readCsvHeader(line);
+                continue;
+            }
+            fRowsRead++;
+            try {
+                fNext = fFormat == ImportFormat.CSV ? parseCsv(line) : parseNdjson(line);
+            } catch (IllegalArgumentException | JsonProcessingException e) {
+                fRowsRejected++;
+                if (fRejectedLines.size() < MAX_REJECTED_LINES_KEPT)
+                    fRejectedLines.add(fLineNumber);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public User next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        final var user = fNext;
+        fNext = null;
+        return user;
+    }
+
+    /**
+     * @return the number of user lines read so far, valid or not. Blank lines and the CSV header
+     * are not counted.
+     */
+    public long getRowsRead() {
+        return fRowsRead;
+    }
+
+    /**
+     * @return the number of user lines that failed validation so far.
+     */
+    public long getRowsRejected() {
+        return fRowsRejected;
+    }
+
+    /**
+     * @return the line numbers, counted from 1, of the first {@value #MAX_REJECTED_LINES_KEPT} rejected lines.
+     */
+    public List<Long> getRejectedLines() {
+        return Collections.unmodifiableList(fRejectedLines);
+    }
+
+    private String readLine() {
+        try {
+            final var line = fReader.readLine();
+            if (line != null)
+                fLineNumber++;
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Integer> readCsvHeader(String line) {
+        final var header = splitCsvLine(line);
+        final var columns = new HashMap<String, Integer>();
+        for (var i = 0; i < header.size(); i++) {
+            final var column = header.get(i).trim();
+            validateIsTrue(COLUMNS.contains(column), "Unknown column " + column + " in the CSV header.");
+            validateIsTrue(columns.put(column, i) == null, "Duplicate column " + column + " in the CSV header.");
+        }
+        validateIsTrue(columns.containsKey(COLUMN_NAME) && columns.containsKey(COLUMN_PHONE) && columns.containsKey(COLUMN_EMAIL),
+                "The CSV header must name the name, phone and email columns.");
+        return columns;
+    }
+
+    private User parseCsv(String line) {
+        final var fields = splitCsvLine(line);
+        validateIsTrue(fields.size() == fCsvColumns.size(), "Wrong number of fields.");
+        final var id = fCsvColumns.get(COLUMN_ID);
+        final var administrator = fCsvColumns.get(COLUMN_ADMINISTRATOR);
+        return newUser(
+                id == null ? null : fields.get(id),
+                fields.get(fCsvColumns.get(COLUMN_NAME)),
+                fields.get(fCsvColumns.get(COLUMN_PHONE)),
+                fields.get(fCsvColumns.get(COLUMN_EMAIL)),
+                administrator == null ? null : fields.get(administrator));
+    }
+
+    private static User parseNdjson(String line) throws JsonProcessingException {
+        final var node = MAPPER.readTree(line);
+        validateIsTrue(node.isObject(), "Each line must be a JSON object.");
+        final var administrator = node.get(COLUMN_ADMINISTRATOR);
+        validateIsTrue(administrator == null || administrator.isNull() || administrator.isBoolean(), "Administrator must be a boolean.");
+        return newUser(
+                text(node, COLUMN_ID),
+                text(node, COLUMN_NAME),
+                text(node, COLUMN_PHONE),
+                text(node, COLUMN_EMAIL),
+                administrator == null || administrator.isNull() ? null : administrator.asText());
+    }
+
+    private static String text(JsonNode node, String field) {
+        final var value = node.get(field);
+        if (value == null || value.isNull())
+            return null;
+        validateIsTrue(value.isTextual(), field + " must be a string.");
+        return value.textValue();
+    }
+
+    private static User newUser(String id, String name, String phone, String email, String administrator) {
+        validateIsTrue(administrator == null || administrator.isEmpty() || administrator.equals("true") || administrator.equals("false"),
+                "Administrator must be true or false.");
+        validateIsTrue(name == null || name.length() <= MAX_NAME_LENGTH, "Name is too long.");
+        validateIsTrue(email == null || email.length() <= MAX_EMAIL_LENGTH, "Email is too long.");
+        return new User(
+                id == null || id.isEmpty() ? UUID.randomUUID() : UUID.fromString(id),
+                name, phone, email,
+                "true".equals(administrator));
+    }
+
+    /**
+     * Splits a CSV line at its commas. A field may be enclosed in double quotes to hold commas, and
+     * a double quote inside such a field is written twice. Fields can't span lines.
+     */
+    static List<String> splitCsvLine(String line) {
+        final var fields = new ArrayList<String>();
+        final var field = new StringBuilder();
+        var quoted = false;
+        for (var i = 0; i < line.length(); i++) {
+            final var c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        validateIsTrue(!quoted, "Unterminated quoted field.");
+        fields.add(field.toString());
+        return fields;
+    }
+}
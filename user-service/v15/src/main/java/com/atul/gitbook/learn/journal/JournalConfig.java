@@ -0,0 +1,51 @@
+package com.atul.gitbook.learn.journal;
+
+import java.nio.file.Path;
+
+public class JournalConfig {
+
+    private final Path fDirectory;
+    private final int fSegmentSize;
+    private final int fFsyncBatchSize;
+    private final long fFsyncIntervalMillis;
+    private final long fSnapshotIntervalSeconds;
+
+    /**
+     * @param directory               the directory holding the log segments and the snapshots.
+     * @param segmentSize             the size in bytes of each memory-mapped log segment.
+     * @param fsyncBatchSize          the number of pending records that triggers an fsync right away.
+     * @param fsyncIntervalMillis     the longest time a record waits for other records to share its fsync.
+     * @param snapshotIntervalSeconds the time between two snapshots, 0 to only snapshot on shutdown.
+     */
+    public JournalConfig(Path directory,
+                         int segmentSize,
+                         int fsyncBatchSize,
+                         long fsyncIntervalMillis,
+                         long snapshotIntervalSeconds) {
+        fDirectory = directory;
+        fSegmentSize = segmentSize;
+        fFsyncBatchSize = fsyncBatchSize;
+        fFsyncIntervalMillis = fsyncIntervalMillis;
+        fSnapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    public Path getDirectory() {
+        return fDirectory;
+    }
+
+    public int getSegmentSize() {
+        return fSegmentSize;
+    }
+
+    public int getFsyncBatchSize() {
+        return fFsyncBatchSize;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fFsyncIntervalMillis;
+    }
+
+    public long getSnapshotIntervalSeconds() {
+        return fSnapshotIntervalSeconds;
+    }
+}
@@ -0,0 +1,106 @@
+package com.atul.gitbook.learn.journal;
+
+import com.atul.gitbook.learn.users.models.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+
+/**
+ * A single mutation of the user repository. Records carry the complete state of the user they
+ * touch, so replaying a record is idempotent and a snapshot taken while writers are running can
+ * be brought up to date by replaying every record logged after the snapshot started.
+ */
+public class JournalRecord {
+
+    // Upserts logged before users had versions; their users are read at the initial version.
+    private static final byte OP_UPSERT_UNVERSIONED = 1;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_UPSERT = 3;
+
+    private final byte fOp;
+    private final UUID fId;
+    private final User fUser;
+
+    private JournalRecord(byte op, UUID id, User user) {
+        fOp = op;
+        fId = id;
+        fUser = user;
+    }
+
+    public static JournalRecord upsert(User user) {
+        return new JournalRecord(OP_UPSERT, user.getId(), user);
+    }
+
+    public static JournalRecord delete(UUID id) {
+        return new JournalRecord(OP_DELETE, id, null);
+    }
+
+    public boolean isDelete() {
+        return fOp == OP_DELETE;
+    }
+
+    public UUID getId() {
+        return fId;
+    }
+
+    /**
+     * @return the new state of the user, or null for a delete.
+     */
+    public User getUser() {
+        return fUser;
+    }
+
+    byte[] encode() {
+        final var bytes = new ByteArrayOutputStream(64);
+        try (var output = new DataOutputStream(bytes)) {
+            output.writeByte(fOp);
+            if (isDelete()) {
+                output.writeLong(fId.getMostSignificantBits());
+                output.writeLong(fId.getLeastSignificantBits());
+            } else {
+                writeUser(output, fUser);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static JournalRecord decode(DataInput input) throws IOException {
+        final var op = input.readByte();
+        if (op == OP_DELETE)
+            return delete(new UUID(input.readLong(), input.readLong()));
+        if (op == OP_UPSERT)
+            return upsert(readUser(input, true));
+        if (op == OP_UPSERT_UNVERSIONED)
+            return upsert(readUser(input, false));
+        throw new IOException("Unknown journal operation: " + op);
+    }
+
+    static void writeUser(DataOutputStream output, User user) throws IOException {
+        output.writeLong(user.getId().getMostSignificantBits());
+        output.writeLong(user.getId().getLeastSignificantBits());
+        output.writeBoolean(user.isAdministrator());
+        output.writeUTF(user.getName());
+        output.writeUTF(user.getPhone());
+        output.writeUTF(user.getEmail());
+        output.writeLong(user.getVersion());
+    }
+
+    /**
+     * @param versioned false to read a user written before users had versions.
+     */
+    static User readUser(DataInput input, boolean versioned) throws IOException {
+        final var id = new UUID(input.readLong(), input.readLong());
+        final var administrator = input.readBoolean();
+        final var name = input.readUTF();
+        final var phone = input.readUTF();
+        final var email = input.readUTF();
+        final var version = versioned ? input.readLong() : User.INITIAL_VERSION;
+        return new User(id, name, phone, email, administrator, version);
+    }
+}
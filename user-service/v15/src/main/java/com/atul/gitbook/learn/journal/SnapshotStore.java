@@ -0,0 +1,163 @@
+package com.atul.gitbook.learn.journal;
+
+import com.atul.gitbook.learn.users.models.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes and loads compact snapshots of all users. A snapshot file is named after the lsn of
+ * the last journal record it is guaranteed to include and holds
+ * {@code [magic:4][lsn:8]([true][user])*[false][crc32:8]}. Snapshots written before users had
+ * versions have another magic, and their users are loaded at the initial version.
+ * <p>
+ * Snapshots are written to a temporary file, forced to disk and then atomically renamed, so a
+ * crash while snapshotting leaves the previous snapshot in place.
+ */
+public class SnapshotStore {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int MAGIC_UNVERSIONED = 0x5553524e;
+    private static final int MAGIC = 0x55535256;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path fDirectory;
+
+    public SnapshotStore(Path directory) {
+        fDirectory = directory;
+    }
+
+    /**
+     * @return the lsn of the latest snapshot, if there is one.
+     */
+    public Optional<Long> getLatestLsn() throws IOException {
+        return listSnapshots().stream().reduce((first, second) -> second).map(SnapshotStore::lsnOf);
+    }
+
+    /**
+     * Loads the latest snapshot.
+     *
+     * @param consumer receives every user in the snapshot.
+     * @return the lsn of the snapshot, or 0 if there is no snapshot.
+     */
+    public long load(Consumer<User> consumer) throws IOException {
+        final var snapshots = listSnapshots();
+        if (snapshots.isEmpty())
+            return 0;
+        final var snapshot = snapshots.get(snapshots.size() - 1);
+        final var checksum = new CRC32();
+        try (var input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot), BUFFER_SIZE), checksum))) {
+            final var magic = input.readInt();
+            if (magic != MAGIC && magic != MAGIC_UNVERSIONED)
+                throw new IOException("The snapshot " + snapshot + " has an unknown format.");
+            final var lsn = input.readLong();
+            while (input.readBoolean()) {
+                consumer.accept(JournalRecord.readUser(input, magic == MAGIC));
+            }
+            final var expected = checksum.getValue();
+            if (input.readLong() != expected)
+                throw new IOException("The snapshot " + snapshot + " is corrupt.");
+            return lsn;
+        }
+    }
+
+    /**
+     * Starts a new snapshot that includes at least every journal record up to {@code lsn}.
+     */
+    public Writer newWriter(long lsn) throws IOException {
+        return new Writer(lsn);
+    }
+
+    private List<Path> listSnapshots() throws IOException {
+        if (!Files.isDirectory(fDirectory))
+            return List.of();
+        try (var files = Files.list(fDirectory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(SNAPSHOT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SNAPSHOT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path pathFor(long lsn) {
+        return fDirectory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, lsn, SNAPSHOT_SUFFIX));
+    }
+
+    private static long lsnOf(Path snapshot) {
+        final var name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    public class Writer implements AutoCloseable {
+
+        private final long fLsn;
+        private final Path fTemporary;
+        private final FileOutputStream fFile;
+        private final CRC32 fChecksum = new CRC32();
+        private final DataOutputStream fOutput;
+        private boolean fCommitted;
+
+        private Writer(long lsn) throws IOException {
+            fLsn = lsn;
+            Files.createDirectories(fDirectory);
+            fTemporary = Files.createTempFile(fDirectory, SNAPSHOT_PREFIX, ".tmp");
+            fFile = new FileOutputStream(fTemporary.toFile());
+            fOutput = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fFile, BUFFER_SIZE), fChecksum));
+            fOutput.writeInt(MAGIC);
+            fOutput.writeLong(lsn);
+        }
+
+        public void write(User user) {
+            try {
+                fOutput.writeBoolean(true);
+                JournalRecord.writeUser(fOutput, user);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Makes the snapshot durable and replaces the older snapshots with it.
+         */
+        public void commit() throws IOException {
+            fOutput.writeBoolean(false);
+            fOutput.flush();
+            fOutput.writeLong(fChecksum.getValue());
+            fOutput.flush();
+            fFile.getChannel().force(true);
+            fOutput.close();
+            Files.move(fTemporary, pathFor(fLsn), StandardCopyOption.ATOMIC_MOVE);
+            fCommitted = true;
+            for (var snapshot : listSnapshots()) {
+                if (lsnOf(snapshot) < fLsn)
+                    Files.deleteIfExists(snapshot);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!fCommitted) {
+                fOutput.close();
+                Files.deleteIfExists(fTemporary);
+            }
+        }
+    }
+}
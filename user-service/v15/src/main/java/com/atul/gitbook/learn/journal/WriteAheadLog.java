@@ -0,0 +1,348 @@
+package com.atul.gitbook.learn.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+
+/**
+ * An append-only log of {@link JournalRecord}s written to memory-mapped segment files.
+ * <p>
+ * Each record is stored as {@code [length:4][crc32:4][lsn:8][payload]}, where the log sequence
+ * number (lsn) grows by one per record. Appending only copies the record into the mapped segment;
+ * a committer thread forces the segment to disk once {@link JournalConfig#getFsyncBatchSize()}
+ * records are pending or {@link JournalConfig#getFsyncIntervalMillis()} has passed, so every
+ * record appended in that window shares one fsync (group commit). Writers call
+ * {@link #awaitDurable(long)} to block until their record is on disk.
+ * <p>
+ * On open the segments are scanned in order and every intact record after the given snapshot
+ * lsn is replayed. Scanning stops at the first record that is zeroed, fails its checksum or
+ * breaks the lsn sequence, which is where a crash interrupted the last write, and new records are
+ * appended from there.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    private final Path fDirectory;
+    private final int fSegmentSize;
+    private final int fFsyncBatchSize;
+    private final long fFsyncIntervalNanos;
+    private final TreeMap<Long, Path> fSegments = new TreeMap<>();
+    private final ReentrantLock fLock = new ReentrantLock();
+    private final Condition fFlushRequested = fLock.newCondition();
+    private final Condition fFlushed = fLock.newCondition();
+    private final CRC32 fChecksum = new CRC32();
+    private final Thread fCommitter;
+
+    private FileChannel fChannel;
+    private MappedByteBuffer fSegment;
+    private int fPosition;
+    private long fAppendedLsn;
+    private long fDurableLsn;
+    private boolean fClosed;
+    private RuntimeException fFailure;
+
+    private WriteAheadLog(JournalConfig config) {
+        fDirectory = config.getDirectory();
+        fSegmentSize = config.getSegmentSize();
+        fFsyncBatchSize = Math.max(1, config.getFsyncBatchSize());
+        fFsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFsyncIntervalMillis());
+        fCommitter = new Thread(this::runCommitter, "wal-committer");
+        fCommitter.setDaemon(true);
+    }
+
+    /**
+     * Opens the log in the configured directory and replays the records that came after the
+     * snapshot the caller has already loaded.
+     *
+     * @param config      the journal configuration.
+     * @param snapshotLsn the lsn of the loaded snapshot, 0 if there was none.
+     * @param replay      receives every record with an lsn greater than {@code snapshotLsn}, in order.
+     */
+    public static WriteAheadLog open(JournalConfig config,
+                                     long snapshotLsn,
+                                     Consumer<JournalRecord> replay) throws IOException {
+        final var log = new WriteAheadLog(config);
+        log.recover(snapshotLsn, replay);
+        log.fCommitter.start();
+        return log;
+    }
+
+    /**
+     * Appends a record to the log. The record is not durable until {@link #awaitDurable(long)}
+     * returns for its lsn.
+     *
+     * @return the lsn of the record.
+     */
+    public long append(JournalRecord record) {
+        final var payload = record.encode();
+        validateIsTrue(RECORD_HEADER_SIZE + payload.length <= fSegmentSize, "Record is larger than a log segment.");
+        fLock.lock();
+        try {
+            checkOpen();
+            if (fPosition + RECORD_HEADER_SIZE + payload.length > fSegmentSize)
+                roll();
+            final var lsn = fAppendedLsn + 1;
+            fSegment.putLong(fPosition + 8, lsn);
+            final var body = fSegment.duplicate();
+            body.position(fPosition + RECORD_HEADER_SIZE);
+            body.put(payload);
+            fSegment.putInt(fPosition + 4, checksum(fPosition, payload.length));
+            fSegment.putInt(fPosition, payload.length);
+            fPosition += RECORD_HEADER_SIZE + payload.length;
+            fAppendedLsn = lsn;
+            // Wake the committer to open a new group commit window, or to end it early when full.
+            final var pending = fAppendedLsn - fDurableLsn;
+            if (pending == 1 || pending >= fFsyncBatchSize)
+                fFlushRequested.signal();
+            return lsn;
+        } finally {
+            fLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record with the given lsn, and every record before it, is on disk.
+     */
+    public void awaitDurable(long lsn) {
+        fLock.lock();
+        try {
+            // Closing the log flushes everything appended so far, so only a failure ends the wait early.
+            while (fDurableLsn < lsn) {
+                if (fFailure != null)
+                    throw fFailure;
+                fFlushed.awaitUninterruptibly();
+            }
+        } finally {
+            fLock.unlock();
+        }
+    }
+
+    /**
+     * @return the lsn of the last appended record.
+     */
+    public long getLastLsn() {
+        fLock.lock();
+        try {
+            return fAppendedLsn;
+        } finally {
+            fLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments that only hold records up to {@code lsn}, because a snapshot now
+     * covers them. The segment being appended to is always kept.
+     */
+    public void deleteSegmentsCoveredBy(long lsn) throws IOException {
+        final List<Path> covered = new ArrayList<>();
+        fLock.lock();
+        try {
+            final var segments = new ArrayList<>(fSegments.entrySet());
+            for (var i = 0; i < segments.size() - 1; i++) {
+                // A segment ends right before the first lsn of the next one.
+                if (segments.get(i + 1).getKey() - 1 <= lsn) {
+                    covered.add(segments.get(i).getValue());
+                    fSegments.remove(segments.get(i).getKey());
+                }
+            }
+        } finally {
+            fLock.unlock();
+        }
+        for (var segment : covered) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Forces every appended record to disk and stops the committer.
+     */
+    @Override
+    public void close() throws IOException {
+        fLock.lock();
+        try {
+            if (fClosed)
+                return;
+            fClosed = true;
+            fFlushRequested.signal();
+        } finally {
+            fLock.unlock();
+        }
+        try {
+            fCommitter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        fLock.lock();
+        try {
+            fSegment.force();
+            fChannel.close();
+        } finally {
+            fLock.unlock();
+        }
+    }
+
+    private void runCommitter() {
+        fLock.lock();
+        try {
+            while (true) {
+                while (!fClosed && fAppendedLsn == fDurableLsn) {
+                    fFlushRequested.awaitUninterruptibly();
+                }
+                if (fAppendedLsn == fDurableLsn)
+                    return;
+                // Give other writers a chance to join this fsync, unless the batch is already full.
+                var remaining = fFsyncIntervalNanos;
+                while (!fClosed && remaining > 0 && fAppendedLsn - fDurableLsn < fFsyncBatchSize) {
+                    remaining = fFlushRequested.awaitNanos(remaining);
+                }
+                final var lsn = fAppendedLsn;
+                final var segment = fSegment;
+                fLock.unlock();
+                try {
+                    segment.force();
+                } catch (RuntimeException e) {
+                    fFailure = e;
+                } finally {
+                    fLock.lock();
+                }
+                if (fFailure != null) {
+                    fFlushed.signalAll();
+                    return;
+                }
+                fDurableLsn = lsn;
+                fFlushed.signalAll();
+            }
+        } catch (InterruptedException e) {
+            fFailure = new IllegalStateException("The write-ahead log committer was interrupted.", e);
+            fFlushed.signalAll();
+        } finally {
+            fLock.unlock();
+        }
+    }
+
+    private void recover(long snapshotLsn, Consumer<JournalRecord> replay) throws IOException {
+        Files.createDirectories(fDirectory);
+        final Map<Long, Path> segments;
+        try (var files = Files.list(fDirectory)) {
+            segments = files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .collect(Collectors.toMap(WriteAheadLog::firstLsnOf, path -> path, (a, b) -> a, TreeMap::new));
+        }
+        fSegments.putAll(segments);
+        var lastLsn = 0L;
+        final var iterator = fSegments.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final var entry = iterator.next();
+            if (lastLsn == 0 && entry.getKey() > snapshotLsn + 1)
+                throw new IOException("The journal is missing records after the snapshot at lsn " + snapshotLsn + ".");
+            if (lastLsn != 0 && entry.getKey() != lastLsn + 1)
+                throw new IOException("The journal segment " + entry.getValue() + " does not follow lsn " + lastLsn + ".");
+            openSegment(entry.getValue());
+            lastLsn = scan(entry.getKey() - 1, snapshotLsn, replay);
+            if (iterator.hasNext()) {
+                fChannel.close();
+            }
+        }
+        fAppendedLsn = Math.max(lastLsn, snapshotLsn);
+        fDurableLsn = fAppendedLsn;
+        if (fSegment == null)
+            createSegment(fAppendedLsn + 1);
+    }
+
+    /**
+     * Replays the current segment from its start and leaves {@link #fPosition} after its last
+     * intact record.
+     *
+     * @return the lsn of the last intact record in the segment.
+     */
+    private long scan(long previousLsn, long snapshotLsn, Consumer<JournalRecord> replay) throws IOException {
+        fPosition = 0;
+        var lsn = previousLsn;
+        while (fPosition + RECORD_HEADER_SIZE <= fSegment.capacity()) {
+            final var length = fSegment.getInt(fPosition);
+            if (length <= 0 || fPosition + RECORD_HEADER_SIZE + length > fSegment.capacity())
+                break;
+            if (fSegment.getLong(fPosition + 8) != lsn + 1 || fSegment.getInt(fPosition + 4) != checksum(fPosition, length))
+                break;
+            lsn++;
+            if (lsn > snapshotLsn) {
+                final var payload = new byte[length];
+                final var body = fSegment.duplicate();
+                body.position(fPosition + RECORD_HEADER_SIZE);
+                body.get(payload);
+                replay.accept(JournalRecord.decode(new DataInputStream(new ByteArrayInputStream(payload))));
+            }
+            fPosition += RECORD_HEADER_SIZE + length;
+        }
+        return lsn;
+    }
+
+    private void roll() {
+        try {
+            fSegment.force();
+            fChannel.close();
+            createSegment(fAppendedLsn + 1);
+        } catch (IOException e) {
+            fFailure = new UncheckedIOException(e);
+            throw fFailure;
+        }
+    }
+
+    private void createSegment(long firstLsn) throws IOException {
+        final var path = fDirectory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        fSegments.put(firstLsn, path);
+        openSegment(path);
+        fPosition = 0;
+    }
+
+    private void openSegment(Path path) throws IOException {
+        fChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final var size = Math.max(fChannel.size(), fSegmentSize);
+        fSegment = fChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * @return the checksum of the lsn and payload of the record at {@code position}.
+     */
+    private int checksum(int position, int length) {
+        final var covered = fSegment.duplicate();
+        covered.position(position + 8).limit(position + RECORD_HEADER_SIZE + length);
+        fChecksum.reset();
+        fChecksum.update(covered);
+        return (int) fChecksum.getValue();
+    }
+
+    private void checkOpen() {
+        if (fFailure != null)
+            throw fFailure;
+        if (fClosed)
+            throw new IllegalStateException("The write-ahead log is closed.");
+    }
+
+    private static long firstLsnOf(Path segment) {
+        final var name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,280 @@
+package com.atul.gitbook.learn.offheap;
+
+import com.atul.gitbook.learn.collections.LongStack;
+import com.atul.gitbook.learn.collections.UuidLongMap;
+import com.atul.gitbook.learn.users.models.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+
+/**
+ * Stores users as records in direct {@link ByteBuffer} slabs, outside of the Java heap. The only
+ * per-user heap cost is an entry in a primitive {@link UuidLongMap} from the user id to the
+ * record's address, so the garbage collector never has to trace the users themselves.
+ * <p>
+ * A record is laid out as
+ * {@code [size class:1][id msb:8][id lsb:8][version:8][administrator:1][name length:2][phone length:1][email length:2][name][phone][email]},
+ * with the strings encoded as UTF-8. Records are placed in slots whose size is a power of two
+ * starting at {@value #MIN_SLOT_SIZE} bytes. Deleted slots go onto a free list for their size
+ * class and are handed out again before the slab is bumped, and an update that still fits its
+ * slot is written in place.
+ * <p>
+ * {@link User} objects are only materialized when a record is read.
+ */
+public class UserSlabStore {
+
+    public static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+    static final int MIN_SLOT_SIZE = 64;
+
+    private static final int OFFSET_SIZE_CLASS = 0;
+    private static final int OFFSET_MOST_SIG_BITS = 1;
+    private static final int OFFSET_LEAST_SIG_BITS = 9;
+    private static final int OFFSET_VERSION = 17;
+    private static final int OFFSET_ADMINISTRATOR = 25;
+    private static final int OFFSET_NAME_LENGTH = 26;
+    private static final int OFFSET_PHONE_LENGTH = 28;
+    private static final int OFFSET_EMAIL_LENGTH = 29;
+    private static final int HEADER_SIZE = 31;
+
+    private final int fSlabSize;
+    private final List<ByteBuffer> fSlabs = new ArrayList<>();
+    private final LongStack[] fFreeSlots;
+    private final UuidLongMap fIndex = new UuidLongMap();
+    private final ReentrantReadWriteLock fLock = new ReentrantReadWriteLock();
+    private int fBumpOffset;
+
+    public UserSlabStore() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize the size in bytes of each direct buffer; must be a power of two of at least
+     *                 {@value #MIN_SLOT_SIZE} bytes.
+     */
+    public UserSlabStore(int slabSize) {
+        validateIsTrue(slabSize >= MIN_SLOT_SIZE && Integer.bitCount(slabSize) == 1,
+                "Slab size must be a power of two of at least " + MIN_SLOT_SIZE + " bytes.");
+        fSlabSize = slabSize;
+        fFreeSlots = new LongStack[sizeClassFor(slabSize) + 1];
+        for (var i = 0; i < fFreeSlots.length; i++) {
+            fFreeSlots[i] = new LongStack();
+        }
+        fBumpOffset = slabSize;
+    }
+
+    /**
+     * @return the user with the given id, or null if there is none.
+     */
+    public User get(UUID id) {
+        final var readLock = fLock.readLock();
+        readLock.lock();
+        try {
+            final var address = fIndex.get(id);
+            return address == UuidLongMap.NO_VALUE ? null : read(address);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the user, or replaces the stored user with the same id.
+     */
+    public void put(User user) {
+        final var writeLock = fLock.writeLock();
+        writeLock.lock();
+        try {
+            final var address = fIndex.get(user.getId());
+            fIndex.put(user.getId(), address == UuidLongMap.NO_VALUE ? write(user) : rewrite(address, user));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces the stored user with the result of applying {@code update} to it.
+     *
+     * @return the new user, or null if there is no user with the given id.
+     */
+    public User replace(UUID id, UnaryOperator<User> update) {
+        final var writeLock = fLock.writeLock();
+        writeLock.lock();
+        try {
+            final var address = fIndex.get(id);
+            if (address == UuidLongMap.NO_VALUE)
+                return null;
+            final var updated = update.apply(read(address));
+            validateIsTrue(id.equals(updated.getId()), "The user id can't be changed.");
+            fIndex.put(id, rewrite(address, updated));
+            return updated;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if a user with the given id was removed.
+     */
+    public boolean remove(UUID id) {
+        final var writeLock = fLock.writeLock();
+        writeLock.lock();
+        try {
+            final var address = fIndex.remove(id);
+            if (address == UuidLongMap.NO_VALUE)
+                return false;
+            release(address);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int size() {
+        final var readLock = fLock.readLock();
+        readLock.lock();
+        try {
+            return fIndex.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Passes every user to the consumer, in no particular order. Writes wait until it returns.
+     */
+    public void forEach(Consumer<User> consumer) {
+        final var readLock = fLock.readLock();
+        readLock.lock();
+        try {
+            fIndex.forEachValue(address -> consumer.accept(read(address)));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of bytes reserved in direct memory by the slabs.
+     */
+    public long getOffHeapBytes() {
+        final var readLock = fLock.readLock();
+        readLock.lock();
+        try {
+            return (long) fSlabs.size() * fSlabSize;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private long write(User user) {
+        final var record = encode(user);
+        final var sizeClass = sizeClassFor(record.length);
+        final var address = allocate(sizeClass);
+        store(address, sizeClass, record);
+        return address;
+    }
+
+    private long rewrite(long address, User user) {
+        final var record = encode(user);
+        final var sizeClass = sizeClassFor(record.length);
+        if (sizeClass == slab(address).get(offset(address) + OFFSET_SIZE_CLASS)) {
+            store(address, sizeClass, record);
+            return address;
+        }
+        release(address);
+        final var newAddress = allocate(sizeClass);
+        store(newAddress, sizeClass, record);
+        return newAddress;
+    }
+
+    private void release(long address) {
+        fFreeSlots[slab(address).get(offset(address) + OFFSET_SIZE_CLASS)].push(address);
+    }
+
+    private long allocate(int sizeClass) {
+        final var freeSlots = fFreeSlots[sizeClass];
+        if (!freeSlots.isEmpty())
+            return freeSlots.pop();
+        final var slotSize = MIN_SLOT_SIZE << sizeClass;
+        if (fBumpOffset + slotSize > fSlabSize) {
+            fSlabs.add(ByteBuffer.allocateDirect(fSlabSize));
+            fBumpOffset = 0;
+        }
+        final var address = address(fSlabs.size() - 1, fBumpOffset);
+        fBumpOffset += slotSize;
+        return address;
+    }
+
+    private void store(long address, int sizeClass, byte[] record) {
+        final var slab = slab(address).duplicate();
+        slab.position(offset(address));
+        record[OFFSET_SIZE_CLASS] = (byte) sizeClass;
+        slab.put(record);
+    }
+
+    private User read(long address) {
+        final var slab = slab(address).duplicate();
+        final var offset = offset(address);
+        final var id = new UUID(slab.getLong(offset + OFFSET_MOST_SIG_BITS), slab.getLong(offset + OFFSET_LEAST_SIG_BITS));
+        final var version = slab.getLong(offset + OFFSET_VERSION);
+        final var administrator = slab.get(offset + OFFSET_ADMINISTRATOR) != 0;
+        final var name = new byte[Short.toUnsignedInt(slab.getShort(offset + OFFSET_NAME_LENGTH))];
+        final var phone = new byte[Byte.toUnsignedInt(slab.get(offset + OFFSET_PHONE_LENGTH))];
+        final var email = new byte[Short.toUnsignedInt(slab.getShort(offset + OFFSET_EMAIL_LENGTH))];
+        slab.position(offset + HEADER_SIZE);
+        slab.get(name).get(phone).get(email);
+        // The user was validated before it was stored.
+        return User.withValidated(id,
+                new String(name, StandardCharsets.UTF_8),
+                new String(phone, StandardCharsets.UTF_8),
+                new String(email, StandardCharsets.UTF_8),
+                administrator,
+                version);
+    }
+
+    private byte[] encode(User user) {
+        final var name = user.getName().getBytes(StandardCharsets.UTF_8);
+        final var phone = user.getPhone().getBytes(StandardCharsets.UTF_8);
+        final var email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+        validateIsTrue(name.length <= 0xFFFF && phone.length <= 0xFF && email.length <= 0xFFFF,
+                "User is too large to be stored off-heap.");
+        final var record = ByteBuffer.allocate(HEADER_SIZE + name.length + phone.length + email.length);
+        validateIsTrue(record.capacity() <= fSlabSize, "User is too large for the slab size.");
+        record.position(OFFSET_MOST_SIG_BITS);
+        record.putLong(user.getId().getMostSignificantBits())
+                .putLong(user.getId().getLeastSignificantBits())
+                .putLong(user.getVersion())
+                .put((byte) (user.isAdministrator() ? 1 : 0))
+                .putShort((short) name.length)
+                .put((byte) phone.length)
+                .putShort((short) email.length)
+                .put(name)
+                .put(phone)
+                .put(email);
+        return record.array();
+    }
+
+    private ByteBuffer slab(long address) {
+        return fSlabs.get((int) (address >>> 32));
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static long address(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int sizeClassFor(int recordSize) {
+        final var slots = (recordSize + MIN_SLOT_SIZE - 1) / MIN_SLOT_SIZE;
+        return 32 - Integer.numberOfLeadingZeros(slots - 1);
+    }
+}
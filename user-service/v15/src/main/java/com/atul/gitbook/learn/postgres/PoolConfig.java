@@ -0,0 +1,61 @@
+package com.atul.gitbook.learn.postgres;
+
+/**
+ * Sizing and timeouts of the database connection pool.
+ */
+public class PoolConfig {
+
+    private final int fMaximumPoolSize;
+    private final int fMinimumIdle;
+    private final long fConnectionTimeoutMillis;
+    private final long fIdleTimeoutMillis;
+    private final long fMaxLifetimeMillis;
+    private final long fLeakDetectionThresholdMillis;
+
+    /**
+     * @param maximumPoolSize              the most connections the pool opens.
+     * @param minimumIdle                  the idle connections the pool keeps open.
+     * @param connectionTimeoutMillis      how long a caller waits for a connection before failing.
+     * @param idleTimeoutMillis            how long a connection above the minimum may stay idle.
+     * @param maxLifetimeMillis            how long a connection is used before it is replaced.
+     * @param leakDetectionThresholdMillis how long a connection may be held before a warning with
+     *                                     the stack trace of its borrower is logged; 0 disables it.
+     */
+    public PoolConfig(int maximumPoolSize,
+                      int minimumIdle,
+                      long connectionTimeoutMillis,
+                      long idleTimeoutMillis,
+                      long maxLifetimeMillis,
+                      long leakDetectionThresholdMillis) {
+        fMaximumPoolSize = maximumPoolSize;
+        fMinimumIdle = minimumIdle;
+        fConnectionTimeoutMillis = connectionTimeoutMillis;
+        fIdleTimeoutMillis = idleTimeoutMillis;
+        fMaxLifetimeMillis = maxLifetimeMillis;
+        fLeakDetectionThresholdMillis = leakDetectionThresholdMillis;
+    }
+
+    public int getMaximumPoolSize() {
+        return fMaximumPoolSize;
+    }
+
+    public int getMinimumIdle() {
+        return fMinimumIdle;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return fConnectionTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return fIdleTimeoutMillis;
+    }
+
+    public long getMaxLifetimeMillis() {
+        return fMaxLifetimeMillis;
+    }
+
+    public long getLeakDetectionThresholdMillis() {
+        return fLeakDetectionThresholdMillis;
+    }
+}
@@ -0,0 +1,207 @@
+package com.atul.gitbook.learn.postgres;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Sends connections to the primary, except for the reads run through {@link #read(Object, Supplier)},
+ * {@link #readAll(Collection, Supplier)} and {@link #read(Supplier)}, which go to the replicas in turn. A replica that
+ * fails its periodic health check, or fails to hand out a connection for a read, is skipped until
+ * it passes a health check again; with no healthy replica the reads go to the primary.
+ * <p>
+ * Replicas lag behind the primary, so for a while after {@link #wrote(Object)} the reads of the
+ * written item still go to the primary, and a user reading their own update sees it.
+ */
+public class ReadRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadRoutingDataSource.class);
+    private static final int HEALTH_CHECK_TIMEOUT_SECONDS = 5;
+    // The replica the current thread's read is routed to, or null for the primary.
+    private static final ThreadLocal<Integer> REPLICA = new ThreadLocal<>();
+
+    private final HikariDataSource fPrimary;
+    private final Replica[] fReplicas;
+    private final RecentWrites fRecentWrites;
+    private final AtomicInteger fNextReplica = new AtomicInteger();
+    private final ScheduledExecutorService fHealthCheckScheduler;
+
+    public ReadRoutingDataSource(HikariDataSource primary,
+                                 List<HikariDataSource> replicas,
+                                 ReplicaConfig replicaConfig) {
+        validateNotNull(primary);
+        validateNotNull(replicas);
+        validateNotNull(replicaConfig);
+        validateIsTrue(!replicas.isEmpty(), "At least one replica is needed to route reads.");
+        fPrimary = primary;
+        fReplicas = new Replica[replicas.size()];
+        final var targets = new HashMap<Object, Object>();
+        for (var i = 0; i < fReplicas.length; i++) {
+            fReplicas[i] = new Replica(i, replicas.get(i));
+            targets.put(i, replicas.get(i));
+        }
+        fRecentWrites = new RecentWrites(replicaConfig.getReadYourWritesMillis(), System::nanoTime);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        fHealthCheckScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fHealthCheckScheduler.scheduleWithFixedDelay(this::checkHealth, 0,
+                replicaConfig.getHealthCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the read on a healthy replica, or on the primary if the key was written recently or
+     * no replica is healthy. If the replica can't be reached the read is retried on the primary.
+     *
+     * @param key  the item read, as passed to {@link #wrote(Object)}.
+     * @param read queries this data source.
+     */
+    public <T> T read(Object key, Supplier<T> read) {
+        if (fRecentWrites.contains(key))
+            return read.get();
+        return readFromReplica(read);
+    }
+
+    /**
+     * Like {@link #read(Object, Supplier)}, for a read of several items at once: it runs on the
+     * primary if any of the keys was written recently.
+     *
+     * @param keys the items read, as passed to {@link #wrote(Object)}.
+     * @param read queries this data source.
+     */
+    public <T> T readAll(Collection<?> keys, Supplier<T> read) {
+        for (var key : keys) {
+            if (fRecentWrites.contains(key))
+                return read.get();
+        }
+        return readFromReplica(read);
+    }
+
+    /**
+     * Runs a read that isn't of particular items, such as a listing, on a healthy replica, or on
+     * the primary if no replica is healthy. It may miss writes made within the replica lag.
+     *
+     * @param read queries this data source.
+     */
+    public <T> T read(Supplier<T> read) {
+        return readFromReplica(read);
+    }
+
+    /**
+     * Sends the reads of the key to the primary for the read-your-writes window.
+     */
+    public void wrote(Object key) {
+        fRecentWrites.add(key);
+    }
+
+    /**
+     * @return the number of replicas reads are currently routed to.
+     */
+    public int getHealthyReplicaCount() {
+        var count = 0;
+        for (var replica : fReplicas) {
+            if (replica.fHealthy)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Checks every replica by borrowing a connection from its pool and validating it with
+     * {@link java.sql.Connection#isValid}, which pings the server. Runs periodically, and can be
+     * called to check right away.
+     */
+    public void checkHealth() {
+        for (var replica : fReplicas) {
+            try (var connection = replica.fDataSource.getConnection()) {
+                replica.setHealthy(connection.isValid(HEALTH_CHECK_TIMEOUT_SECONDS), null);
+            } catch (SQLException | RuntimeException e) {
+                replica.setHealthy(false, e);
+            }
+        }
+    }
+
+    /**
+     * Stops the health checks and closes the primary and replica pools.
+     */
+    @Override
+    public void close() {
+        fHealthCheckScheduler.shutdownNow();
+        for (var replica : fReplicas) {
+            replica.fDataSource.close();
+        }
+        fPrimary.close();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return REPLICA.get();
+    }
+
+    private <T> T readFromReplica(Supplier<T> read) {
+        final var replica = nextHealthyReplica();
+        if (replica == null)
+            return read.get();
+        REPLICA.set(replica.fIndex);
+        try {
+            return read.get();
+        } catch (DataAccessResourceFailureException e) {
+            replica.setHealthy(false, e);
+        } finally {
+            REPLICA.remove();
+        }
+        return read.get();
+    }
+
+    private Replica nextHealthyReplica() {
+        final var start = fNextReplica.getAndIncrement();
+        for (var i = 0; i < fReplicas.length; i++) {
+            final var replica = fReplicas[Math.floorMod(start + i, fReplicas.length)];
+            if (replica.fHealthy)
+                return replica;
+        }
+        return null;
+    }
+
+    private static final class Replica {
+
+        private final int fIndex;
+        private final HikariDataSource fDataSource;
+        // Healthy until a check or a read fails, so reads start going to the replica right away.
+        private volatile boolean fHealthy = true;
+
+        private Replica(int index, HikariDataSource dataSource) {
+            fIndex = index;
+            fDataSource = dataSource;
+        }
+
+        private void setHealthy(boolean healthy, Exception cause) {
+            if (fHealthy == healthy)
+                return;
+            fHealthy = healthy;
+            if (healthy)
+                LOGGER.info("Replica {} is healthy again, routing reads to it.", fIndex);
+            else
+                LOGGER.warn("Replica {} is unhealthy, routing its reads elsewhere.", fIndex, cause);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.atul.gitbook.learn.postgres;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the keys written within the last window of time. Expired keys are dropped when they
+ * are looked up, and by a sweep once the map has doubled since the last one, so the map holds
+ * about as many keys as are written within one window.
+ */
+final class RecentWrites {
+
+    private static final int MIN_SWEEP_SIZE = 1_024;
+
+    private final long fWindowNanos;
+    private final LongSupplier fNanoClock;
+    private final ConcurrentHashMap<Object, Long> fExpiries = new ConcurrentHashMap<>();
+    private volatile int fSweepSize = MIN_SWEEP_SIZE;
+
+    RecentWrites(long windowMillis, LongSupplier nanoClock) {
+        fWindowNanos = windowMillis * 1_000_000;
+        fNanoClock = nanoClock;
+    }
+
+    void add(Object key) {
+        if (fWindowNanos == 0)
+            return;
+        final var now = fNanoClock.getAsLong();
+        fExpiries.put(key, now + fWindowNanos);
+        if (fExpiries.size() >= fSweepSize)
+            sweep(now);
+    }
+
+    boolean contains(Object key) {
+        final var expiry = fExpiries.get(key);
+        if (expiry == null)
+            return false;
+        if (expiry - fNanoClock.getAsLong() > 0)
+            return true;
+        fExpiries.remove(key, expiry);
+        return false;
+    }
+
+    int size() {
+        return fExpiries.size();
+    }
+
+    private void sweep(long now) {
+        fExpiries.values().removeIf(expiry -> expiry - now <= 0);
+        fSweepSize = Math.max(MIN_SWEEP_SIZE, 2 * fExpiries.size());
+    }
+}
@@ -0,0 +1,53 @@
+package com.atul.gitbook.learn.postgres;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * The read replicas of the database and how reads are routed to them.
+ */
+public class ReplicaConfig {
+
+    private final List<String> fHosts;
+    private final long fHealthCheckIntervalMillis;
+    private final long fReadYourWritesMillis;
+
+    /**
+     * @param hosts                     host and port of each replica. Blank entries are ignored; no
+     *                                  hosts means every read goes to the primary.
+     * @param healthCheckIntervalMillis how often each replica is checked.
+     * @param readYourWritesMillis      how long after a write the reads of the written item still
+     *                                  go to the primary; 0 disables it.
+     */
+    public ReplicaConfig(List<String> hosts,
+                         long healthCheckIntervalMillis,
+                         long readYourWritesMillis) {
+        validateNotNull(hosts);
+        validateIsTrue(healthCheckIntervalMillis > 0, "The health check interval must be positive.");
+        validateIsTrue(readYourWritesMillis >= 0, "The read-your-writes window can't be negative.");
+        final var nonBlankHosts = new ArrayList<String>();
+        for (var host : hosts) {
+            if (host != null && !host.trim().isEmpty())
+                nonBlankHosts.add(host.trim());
+        }
+        fHosts = Collections.unmodifiableList(nonBlankHosts);
+        fHealthCheckIntervalMillis = healthCheckIntervalMillis;
+        fReadYourWritesMillis = readYourWritesMillis;
+    }
+
+    public List<String> getHosts() {
+        return fHosts;
+    }
+
+    public long getHealthCheckIntervalMillis() {
+        return fHealthCheckIntervalMillis;
+    }
+
+    public long getReadYourWritesMillis() {
+        return fReadYourWritesMillis;
+    }
+}
@@ -1,20 +1,50 @@
 package com.atul.gitbook.learn.postgres;
 
+/**
+ * The stored procedures the repository calls. Built with {@link #builder()}, which starts from the
+ * procedures the application calls by default, so a caller names only the ones it changes.
+ */
 public class RepoConfig {
 
     private final String fCreateSproc;
     private final String fGetSproc;
     private final String fUpdateSproc;
     private final String fDeleteSproc;
+    private final String fCreateAllSproc;
+    private final String fCreateTypedSproc;
+    private final String fUpdateTypedSproc;
+    private final String fGetAllSproc;
+    private final String fPageSproc;
+    private final String fExportSproc;
+    private final String fUpdateIfVersionSproc;
+    private final String fUpdateToVersionSproc;
+    private final String fGetByEmailSproc;
+    private final String fGetByPhoneSproc;
+    private final String fSearchSproc;
 
-    public RepoConfig(String createSproc,
-                      String getSproc,
-                      String updateSproc,
-                      String deleteSproc) {
-        fCreateSproc = createSproc;
-        fGetSproc = getSproc;
-        fUpdateSproc = updateSproc;
-        fDeleteSproc = deleteSproc;
+    private RepoConfig(Builder builder) {
+        fCreateSproc = builder.fCreateSproc;
+        fGetSproc = builder.fGetSproc;
+        fUpdateSproc = builder.fUpdateSproc;
+        fDeleteSproc = builder.fDeleteSproc;
+        fCreateAllSproc = builder.fCreateAllSproc;
+        fCreateTypedSproc = builder.fCreateTypedSproc;
+        fUpdateTypedSproc = builder.fUpdateTypedSproc;
+        fGetAllSproc = builder.fGetAllSproc;
+        fPageSproc = builder.fPageSproc;
+        fExportSproc = builder.fExportSproc;
+        fUpdateIfVersionSproc = builder.fUpdateIfVersionSproc;
+        fUpdateToVersionSproc = builder.fUpdateToVersionSproc;
+        fGetByEmailSproc = builder.fGetByEmailSproc;
+        fGetByPhoneSproc = builder.fGetByPhoneSproc;
+        fSearchSproc = builder.fSearchSproc;
+    }
+
+    /**
+     * @return a builder set to the default procedures of the application.
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
     public String getCreateSproc() {
@@ -32,4 +62,196 @@ public class RepoConfig {
     public String getDeleteSproc() {
         return fDeleteSproc;
     }
+
+    public String getCreateAllSproc() {
+        return fCreateAllSproc;
+    }
+
+    public String getCreateTypedSproc() {
+        return fCreateTypedSproc;
+    }
+
+    public String getUpdateTypedSproc() {
+        return fUpdateTypedSproc;
+    }
+
+    public String getGetAllSproc() {
+        return fGetAllSproc;
+    }
+
+    public String getPageSproc() {
+        return fPageSproc;
+    }
+
+    public String getExportSproc() {
+        return fExportSproc;
+    }
+
+    public String getUpdateIfVersionSproc() {
+        return fUpdateIfVersionSproc;
+    }
+
+    public String getUpdateToVersionSproc() {
+        return fUpdateToVersionSproc;
+    }
+
+    public String getGetByEmailSproc() {
+        return fGetByEmailSproc;
+    }
+
+    public String getGetByPhoneSproc() {
+        return fGetByPhoneSproc;
+    }
+
+    public String getSearchSproc() {
+        return fSearchSproc;
+    }
+
+    public static final class Builder {
+
+        private String fCreateSproc = "fn_user_create_returning";
+        private String fGetSproc = "fn_user_by_id_static";
+        private String fUpdateSproc = "fn_user_update_returning";
+        private String fDeleteSproc = "fn_user_delete_static";
+        private String fCreateAllSproc = "fn_users_create";
+        private String fCreateTypedSproc = "fn_user_create_typed";
+        private String fUpdateTypedSproc = "fn_user_update_typed";
+        private String fGetAllSproc = "fn_users_by_ids";
+        private String fPageSproc = "fn_users_page";
+        private String fExportSproc = "fn_users_export";
+        private String fUpdateIfVersionSproc = "fn_user_update_if_version";
+        private String fUpdateToVersionSproc = "fn_user_update_to_version";
+        private String fGetByEmailSproc = "fn_users_by_email";
+        private String fGetByPhoneSproc = "fn_users_by_phone";
+        private String fSearchSproc = "fn_users_search";
+
+        private Builder() {
+        }
+
+        /**
+         * @param createSproc takes an id and a JSON body, and returns the created row.
+         */
+        public Builder createSproc(String createSproc) {
+            fCreateSproc = createSproc;
+            return this;
+        }
+
+        /**
+         * @param getSproc takes an id and returns its row, if any.
+         */
+        public Builder getSproc(String getSproc) {
+            fGetSproc = getSproc;
+            return this;
+        }
+
+        /**
+         * @param updateSproc takes an id and a JSON body, and returns the updated row.
+         */
+        public Builder updateSproc(String updateSproc) {
+            fUpdateSproc = updateSproc;
+            return this;
+        }
+
+        /**
+         * @param deleteSproc takes an id and deletes its row.
+         */
+        public Builder deleteSproc(String deleteSproc) {
+            fDeleteSproc = deleteSproc;
+            return this;
+        }
+
+        /**
+         * @param createAllSproc takes a JSON array of users and returns the created rows.
+         */
+        public Builder createAllSproc(String createAllSproc) {
+            fCreateAllSproc = createAllSproc;
+            return this;
+        }
+
+        /**
+         * @param createTypedSproc like createSproc, but takes each column as its own typed parameter instead of a JSON body.
+         */
+        public Builder createTypedSproc(String createTypedSproc) {
+            fCreateTypedSproc = createTypedSproc;
+            return this;
+        }
+
+        /**
+         * @param updateTypedSproc like updateSproc, but takes each column as its own typed parameter instead of a JSON body.
+         */
+        public Builder updateTypedSproc(String updateTypedSproc) {
+            fUpdateTypedSproc = updateTypedSproc;
+            return this;
+        }
+
+        /**
+         * @param getAllSproc takes an array of ids and returns the rows of those that exist.
+         */
+        public Builder getAllSproc(String getAllSproc) {
+            fGetAllSproc = getAllSproc;
+            return this;
+        }
+
+        /**
+         * @param pageSproc takes an id, or null, and a page size, and returns the rows after the id in id order.
+         */
+        public Builder pageSproc(String pageSproc) {
+            fPageSproc = pageSproc;
+            return this;
+        }
+
+        /**
+         * @param exportSproc returns every row; it should be a SQL function the planner can inline, so a cursor streams it.
+         */
+        public Builder exportSproc(String exportSproc) {
+            fExportSproc = exportSproc;
+            return this;
+        }
+
+        /**
+         * @param updateIfVersionSproc like updateTypedSproc, with the expected version after the id; it updates and
+         *                             returns the row only if it is at that version.
+         */
+        public Builder updateIfVersionSproc(String updateIfVersionSproc) {
+            fUpdateIfVersionSproc = updateIfVersionSproc;
+            return this;
+        }
+
+        /**
+         * @param updateToVersionSproc like updateIfVersionSproc, with the version the row moves to after the
+         *                             expected one, instead of the next.
+         */
+        public Builder updateToVersionSproc(String updateToVersionSproc) {
+            fUpdateToVersionSproc = updateToVersionSproc;
+            return this;
+        }
+
+        /**
+         * @param getByEmailSproc takes an email and returns the rows with that email, both normalized.
+         */
+        public Builder getByEmailSproc(String getByEmailSproc) {
+            fGetByEmailSproc = getByEmailSproc;
+            return this;
+        }
+
+        /**
+         * @param getByPhoneSproc takes a phone number and returns the rows with that phone number, both normalized.
+         */
+        public Builder getByPhoneSproc(String getByPhoneSproc) {
+            fGetByPhoneSproc = getByPhoneSproc;
+            return this;
+        }
+
+        /**
+         * @param searchSproc takes a query and a limit, and returns up to limit rows whose name matches, best first.
+         */
+        public Builder searchSproc(String searchSproc) {
+            fSearchSproc = searchSproc;
+            return this;
+        }
+
+        public RepoConfig build() {
+            return new RepoConfig(this);
+        }
+    }
 }
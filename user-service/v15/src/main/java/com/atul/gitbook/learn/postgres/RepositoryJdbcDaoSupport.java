@@ -1,71 +1,505 @@
 package com.atul.gitbook.learn.postgres;
 
 import com.atul.gitbook.learn.jackson.Serializer;
+import org.postgresql.PGConnection;
 import org.postgresql.util.PGobject;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * Calls the user stored procedures. Every call goes through the {@link org.springframework.jdbc.core.JdbcTemplate},
+ * which closes the statement and hands the connection back to the pool once the call completes,
+ * whether it succeeded or not.
+ * <p>
+ * The procedure names are validated and the call strings built once, at construction, so a call
+ * does no formatting or pattern matching. Since the call strings never change, the driver's
+ * per-connection statement cache keeps serving the same server-side prepared statements; see
+ * {@code prepareThreshold} in the database url.
+ * <p>
+ * With a {@link ReadRoutingDataSource}, {@link #get(String, RowMapper)},
+ * {@link #getAll(UUID[], RowMapper)} and {@link #getPage(UUID, int, RowMapper)} read from a replica
+ * and the writes by id are reported to it, for read-your-writes.
+ */
 public class RepositoryJdbcDaoSupport extends JdbcDaoSupport {
 
-    private final RepoConfig fRepoConfig;
+    private static final CallableStatementCallback<Boolean> EXECUTE = CallableStatement::execute;
+
+    // The staging table of an import lives only as long as the import's transaction. The copied
+    // rows take the defaults of the columns they don't have, such as the version.
+    private static final String CREATE_IMPORT_TABLE = "CREATE TEMP TABLE users_import (LIKE users INCLUDING DEFAULTS) ON COMMIT DROP";
+    private static final String COPY_INTO_IMPORT_TABLE = "COPY users_import (id, name, phone, email, administrator) FROM STDIN WITH (FORMAT csv)";
+    private static final String MERGE_IMPORT_TABLE = "SELECT fn_users_import_merge()";
+    private static final String SELECT_IMPORTED_IDS = "SELECT id FROM users_import";
+    // Rows of a page, and of an export, fetched per round trip through a server-side cursor.
+    private static final int PAGE_FETCH_SIZE = 250;
+    private static final int EXPORT_FETCH_SIZE = 1_000;
+
+    private final String fCreateSql;
+    private final String fGetSql;
+    private final String fUpdateSql;
+    private final String fDeleteSql;
+    private final String fCreateAllSql;
+    private final String fCreateTypedSql;
+    private final String fUpdateTypedSql;
+    private final String fGetAllSql;
+    private final String fPageSql;
+    private final String fExportSql;
+    private final String fUpdateIfVersionSql;
+    private final String fUpdateToVersionSql;
+    private final String fGetByEmailSql;
+    private final String fGetByPhoneSql;
+    private final String fSearchSql;
+    // Null when the data source doesn't route reads to replicas.
+    private final ReadRoutingDataSource fReadRouting;
 
     public RepositoryJdbcDaoSupport(DataSource dataSource,
                                     RepoConfig repoConfig) {
+        fCreateSql = callWithIdAndBody(repoConfig.getCreateSproc());
+        fGetSql = callWithId(repoConfig.getGetSproc());
+        fUpdateSql = callWithIdAndBody(repoConfig.getUpdateSproc());
+        fDeleteSql = callWithId(repoConfig.getDeleteSproc());
+        fCreateAllSql = callWithId(repoConfig.getCreateAllSproc());
+        fCreateTypedSql = callWithParameters(repoConfig.getCreateTypedSproc(), 5);
+        fUpdateTypedSql = callWithParameters(repoConfig.getUpdateTypedSproc(), 4);
+        fGetAllSql = callWithId(repoConfig.getGetAllSproc());
+        fPageSql = callWithParameters(repoConfig.getPageSproc(), 2);
+        fExportSql = callWithParameters(repoConfig.getExportSproc(), 0);
+        fUpdateIfVersionSql = callWithParameters(repoConfig.getUpdateIfVersionSproc(), 5);
+        fUpdateToVersionSql = callWithParameters(repoConfig.getUpdateToVersionSproc(), 6);
+        fGetByEmailSql = callWithParameters(repoConfig.getGetByEmailSproc(), 1);
+        fGetByPhoneSql = callWithParameters(repoConfig.getGetByPhoneSproc(), 1);
+        fSearchSql = callWithParameters(repoConfig.getSearchSproc(), 2);
+        fReadRouting = dataSource instanceof ReadRoutingDataSource ? (ReadRoutingDataSource) dataSource : null;
         setDataSource(dataSource);
-        fRepoConfig = repoConfig;
     }
 
-    public <T> void create(
+    /**
+     * Creates the item and returns the created row, which the procedure returns, in the same round trip.
+     */
+    public <T, R> R create(
             final String id,
             final T body,
-            final Serializer<T> serializer) throws SQLException {
-        StoredProcedureValidator.validateStoredProcedure(fRepoConfig.getCreateSproc());
-        generateCallableStatementWithIdAndBody(id, body, fRepoConfig.getCreateSproc(), serializer, getConnection()).execute();
+            final Serializer<T> serializer,
+            final RowMapper<R> rowMapper) {
+        final PreparedStatementCreator createCallableStatement = (Connection connection) ->
+                generateCallableStatementWithIdAndBody(id, body, fCreateSql, serializer, connection);
+        final var created = single(getJdbcTemplate().query(createCallableStatement, rowMapper));
+        wrote(id);
+        return created;
+    }
+
+    /**
+     * Creates the item from its columns, each bound as a parameter of its own type, and returns
+     * the created row in the same round trip. Unlike {@link #create(String, Object, Serializer, RowMapper)}
+     * there is no JSON to write on this side or to parse on the server, the id is sent as a uuid
+     * and the strings as varchar.
+     *
+     * @param columns the values of the columns after the id, in the order the procedure takes them.
+     */
+    public <R> R createWithColumns(
+            final UUID id,
+            final Object[] columns,
+            final RowMapper<R> rowMapper) {
+        final PreparedStatementCreator createCallableStatement = (Connection connection) ->
+                generateCallableStatementWithIdAndColumns(id, columns, fCreateTypedSql, connection);
+        final var created = single(getJdbcTemplate().query(createCallableStatement, rowMapper));
+        wrote(id.toString());
+        return created;
+    }
+
+    /**
+     * Creates every item of the bodies, each a JSON array, with one call per body and returns the
+     * created rows. Several bodies are created in one transaction, so either all of them are
+     * created or none is. The id column of each returned row is reported as written.
+     */
+    public <T, R> List<R> createAll(
+            final List<T> bodies,
+            final Serializer<T> serializer,
+            final RowMapper<R> rowMapper) {
+        final var ids = new ArrayList<String>();
+        final RowMapper<R> rowMapperKeepingIds = fReadRouting == null ? rowMapper : (resultSet, rowNum) -> {
+            ids.add(resultSet.getString("id"));
+            return rowMapper.mapRow(resultSet, rowNum);
+        };
+        final List<R> created;
+        if (bodies.size() == 1) {
+            final PreparedStatementCreator createAllCallableStatement = (Connection connection) -> {
+                final var cs = connection.prepareCall(fCreateAllSql);
+                cs.setObject(1, buildPgObject(serializer.serialize(bodies.get(0))));
+                return cs;
+            };
+            created = getJdbcTemplate().query(createAllCallableStatement, rowMapperKeepingIds);
+        } else {
+            final ConnectionCallback<List<R>> createAll = (Connection connection) -> {
+                final var autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (var cs = connection.prepareCall(fCreateAllSql)) {
+                    final var rows = new ArrayList<R>();
+                    for (var body : bodies) {
+                        cs.setObject(1, buildPgObject(serializer.serialize(body)));
+                        try (var resultSet = cs.executeQuery()) {
+                            var rowNum = 0;
+                            while (resultSet.next()) {
+                                rows.add(rowMapperKeepingIds.mapRow(resultSet, rowNum++));
+                            }
+                        }
+                    }
+                    connection.commit();
+                    return rows;
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            };
+            created = getJdbcTemplate().execute(createAll);
+        }
+        for (var id : ids) {
+            wrote(id);
+        }
+        return created;
+    }
+
+    /**
+     * Streams the rows, in the CSV format of {@code COPY}, into a staging table and then merges the
+     * staging table into users with one statement, all in one transaction. The rows are sent as
+     * they are read, so memory use doesn't depend on how many there are. With a
+     * {@link ReadRoutingDataSource}, the ids of the staged rows are reported as written before the
+     * transaction commits, since the staging table is dropped with it.
+     *
+     * @param rows id, name, phone, email and administrator of each user, one per line.
+     * @return the number of users added.
+     */
+    public long importAll(final Reader rows) {
+        final ConnectionCallback<Long> importAll = (Connection connection) -> {
+            final var autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (var statement = connection.createStatement()) {
+                statement.execute(CREATE_IMPORT_TABLE);
+                connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_INTO_IMPORT_TABLE, rows);
+                final long imported;
+                try (var resultSet = statement.executeQuery(MERGE_IMPORT_TABLE)) {
+                    resultSet.next();
+                    imported = resultSet.getLong(1);
+                }
+                if (fReadRouting != null)
+                    wroteImported(statement);
+                connection.commit();
+                return imported;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } catch (IOException e) {
+                connection.rollback();
+                throw new UncheckedIOException(e);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        };
+        return getJdbcTemplate().execute(importAll);
     }
 
     public <T> T get(
             final String id,
             final RowMapper<T> rowMapper) {
-        StoredProcedureValidator.validateStoredProcedure(fRepoConfig.getGetSproc());
         final PreparedStatementCreator getCallableStatement = (Connection connection) ->
-                generateCallableStatementWithId(id, fRepoConfig.getGetSproc(), connection);
-        final var items = getJdbcTemplate().query(getCallableStatement, rowMapper);
-        final var item = items.stream().findFirst();
-        if (item.isPresent())
-            return item.get();
-        throw new NoSuchElementException();
+                generateCallableStatementWithId(id, fGetSql, connection);
+        final Supplier<T> get = () -> single(getJdbcTemplate().query(getCallableStatement, rowMapper));
+        return fReadRouting == null ? get.get() : fReadRouting.read(id, get);
     }
 
-    public <T> void update(
+    /**
+     * Like {@link #get(String, RowMapper)}, but always reads from the primary, so the row is the
+     * latest even when the reads of the item would go to a lagging replica.
+     */
+    public <T> T getFromPrimary(
+            final String id,
+            final RowMapper<T> rowMapper) {
+        final PreparedStatementCreator getCallableStatement = (Connection connection) ->
+                generateCallableStatementWithId(id, fGetSql, connection);
+        return single(getJdbcTemplate().query(getCallableStatement, rowMapper));
+    }
+
+    /**
+     * Returns the rows of the items with the ids, in one call that binds the ids as a uuid array.
+     * Ids without an item are left out, and the rows come back in no particular order.
+     */
+    public <T> List<T> getAll(
+            final UUID[] ids,
+            final RowMapper<T> rowMapper) {
+        final PreparedStatementCreator getAllCallableStatement = (Connection connection) -> {
+            final var cs = connection.prepareCall(fGetAllSql);
+            cs.setArray(1, connection.createArrayOf("uuid", ids));
+            return cs;
+        };
+        final Supplier<List<T>> getAll = () -> getJdbcTemplate().query(getAllCallableStatement, rowMapper);
+        if (fReadRouting == null)
+            return getAll.get();
+        final var keys = new ArrayList<String>(ids.length);
+        for (var id : ids) {
+            keys.add(id.toString());
+        }
+        return fReadRouting.readAll(keys, getAll);
+    }
+
+    /**
+     * Returns the rows with the email, which the procedure matches normalized, in no particular order.
+     */
+    public <T> List<T> getByEmail(
+            final String email,
+            final RowMapper<T> rowMapper) {
+        return getByKey(fGetByEmailSql, email, rowMapper);
+    }
+
+    /**
+     * Returns the rows with the phone number, which the procedure matches normalized, in no particular order.
+     */
+    public <T> List<T> getByPhone(
+            final String phone,
+            final RowMapper<T> rowMapper) {
+        return getByKey(fGetByPhoneSql, phone, rowMapper);
+    }
+
+    /**
+     * Returns up to limit rows whose name matches the query, in the order the procedure ranks them.
+     */
+    public <T> List<T> search(
+            final String query,
+            final int limit,
+            final RowMapper<T> rowMapper) {
+        final PreparedStatementCreator searchCallableStatement = (Connection connection) -> {
+            final var cs = connection.prepareCall(fSearchSql);
+            cs.setString(1, query);
+            cs.setInt(2, limit);
+            return cs;
+        };
+        final Supplier<List<T>> search = () -> getJdbcTemplate().query(searchCallableStatement, rowMapper);
+        return fReadRouting == null ? search.get() : fReadRouting.read(search);
+    }
+
+    /**
+     * Returns up to limit rows, in id order, that come after the id. The rows are read through a
+     * server-side cursor, {@value #PAGE_FETCH_SIZE} at a time, so the driver never buffers more
+     * than that many whatever the limit.
+     *
+     * @param after the id the page starts after, or null for the first page.
+     */
+    public <T> List<T> getPage(
+            final UUID after,
+            final int limit,
+            final RowMapper<T> rowMapper) {
+        final Supplier<List<T>> page = () -> {
+            final var rows = new ArrayList<T>(Math.min(limit, PAGE_FETCH_SIZE));
+            queryWithCursor(fPageSql, cs -> {
+                cs.setObject(1, after, Types.OTHER);
+                cs.setInt(2, limit);
+            }, PAGE_FETCH_SIZE, rowMapper, rows::add);
+            return rows;
+        };
+        return fReadRouting == null ? page.get() : fReadRouting.read(page);
+    }
+
+    /**
+     * Passes every row to the consumer as it is read through a server-side cursor,
+     * {@value #EXPORT_FETCH_SIZE} rows at a time, so memory use doesn't depend on the number of rows.
+     * It runs on the primary: a read retried on the primary after a replica failure would pass the
+     * rows read so far to the consumer again.
+     */
+    public <T> void forEach(
+            final RowMapper<T> rowMapper,
+            final Consumer<T> consumer) {
+        queryWithCursor(fExportSql, cs -> {
+        }, EXPORT_FETCH_SIZE, rowMapper, consumer);
+    }
+
+    /**
+     * Updates the item and returns the updated row, which the procedure returns, in the same round trip.
+     *
+     * @throws NoSuchElementException if there is no item with the id.
+     */
+    public <T, R> R update(
             final String id,
             final T body,
-            final Serializer<T> serializer) throws SQLException {
-        StoredProcedureValidator.validateStoredProcedure(fRepoConfig.getUpdateSproc());
-        final var updateCallableStatement = generateCallableStatementWithIdAndBody(id,
-                body, fRepoConfig.getUpdateSproc(), serializer, getConnection());
-        updateCallableStatement.execute();
+            final Serializer<T> serializer,
+            final RowMapper<R> rowMapper) {
+        final PreparedStatementCreator updateCallableStatement = (Connection connection) ->
+                generateCallableStatementWithIdAndBody(id, body, fUpdateSql, serializer, connection);
+        final var updated = single(getJdbcTemplate().query(updateCallableStatement, rowMapper));
+        wrote(id);
+        return updated;
     }
 
-    public void delete(final String id) throws SQLException {
-        StoredProcedureValidator.validateStoredProcedure(fRepoConfig.getDeleteSproc());
-        generateCallableStatementWithId(id, fRepoConfig.getDeleteSproc(), getConnection()).execute();
+    /**
+     * Updates the item from its columns, each bound as a parameter of its own type, and returns
+     * the updated row in the same round trip.
+     *
+     * @param columns the values of the columns after the id, in the order the procedure takes them.
+     * @throws NoSuchElementException if there is no item with the id.
+     */
+    public <R> R updateWithColumns(
+            final UUID id,
+            final Object[] columns,
+            final RowMapper<R> rowMapper) {
+        final PreparedStatementCreator updateCallableStatement = (Connection connection) ->
+                generateCallableStatementWithIdAndColumns(id, columns, fUpdateTypedSql, connection);
+        final var updated = single(getJdbcTemplate().query(updateCallableStatement, rowMapper));
+        wrote(id.toString());
+        return updated;
+    }
+
+    /**
+     * Like {@link #updateWithColumns(UUID, Object[], RowMapper)}, but only updates the item if its
+     * version is the expected one, checked in the same statement that updates it.
+     *
+     * @throws NoSuchElementException if there is no item with the id at the expected version.
+     */
+    public <R> R updateWithColumnsIfVersion(
+            final UUID id,
+            final long expectedVersion,
+            final Object[] columns,
+            final RowMapper<R> rowMapper) {
+        final var versionAndColumns = new Object[columns.length + 1];
+        versionAndColumns[0] = expectedVersion;
+        System.arraycopy(columns, 0, versionAndColumns, 1, columns.length);
+        final PreparedStatementCreator updateCallableStatement = (Connection connection) ->
+                generateCallableStatementWithIdAndColumns(id, versionAndColumns, fUpdateIfVersionSql, connection);
+        final var updated = single(getJdbcTemplate().query(updateCallableStatement, rowMapper));
+        wrote(id.toString());
+        return updated;
+    }
+
+    /**
+     * Like {@link #updateWithColumnsIfVersion(UUID, long, Object[], RowMapper)}, but moves the item
+     * to the given version instead of the next one.
+     *
+     * @throws NoSuchElementException if there is no item with the id at the expected version.
+     */
+    public <R> R updateWithColumnsToVersion(
+            final UUID id,
+            final long expectedVersion,
+            final long version,
+            final Object[] columns,
+            final RowMapper<R> rowMapper) {
+        final var versionsAndColumns = new Object[columns.length + 2];
+        versionsAndColumns[0] = expectedVersion;
+        versionsAndColumns[1] = version;
+        System.arraycopy(columns, 0, versionsAndColumns, 2, columns.length);
+        final PreparedStatementCreator updateCallableStatement = (Connection connection) ->
+                generateCallableStatementWithIdAndColumns(id, versionsAndColumns, fUpdateToVersionSql, connection);
+        final var updated = single(getJdbcTemplate().query(updateCallableStatement, rowMapper));
+        wrote(id.toString());
+        return updated;
+    }
+
+    public void delete(final String id) {
+        final CallableStatementCreator deleteCallableStatement = (Connection connection) ->
+                generateCallableStatementWithId(id, fDeleteSql, connection);
+        getJdbcTemplate().execute(deleteCallableStatement, EXECUTE);
+        wrote(id);
+    }
+
+    private <T> List<T> getByKey(
+            final String sql,
+            final String key,
+            final RowMapper<T> rowMapper) {
+        final PreparedStatementCreator getByKeyCallableStatement = (Connection connection) -> {
+            final var cs = connection.prepareCall(sql);
+            cs.setString(1, key);
+            return cs;
+        };
+        final Supplier<List<T>> getByKey = () -> getJdbcTemplate().query(getByKeyCallableStatement, rowMapper);
+        return fReadRouting == null ? getByKey.get() : fReadRouting.read(getByKey);
+    }
+
+    /**
+     * Runs the query in a transaction of its own, without which the driver reads all rows at once,
+     * and hands the rows to the consumer as they are fetched.
+     */
+    private <T> void queryWithCursor(
+            final String sql,
+            final PreparedStatementSetter parameters,
+            final int fetchSize,
+            final RowMapper<T> rowMapper,
+            final Consumer<T> consumer) {
+        final ConnectionCallback<Void> query = (Connection connection) -> {
+            final var autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (var cs = connection.prepareCall(sql)) {
+                cs.setFetchSize(fetchSize);
+                parameters.setValues(cs);
+                try (var resultSet = cs.executeQuery()) {
+                    var rowNum = 0;
+                    while (resultSet.next()) {
+                        consumer.accept(rowMapper.mapRow(resultSet, rowNum++));
+                    }
+                }
+                connection.commit();
+                return null;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        };
+        getJdbcTemplate().execute(query);
+    }
+
+    /**
+     * Reports the ids in the staging table as written, read through a cursor in the import's
+     * transaction, {@value #EXPORT_FETCH_SIZE} at a time.
+     */
+    private void wroteImported(final Statement statement) throws SQLException {
+        statement.setFetchSize(EXPORT_FETCH_SIZE);
+        try (var resultSet = statement.executeQuery(SELECT_IMPORTED_IDS)) {
+            while (resultSet.next()) {
+                wrote(resultSet.getString(1));
+            }
+        }
+    }
+
+    private void wrote(final String id) {
+        if (fReadRouting != null)
+            fReadRouting.wrote(id);
+    }
+
+    private static <T> T single(final List<T> items) {
+        final var item = items.stream().findFirst();
+        if (item.isPresent())
+            return item.get();
+        throw new NoSuchElementException();
     }
 
     private <T> CallableStatement generateCallableStatementWithIdAndBody(
             final String id,
             final T body,
-            final String sproc,
+            final String sql,
             final Serializer<T> serializer,
             final Connection connection) throws SQLException {
         final var pgObject = buildPgObject(serializer.serialize(body));
-        final var sql = String.format("{call %s(?, ?)}", sproc);
         final var cs = connection.prepareCall(sql);
         var param = 1;
         cs.setObject(param++, id);
@@ -73,20 +507,67 @@ public class RepositoryJdbcDaoSupport extends JdbcDaoSupport {
         return cs;
     }
 
+    private CallableStatement generateCallableStatementWithIdAndColumns(
+            final UUID id,
+            final Object[] columns,
+            final String sql,
+            final Connection connection) throws SQLException {
+        final var cs = connection.prepareCall(sql);
+        cs.setObject(1, id);
+        for (var i = 0; i < columns.length; i++) {
+            setColumn(cs, i + 2, columns[i]);
+        }
+        return cs;
+    }
+
+    /**
+     * Binds the column with the type of its value. Strings are sent as varchar objects, as with
+     * stringtype=unspecified in the url the driver sends even {@code setObject(i, v, Types.VARCHAR)}
+     * untyped, for the server to infer.
+     */
+    private static void setColumn(final CallableStatement cs, final int param, final Object column) throws SQLException {
+        if (column instanceof String || column == null)
+            cs.setObject(param, buildPgObject("varchar", (String) column));
+        else if (column instanceof Boolean)
+            cs.setObject(param, column, Types.BOOLEAN);
+        else if (column instanceof Long)
+            cs.setObject(param, column, Types.BIGINT);
+        else
+            throw new IllegalArgumentException("Can't bind a column of " + column.getClass() + ".");
+    }
+
     private CallableStatement generateCallableStatementWithId(
             final String id,
-            final String sproc,
+            final String sql,
             final Connection connection) throws SQLException {
-        final var sql = String.format("{call %s(?)}", sproc);
         final var cs = connection.prepareCall(sql);
         cs.setObject(1, id);
         return cs;
     }
 
+    private static String callWithIdAndBody(final String sproc) {
+        StoredProcedureValidator.validateStoredProcedure(sproc);
+        return String.format("{call %s(?, ?)}", sproc);
+    }
+
+    private static String callWithId(final String sproc) {
+        StoredProcedureValidator.validateStoredProcedure(sproc);
+        return String.format("{call %s(?)}", sproc);
+    }
+
+    private static String callWithParameters(final String sproc, final int parameterCount) {
+        StoredProcedureValidator.validateStoredProcedure(sproc);
+        return String.format("{call %s(%s)}", sproc, String.join(", ", Collections.nCopies(parameterCount, "?")));
+    }
+
     private static PGobject buildPgObject(String requestJson) throws SQLException {
-        final var jsonObject = new PGobject();
-        jsonObject.setType("jsonb");
-        jsonObject.setValue(requestJson);
-        return jsonObject;
+        return buildPgObject("jsonb", requestJson);
+    }
+
+    private static PGobject buildPgObject(String type, String value) throws SQLException {
+        final var pgObject = new PGobject();
+        pgObject.setType(type);
+        pgObject.setValue(value);
+        return pgObject;
     }
 }
@@ -0,0 +1,89 @@
+package com.atul.gitbook.learn.search;
+
+import com.atul.gitbook.learn.collections.UuidOrder;
+import com.atul.gitbook.learn.users.models.User;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+
+/**
+ * Ranks the users offered to it by how many of the query's {@link Trigrams} their name has, and
+ * keeps the best up to the limit. Only matching users are kept, in a heap with the worst on top,
+ * so a search costs the memory of its results however many users are offered. Users that rank
+ * the same are ordered by id, as the database orders them. The matches and their ranking
+ * approximate the database's word_similarity, as described in {@link Trigrams}.
+ */
+public final class NameSearch {
+
+    // Best first: more of the query's trigrams, then the smaller id.
+    private static final Comparator<Match> RANKING = Comparator.<Match>comparingInt(match -> -match.fMatches)
+            .thenComparing(match -> match.fUser.getId(), UuidOrder.COMPARATOR);
+
+    private final Set<String> fQuery;
+    private final int fRequiredMatches;
+    private final int fLimit;
+    private final PriorityQueue<Match> fWorstFirst;
+
+    /**
+     * @param query the text searched for in the names.
+     * @param limit the most users returned.
+     */
+    public NameSearch(String query, int limit) {
+        validateIsTrue(limit > 0, "The search limit must be positive.");
+        fQuery = Trigrams.of(query);
+        fRequiredMatches = Trigrams.requiredMatches(fQuery.size());
+        fLimit = limit;
+        fWorstFirst = new PriorityQueue<>(limit, RANKING.reversed());
+    }
+
+    /**
+     * @return the trigrams of the query, empty if it can't match any name.
+     */
+    public Set<String> getQuery() {
+        return fQuery;
+    }
+
+    public void offer(User user) {
+        if (fQuery.isEmpty())
+            return;
+        final var matches = Trigrams.countMatches(fQuery, Trigrams.of(user.getName()));
+        if (matches < fRequiredMatches)
+            return;
+        final var match = new Match(user, matches);
+        if (fWorstFirst.size() < fLimit) {
+            fWorstFirst.add(match);
+        } else if (RANKING.compare(match, fWorstFirst.peek()) < 0) {
+            fWorstFirst.poll();
+            fWorstFirst.add(match);
+        }
+    }
+
+    /**
+     * @return the users kept, best match first.
+     */
+    public List<User> getUsers() {
+        final var matches = new ArrayList<>(fWorstFirst);
+        matches.sort(RANKING);
+        final var users = new ArrayList<User>(matches.size());
+        for (var match : matches) {
+            users.add(match.fUser);
+        }
+        return users;
+    }
+
+    private static final class Match {
+
+        private final User fUser;
+        private final int fMatches;
+
+        private Match(User user, int matches) {
+            fUser = user;
+            fMatches = matches;
+        }
+    }
+}
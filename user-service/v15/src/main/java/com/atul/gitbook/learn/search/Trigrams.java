@@ -0,0 +1,74 @@
+package com.atul.gitbook.learn.search;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Splits text into trigrams the way PostgreSQL's pg_trgm does: the text is lower cased and cut
+ * into words of letters and digits, each word is padded with two spaces in front and one behind,
+ * and every three consecutive characters of a padded word are a trigram. "Sel" gives "  s", " se",
+ * "sel" and "el ".
+ * <p>
+ * A text matches a query when it has at least {@value #MATCH_NUMERATOR}/{@value #MATCH_DENOMINATOR}
+ * of the query's trigrams, pg_trgm's default word_similarity_threshold of 0.6. This only
+ * approximates the database's word_similarity, which takes the query's trigrams found in the most
+ * similar continuous extent of the text, and counts that extent's other trigrams against it. The
+ * in-memory rule matches every name the database does, and also names whose matching trigrams are
+ * spread apart: "Ann Marie-Louise Doe" matches "ann doe" here, but not in the database.
+ */
+public final class Trigrams {
+
+    private static final int MATCH_NUMERATOR = 3;
+    private static final int MATCH_DENOMINATOR = 5;
+
+    private Trigrams() {
+    }
+
+    /**
+     * @return the distinct trigrams of the text, empty if it has no letters or digits.
+     */
+    public static Set<String> of(String text) {
+        validateNotNull(text);
+        final var trigrams = new HashSet<String>();
+        final var lowerCase = text.toLowerCase(Locale.ROOT);
+        var start = 0;
+        while (start < lowerCase.length()) {
+            if (!Character.isLetterOrDigit(lowerCase.charAt(start))) {
+                start++;
+                continue;
+            }
+            var end = start;
+            while (end < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(end))) {
+                end++;
+            }
+            final var padded = "  " + lowerCase.substring(start, end) + " ";
+            for (var i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(padded.substring(i, i + 3));
+            }
+            start = end;
+        }
+        return trigrams;
+    }
+
+    /**
+     * @return the fewest of a query's trigrams a text must have to match it.
+     */
+    public static int requiredMatches(int queryTrigrams) {
+        return (MATCH_NUMERATOR * queryTrigrams + MATCH_DENOMINATOR - 1) / MATCH_DENOMINATOR;
+    }
+
+    /**
+     * @return how many of the query's trigrams the text has.
+     */
+    public static int countMatches(Set<String> query, Set<String> text) {
+        var matches = 0;
+        for (var trigram : query) {
+            if (text.contains(trigram))
+                matches++;
+        }
+        return matches;
+    }
+}
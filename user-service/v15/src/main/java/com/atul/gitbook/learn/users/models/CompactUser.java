@@ -0,0 +1,125 @@
+package com.atul.gitbook.learn.users.models;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * A compact encoding of a {@link User} for keeping many of them in memory. The id is kept as its
+ * two halves, the phone number, always ten digits, as a {@code long}, and the name and email as
+ * Latin-1 bytes. A name or email that doesn't fit Latin-1 falls back to UTF-8. The email is split at the
+ * {@code @} and the domains are shared between users, since most users share a few of them.
+ * <p>
+ * This takes about half the memory of a {@link User}, which holds a {@link UUID} and three
+ * {@link String}s. The getters decode on every call, so use {@link #toUser()} when the same user
+ * is read more than once.
+ */
+public final class CompactUser {
+
+    private static final int PHONE_DIGITS = 10;
+    // Bounds the shared domains so that a flood of distinct domains can't grow the pool forever.
+    private static final int MAX_SHARED_DOMAINS = 10_000;
+    private static final Map<String, byte[]> SHARED_DOMAINS = new ConcurrentHashMap<>();
+
+    private final long fIdMostSigBits;
+    private final long fIdLeastSigBits;
+    private final long fPhone;
+    private final long fVersion;
+    private final byte[] fName;
+    private final byte[] fEmailLocalPart;
+    private final byte[] fEmailDomain;
+    private final boolean fNameUtf8;
+    private final boolean fEmailUtf8;
+    private final boolean fAdministrator;
+
+    private CompactUser(User user) {
+        fIdMostSigBits = user.getId().getMostSignificantBits();
+        fIdLeastSigBits = user.getId().getLeastSignificantBits();
+        fPhone = Long.parseLong(user.getPhone());
+        fVersion = user.getVersion();
+        fNameUtf8 = !isLatin1(user.getName());
+        fName = user.getName().getBytes(charset(fNameUtf8));
+        // The local part is always ASCII, so the domain alone decides the charset of the email.
+        final var email = user.getEmail();
+        final var at = email.indexOf('@');
+        fEmailUtf8 = !isLatin1(email);
+        fEmailLocalPart = email.substring(0, at).getBytes(StandardCharsets.ISO_8859_1);
+        fEmailDomain = sharedDomain(email.substring(at + 1), charset(fEmailUtf8));
+        fAdministrator = user.isAdministrator();
+    }
+
+    public static CompactUser from(User user) {
+        validateNotNull(user);
+        return new CompactUser(user);
+    }
+
+    public User toUser() {
+        // The fields were validated when the user was encoded.
+        return User.withValidated(getId(), getName(), getPhone(), getEmail(), fAdministrator, fVersion);
+    }
+
+    public UUID getId() {
+        return new UUID(fIdMostSigBits, fIdLeastSigBits);
+    }
+
+    public String getName() {
+        return new String(fName, charset(fNameUtf8));
+    }
+
+    public String getPhone() {
+        final var digits = new char[PHONE_DIGITS];
+        var phone = fPhone;
+        for (var i = PHONE_DIGITS - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + phone % 10);
+            phone /= 10;
+        }
+        return new String(digits);
+    }
+
+    public String getEmail() {
+        final var email = new byte[fEmailLocalPart.length + 1 + fEmailDomain.length];
+        System.arraycopy(fEmailLocalPart, 0, email, 0, fEmailLocalPart.length);
+        email[fEmailLocalPart.length] = '@';
+        System.arraycopy(fEmailDomain, 0, email, fEmailLocalPart.length + 1, fEmailDomain.length);
+        return new String(email, charset(fEmailUtf8));
+    }
+
+    public boolean isAdministrator() {
+        return fAdministrator;
+    }
+
+    public long getVersion() {
+        return fVersion;
+    }
+
+    private static boolean isLatin1(String value) {
+        for (var i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0xFF)
+                return false;
+        }
+        return true;
+    }
+
+    private static Charset charset(boolean utf8) {
+        return utf8 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+    }
+
+    /**
+     * @return the encoded domain, shared with every other user of the same domain. A given domain
+     * always gets the same charset, so the shared bytes decode the same for everyone.
+     */
+    private static byte[] sharedDomain(String domain, Charset charset) {
+        final var shared = SHARED_DOMAINS.get(domain);
+        if (shared != null)
+            return shared;
+        final var bytes = domain.getBytes(charset);
+        if (SHARED_DOMAINS.size() >= MAX_SHARED_DOMAINS)
+            return bytes;
+        final var previous = SHARED_DOMAINS.putIfAbsent(domain, bytes);
+        return previous == null ? bytes : previous;
+    }
+}
@@ -0,0 +1,78 @@
+package com.atul.gitbook.learn.users.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * The outcome of a user import.
+ */
+public class ImportReport {
+
+    @JsonProperty("rowsRead")
+    private long fRowsRead;
+
+    @JsonProperty("rowsRejected")
+    private long fRowsRejected;
+
+    @JsonProperty("rowsImported")
+    private long fRowsImported;
+
+    @JsonProperty("rejectedLines")
+    private List<Long> fRejectedLines;
+
+    @JsonProperty("elapsedMillis")
+    private long fElapsedMillis;
+
+    @JsonProperty("rowsPerSecond")
+    private long fRowsPerSecond;
+
+    public ImportReport() {
+    }
+
+    /**
+     * @param rowsRead      the number of user lines read, valid or not.
+     * @param rowsRejected  the number of lines that failed validation.
+     * @param rowsImported  the number of users added. Valid rows whose id was already taken are not added.
+     * @param rejectedLines the line numbers of the first rejected lines.
+     * @param elapsedNanos  how long the import took.
+     */
+    public ImportReport(long rowsRead, long rowsRejected, long rowsImported, List<Long> rejectedLines, long elapsedNanos) {
+        fRowsRead = rowsRead;
+        fRowsRejected = rowsRejected;
+        fRowsImported = rowsImported;
+        fRejectedLines = List.copyOf(rejectedLines);
+        fElapsedMillis = elapsedNanos / 1_000_000;
+        fRowsPerSecond = elapsedNanos == 0 ? 0 : (long) (rowsRead * 1e9 / elapsedNanos);
+    }
+
+    public long getRowsRead() {
+        return fRowsRead;
+    }
+
+    public long getRowsRejected() {
+        return fRowsRejected;
+    }
+
+    public long getRowsImported() {
+        return fRowsImported;
+    }
+
+    public List<Long> getRejectedLines() {
+        return fRejectedLines;
+    }
+
+    public long getElapsedMillis() {
+        return fElapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return fRowsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "read " + fRowsRead + ", rejected " + fRowsRejected + ", imported " + fRowsImported
+                + " in " + fElapsedMillis + " ms (" + fRowsPerSecond + " rows/s)";
+    }
+}
@@ -2,12 +2,18 @@ package com.atul.gitbook.learn.users.models;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Locale;
 import java.util.UUID;
 
 import static com.atul.gitbook.learn.Preconditions.*;
 
 public class User {
 
+    /**
+     * The version of a newly created user. Every update moves the user to the next version.
+     */
+    public static final long INITIAL_VERSION = 1;
+
     @JsonProperty("id")
     private UUID fId;
 
@@ -23,6 +29,9 @@ public class User {
     @JsonProperty("administrator")
     private boolean fAdministrator;
 
+    @JsonProperty("version")
+    private long fVersion = INITIAL_VERSION;
+
     public User() {
     }
 
@@ -37,25 +46,91 @@ public class User {
      *                                  2. Email : Must contain @ in the middle of the string.
      */
     public User(UUID id, String name, String phone, String email, boolean administrator) throws IllegalArgumentException {
+        this(id, name, phone, email, administrator, INITIAL_VERSION);
+    }
+
+    /**
+     * @param version the version of the user, starting at {@link #INITIAL_VERSION}.
+     */
+    public User(UUID id, String name, String phone, String email, boolean administrator, long version) throws IllegalArgumentException {
         validateNotNull(id);
         validateNotNull(name);
         validateNotNull(phone);
         validatePhoneNumber(phone);
         validateNotNull(email);
         validateEmail(email);
+        validateIsTrue(version >= INITIAL_VERSION, "The version must be at least " + INITIAL_VERSION + ".");
         fId = id;
         fName = name;
         fPhone = phone;
         fEmail = email;
         fAdministrator = administrator;
+        fVersion = version;
+    }
+
+    /**
+     * Creates a user without validating the fields again, for fields taken from a user that was
+     * validated when it was created, such as a compact or off-heap copy of it.
+     */
+    public static User withValidated(UUID id, String name, String phone, String email, boolean administrator, long version) {
+        final var user = new User();
+        user.fId = id;
+        user.fName = name;
+        user.fPhone = phone;
+        user.fEmail = email;
+        user.fAdministrator = administrator;
+        user.fVersion = version;
+        return user;
     }
 
     public static User with(UserDto userDto, UUID userId) {
         return new User(userId, userDto.getName(), userDto.getPhone(), userDto.getEmail(), userDto.isAdministrator());
     }
 
+    /**
+     * @return the user updated with the details, at the version after the user's.
+     */
     public static User with(UpdateUserDto userDto, User user) {
-        return new User(user.getId(), userDto.getName(), userDto.getPhone(), userDto.getEmail(), user.isAdministrator());
+        return with(userDto, user, user.getVersion() + 1);
+    }
+
+    /**
+     * @return the user updated with the details, at the given version.
+     */
+    public static User with(UpdateUserDto userDto, User user, long version) {
+        return new User(user.getId(), userDto.getName(), userDto.getPhone(), userDto.getEmail(), user.isAdministrator(),
+                version);
+    }
+
+    /**
+     * @return the email as users are looked up by it: without surrounding spaces and in lower case.
+     * Only spaces are stripped, not tabs or other whitespace, like btrim in the database's lookup.
+     */
+    public static String normalizeEmail(String email) {
+        validateNotNull(email);
+        var start = 0;
+        var end = email.length();
+        while (start < end && email.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && email.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return email.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the phone number as users are looked up by it: only its digits, so any formatting matches.
+     */
+    public static String normalizePhone(String phone) {
+        validateNotNull(phone);
+        final var digits = new StringBuilder(phone.length());
+        for (var i = 0; i < phone.length(); i++) {
+            final var c = phone.charAt(i);
+            if (c >= '0' && c <= '9')
+                digits.append(c);
+        }
+        return digits.toString();
     }
 
     public UUID getId() {
@@ -77,4 +152,8 @@ public class User {
     public boolean isAdministrator() {
         return fAdministrator;
     }
+
+    public long getVersion() {
+        return fVersion;
+    }
 }
@@ -0,0 +1,38 @@
+package com.atul.gitbook.learn.users.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One page of the user listing, in order of the user ids.
+ */
+public class UserPage {
+
+    @JsonProperty("users")
+    private List<User> fUsers;
+
+    @JsonProperty("next")
+    private UUID fNext;
+
+    public UserPage() {
+    }
+
+    /**
+     * @param users the users on the page.
+     * @param next  the id to pass as {@code after} for the next page, or null if this is the last page.
+     */
+    public UserPage(List<User> users, UUID next) {
+        fUsers = List.copyOf(users);
+        fNext = next;
+    }
+
+    public List<User> getUsers() {
+        return fUsers;
+    }
+
+    public UUID getNext() {
+        return fNext;
+    }
+}
@@ -1,12 +1,27 @@
 package com.atul.gitbook.learn.users.service;
 
+import com.atul.gitbook.learn.search.NameSearch;
+import com.atul.gitbook.learn.search.Trigrams;
 import com.atul.gitbook.learn.users.models.UpdateUserDto;
 import com.atul.gitbook.learn.users.models.User;
 import com.atul.gitbook.learn.users.models.UserDto;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.function.Consumer;
 
-public abstract class IUserRepository {
+public abstract class IUserRepository implements Closeable {
+
+    // The most imported users held in memory at once by the default import.
+    private static final int IMPORT_BATCH_SIZE = 1_000;
 
     private User fAdministrator;
     private User fUser;
@@ -49,6 +64,44 @@ public abstract class IUserRepository {
      */
     public abstract User createUser(UserDto userDto);
 
+    /**
+     * Creates and returns new users, in the order of the given user details. Repositories that can
+     * create many users at once, in a single round trip, should override this; by default it
+     * creates them one by one.
+     *
+     * @param userDtos contains the necessary information for each User.
+     * @return the created users
+     */
+    public List<User> createUsers(List<UserDto> userDtos) {
+        final var users = new ArrayList<User>(userDtos.size());
+        for (var userDto : userDtos) {
+            users.add(createUser(userDto));
+        }
+        return users;
+    }
+
+    /**
+     * Adds the users, which are read from the iterator as they are stored, so any number of them
+     * can be imported. Repositories with a bulk load path should override this; by default the
+     * users are created in batches with {@link #createUsers(List)}, which gives them new ids.
+     *
+     * @param users the validated users to add.
+     * @return the number of users added.
+     */
+    public long importUsers(Iterator<User> users) {
+        var imported = 0L;
+        final var batch = new ArrayList<UserDto>(IMPORT_BATCH_SIZE);
+        while (users.hasNext()) {
+            final var user = users.next();
+            batch.add(new UserDto(user.getName(), user.getPhone(), user.getEmail(), user.isAdministrator()));
+            if (batch.size() == IMPORT_BATCH_SIZE || !users.hasNext()) {
+                imported += createUsers(batch).size();
+                batch.clear();
+            }
+        }
+        return imported;
+    }
+
     /**
      * Returns the user with the provided userId.
      *
@@ -57,12 +110,137 @@ public abstract class IUserRepository {
     public abstract User getUser(UUID id);
 
     /**
-     * Updates the user.
+     * Returns the users with the provided userIds, in the order of the ids. Ids without a user
+     * are skipped and a repeated id is returned once. Repositories that can look up many users at
+     * once, in a single round trip, should override this; by default they are looked up one by one.
+     *
+     * @param ids the userIds of the users being queried.
+     */
+    public List<User> getUsers(Collection<UUID> ids) {
+        final var users = new ArrayList<User>(ids.size());
+        for (var id : new LinkedHashSet<>(ids)) {
+            try {
+                users.add(getUser(id));
+            } catch (NoSuchElementException e) {
+                // Absent users are left out.
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Returns the users whose email matches the given one, in no particular order. Emails are
+     * compared as {@link User#normalizeEmail(String) normalized}, and several users may share one.
+     * Repositories that can look the users up by email should override this; by default every
+     * user is scanned.
+     *
+     * @param email the email of the users being queried.
+     */
+    public List<User> findByEmail(String email) {
+        final var normalized = User.normalizeEmail(email);
+        final var users = new ArrayList<User>();
+        forEachUser(user -> {
+            if (User.normalizeEmail(user.getEmail()).equals(normalized))
+                users.add(user);
+        });
+        return users;
+    }
+
+    /**
+     * Returns the users whose phone number matches the given one, in no particular order. Phone
+     * numbers are compared as {@link User#normalizePhone(String) normalized}, and several users may
+     * share one. Repositories that can look the users up by phone number should override this; by
+     * default every user is scanned.
+     *
+     * @param phone the phone number of the users being queried.
+     */
+    public List<User> findByPhone(String phone) {
+        final var normalized = User.normalizePhone(phone);
+        final var users = new ArrayList<User>();
+        forEachUser(user -> {
+            if (User.normalizePhone(user.getPhone()).equals(normalized))
+                users.add(user);
+        });
+        return users;
+    }
+
+    /**
+     * Searches the names of the users for the query, by the {@link Trigrams} they share, and
+     * returns the best matches. Repositories with an index over the names should override this; by
+     * default every user is ranked with a {@link NameSearch}.
+     *
+     * @param query the text searched for, e.g. part of a name.
+     * @param limit the most users returned.
+     * @return the matching users, best match first.
+     */
+    public List<User> searchByName(String query, int limit) {
+        final var search = new NameSearch(query, limit);
+        if (!search.getQuery().isEmpty())
+            forEachUser(search::offer);
+        return search.getUsers();
+    }
+
+    /**
+     * Returns one page of the users in order of their ids, the order PostgreSQL sorts uuids in
+     * (see {@link com.atul.gitbook.learn.collections.UuidOrder}). The next page starts after the
+     * id of the last user on this one, so pages don't shift when users are created or deleted.
+     *
+     * @param after the id the page starts after, or null for the first page.
+     * @param limit the most users on the page.
+     */
+    public abstract List<User> getUsersAfter(UUID after, int limit);
+
+    /**
+     * Passes every user to the consumer, in no particular order, as they are read. The users are
+     * never collected, so this is how all users are exported, however many there are.
+     *
+     * @param consumer takes each user; an exception it throws stops the iteration.
+     */
+    public abstract void forEachUser(Consumer<User> consumer);
+
+    /**
+     * Updates and returns the user.
+     *
+     * @param id userId of the user being queried.
+     * @param userDto contains the new information for the User.
+     * @return the updated user
+     */
+    public abstract User updateUser(UUID id, UpdateUserDto userDto);
+
+    /**
+     * Updates and returns the user, only if it is still at the expected version, so an update
+     * based on a stale read doesn't overwrite the changes made since.
      *
      * @param id userId of the user being queried.
+     * @param expectedVersion the version of the user the update is based on.
      * @param userDto contains the new information for the User.
+     * @return the updated user, at the next version.
+     * @throws ConcurrentModificationException if the user has another version.
      */
-    public abstract void updateUser(UUID id, UpdateUserDto userDto);
+    public abstract User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto);
+
+    /**
+     * Like {@link #updateUser(UUID, long, UpdateUserDto)}, but moves the user to the given version
+     * instead of the next one. Several updates written as one count as many versions this way, so
+     * none of them shares its version with another, as when the updates are written behind.
+     *
+     * @param id userId of the user being queried.
+     * @param expectedVersion the version of the user the update is based on.
+     * @param version the version the user moves to, above the expected one.
+     * @param userDto contains the new information for the User.
+     * @return the updated user, at the given version.
+     * @throws ConcurrentModificationException if the user has another version.
+     */
+    public abstract User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto);
+
+    /**
+     * @throws ConcurrentModificationException if the user isn't at the expected version.
+     */
+    protected static void validateVersion(User user, long expectedVersion) {
+        if (user.getVersion() != expectedVersion)
+            throw new ConcurrentModificationException("The user " + user.getId() + " is at version "
+                    + user.getVersion() + ", not " + expectedVersion + ".");
+    }
 
     /**
      * Deletes the user.
@@ -70,4 +248,14 @@ public abstract class IUserRepository {
      * @param id userId of the user to be deleted.
      */
     public abstract void deleteUser(UUID id);
+
+    /**
+     * Releases what the repository holds, such as threads, files or the repositories it wraps.
+     * Repositories that hold nothing don't need to override this; by default it does nothing.
+     *
+     * @throws IOException if what the repository holds couldn't be released.
+     */
+    @Override
+    public void close() throws IOException {
+    }
 }
@@ -1,13 +1,45 @@
 package com.atul.gitbook.learn.users.service;
 
+import com.atul.gitbook.learn.imports.ImportFormat;
+import com.atul.gitbook.learn.users.models.ImportReport;
 import com.atul.gitbook.learn.users.models.UpdateUserDto;
 import com.atul.gitbook.learn.users.models.User;
 import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.models.UserPage;
 
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.List;
 import java.util.UUID;
 
 public interface IUserService {
 
+    /**
+     * The most users that can be created in one request.
+     */
+    int MAX_USERS_PER_REQUEST = 10_000;
+
+    /**
+     * The most users that can be looked up in one request.
+     */
+    int MAX_USERS_PER_LOOKUP = 1_000;
+
+    /**
+     * The most users on one page of the listing.
+     */
+    int MAX_USERS_PER_PAGE = 1_000;
+
+    /**
+     * The most users one search returns.
+     */
+    int MAX_USERS_PER_SEARCH = 100;
+
+    /**
+     * The longest search query, as long as the longest name.
+     */
+    int MAX_SEARCH_QUERY_LENGTH = 100;
+
     /**
      * Creates and returns a new user.
      *
@@ -17,6 +49,35 @@ public interface IUserService {
      */
     User createUser(UUID requesterId, UserDto userDto);
 
+    /**
+     * Creates and returns new users.
+     *
+     * @param requesterId id of the user making the request
+     * @param userDtos    contains the necessary information for each User.
+     * @return the created users, in the order of the given user details.
+     */
+    List<User> createUsers(UUID requesterId, List<UserDto> userDtos);
+
+    /**
+     * Imports the users streamed in the body, one per line. Lines that fail validation are skipped
+     * and reported, the others are added.
+     *
+     * @param requesterId id of the user making the request
+     * @param format      the format of the body.
+     * @param body        the users, in UTF-8.
+     * @return the number of lines read, rejected and imported, and the throughput.
+     */
+    ImportReport importUsers(UUID requesterId, ImportFormat format, InputStream body);
+
+    /**
+     * Checks that the requester may export the users, and returns the body that streams every
+     * user, one JSON object per line, as it is read from the repository.
+     *
+     * @param requesterId id of the user making the request
+     * @return the response body, which writes the users when the response is sent.
+     */
+    StreamingResponseBody exportUsers(UUID requesterId);
+
     /**
      * Returns the user with the provided userId.
      *
@@ -25,6 +86,53 @@ public interface IUserService {
      */
     User getUser(UUID requesterId, UUID userId);
 
+    /**
+     * Returns the users with the provided userIds, checking the requester once for all of them.
+     *
+     * @param requesterId the userId of the user making the request.
+     * @param userIds     the userIds of the users being queried.
+     * @return the users that exist, in the order of the ids; a repeated id is returned once.
+     */
+    List<User> getUsers(UUID requesterId, List<UUID> userIds);
+
+    /**
+     * Lists the users, one page at a time, in order of their ids.
+     *
+     * @param requesterId the userId of the user making the request.
+     * @param after       the next id returned with the previous page, or null for the first page.
+     * @param limit       the most users on the page.
+     * @return the users on the page and the id the next page starts after.
+     */
+    UserPage listUsers(UUID requesterId, UUID after, int limit);
+
+    /**
+     * Finds the users with the email, compared without surrounding whitespace and case.
+     *
+     * @param requesterId the userId of the user making the request, who must be an administrator.
+     * @param email       the email of the users being queried.
+     * @return the users with the email, in no particular order.
+     */
+    List<User> findUsersByEmail(UUID requesterId, String email);
+
+    /**
+     * Finds the users with the phone number, compared by its digits only.
+     *
+     * @param requesterId the userId of the user making the request, who must be an administrator.
+     * @param phone       the phone number of the users being queried.
+     * @return the users with the phone number, in no particular order.
+     */
+    List<User> findUsersByPhone(UUID requesterId, String phone);
+
+    /**
+     * Searches the names of the users for the query, which may be part of a name or misspelt.
+     *
+     * @param requesterId the userId of the user making the request, who must be an administrator.
+     * @param query       the text searched for, with at least one letter or digit.
+     * @param limit       the most users returned.
+     * @return the users whose name matches, best match first.
+     */
+    List<User> searchUsers(UUID requesterId, String query, int limit);
+
     /**
      * Updates the user.
      *
@@ -34,6 +142,17 @@ public interface IUserService {
      */
     User updateUser(UUID requesterId, UUID id, UpdateUserDto userDto);
 
+    /**
+     * Updates the user only if it is still at the expected version.
+     *
+     * @param requesterId     the userId of the user making the request.
+     * @param id              userId of the user being queried.
+     * @param expectedVersion the version of the user the update is based on.
+     * @param userDto         contains the new information for the User.
+     * @throws com.atul.gitbook.learn.exceptions.PreconditionFailedException if the user has another version.
+     */
+    User updateUser(UUID requesterId, UUID id, long expectedVersion, UpdateUserDto userDto);
+
     /**
      * Deletes the user.
      *
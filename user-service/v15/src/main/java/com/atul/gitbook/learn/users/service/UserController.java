@@ -1,15 +1,27 @@
 package com.atul.gitbook.learn.users.service;
 
+import com.atul.gitbook.learn.exceptions.PreconditionFailedException;
+import com.atul.gitbook.learn.imports.ImportFormat;
+import com.atul.gitbook.learn.users.models.ImportReport;
 import com.atul.gitbook.learn.users.models.UpdateUserDto;
 import com.atul.gitbook.learn.users.models.User;
 import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.models.UserPage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
 public class UserController {
 
+    private static final String ERROR_UNKNOWN_ENTITY_TAG = "If-Match must be * or the entity tag of the user, as returned with it.";
+
     private final IUserService fUserService;
 
     public UserController(IUserService userService) {
@@ -22,17 +34,101 @@ public class UserController {
         return fUserService.createUser(requesterId, userDto);
     }
 
+    @PostMapping("/v1/{requesterId}/users")
+    public List<User> createUsers(@PathVariable("requesterId") UUID requesterId,
+                                  @RequestBody List<UserDto> userDtos) {
+        return fUserService.createUsers(requesterId, userDtos);
+    }
+
+    /**
+     * Lists the users a page at a time; pass the next id of a page as after to get the page that follows it.
+     */
+    @GetMapping("/v1/{requesterId}/users")
+    public UserPage listUsers(@PathVariable("requesterId") UUID requesterId,
+                              @RequestParam(value = "after", required = false) UUID after,
+                              @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return fUserService.listUsers(requesterId, after, limit);
+    }
+
+    /**
+     * Finds the users with the email, ignoring surrounding whitespace and case.
+     */
+    @GetMapping("/v1/{requesterId}/users/by-email")
+    public List<User> findUsersByEmail(@PathVariable("requesterId") UUID requesterId,
+                                       @RequestParam("email") String email) {
+        return fUserService.findUsersByEmail(requesterId, email);
+    }
+
+    /**
+     * Finds the users with the phone number, comparing only its digits.
+     */
+    @GetMapping("/v1/{requesterId}/users/by-phone")
+    public List<User> findUsersByPhone(@PathVariable("requesterId") UUID requesterId,
+                                       @RequestParam("phone") String phone) {
+        return fUserService.findUsersByPhone(requesterId, phone);
+    }
+
+    /**
+     * Searches the names of the users for q, e.g. part of a name, and returns the best matches first.
+     */
+    @GetMapping("/v1/{requesterId}/users/search")
+    public List<User> searchUsers(@PathVariable("requesterId") UUID requesterId,
+                                  @RequestParam("q") String query,
+                                  @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return fUserService.searchUsers(requesterId, query, limit);
+    }
+
+    /**
+     * Streams the body straight from the request into the repository, so the body is never held in memory.
+     */
+    @PostMapping(value = "/v1/{requesterId}/users/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ImportReport importUsers(@PathVariable("requesterId") UUID requesterId,
+                                    @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                    InputStream body) {
+        return fUserService.importUsers(requesterId, ImportFormat.fromContentType(contentType), body);
+    }
+
+    /**
+     * Streams every user, one JSON object per line, to the response as they are read, so the
+     * export never holds more than a fetch of users whatever the number of users.
+     */
+    @GetMapping(value = "/v1/{requesterId}/users/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportUsers(@PathVariable("requesterId") UUID requesterId) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(fUserService.exportUsers(requesterId));
+    }
+
+    /**
+     * Returns the user with its version as the entity tag, to send back in If-Match when updating it.
+     */
     @GetMapping("/v1/{requesterId}/user/{userId}")
-    public User getUser(@PathVariable("requesterId") UUID requesterId,
-                        @PathVariable("userId") UUID userId) {
-        return fUserService.getUser(requesterId, userId);
+    public ResponseEntity<User> getUser(@PathVariable("requesterId") UUID requesterId,
+                                        @PathVariable("userId") UUID userId) {
+        return withEntityTag(fUserService.getUser(requesterId, userId));
+    }
+
+    /**
+     * Looks up every user in the body, a JSON array of ids, at once. A POST, since the ids don't fit in a url.
+     */
+    @PostMapping("/v1/{requesterId}/users:lookup")
+    public List<User> getUsers(@PathVariable("requesterId") UUID requesterId,
+                               @RequestBody List<UUID> userIds) {
+        return fUserService.getUsers(requesterId, userIds);
     }
 
+    /**
+     * Updates the user. With an If-Match of the user's entity tag the update only goes through if
+     * the user wasn't changed since it was read, else it fails with 412 Precondition Failed.
+     */
     @PutMapping("/v1/{requesterId}/user/{userId}")
-    public User updateUser(@PathVariable("requesterId") UUID requesterId,
-                           @PathVariable("userId") UUID userId,
-                           @RequestBody UpdateUserDto userDto) {
-        return fUserService.updateUser(requesterId, userId, userDto);
+    public ResponseEntity<User> updateUser(@PathVariable("requesterId") UUID requesterId,
+                                           @PathVariable("userId") UUID userId,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                           @RequestBody UpdateUserDto userDto) {
+        if (ifMatch == null || ifMatch.trim().equals("*"))
+            return withEntityTag(fUserService.updateUser(requesterId, userId, userDto));
+        return withEntityTag(fUserService.updateUser(requesterId, userId, parseVersion(ifMatch), userDto));
     }
 
     @DeleteMapping("/v1/{requesterId}/user/{userId}")
@@ -40,4 +136,24 @@ public class UserController {
                            @PathVariable("userId") UUID userId) {
         fUserService.deleteUser(requesterId, userId);
     }
-}
\ No newline at end of file
+
+    private static ResponseEntity<User> withEntityTag(User user) {
+        return ResponseEntity.ok()
+                .eTag("\"" + user.getVersion() + "\"")
+                .body(user);
+    }
+
+    /**
+     * @return the version in a strong entity tag. Weak tags never match an If-Match.
+     */
+    private static long parseVersion(String entityTag) {
+        final var tag = entityTag.trim();
+        if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"')
+            throw new PreconditionFailedException(ERROR_UNKNOWN_ENTITY_TAG);
+        try {
+            return Long.parseLong(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException(ERROR_UNKNOWN_ENTITY_TAG);
+        }
+    }
+}
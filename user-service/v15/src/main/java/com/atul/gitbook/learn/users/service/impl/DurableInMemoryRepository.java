@@ -0,0 +1,233 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.journal.JournalConfig;
+import com.atul.gitbook.learn.journal.JournalRecord;
+import com.atul.gitbook.learn.journal.SnapshotStore;
+import com.atul.gitbook.learn.journal.WriteAheadLog;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * An {@link InMemoryRepository} that survives restarts. Every create, update and delete is
+ * appended to a {@link WriteAheadLog} and only returns once the log record is durable; records
+ * from concurrent requests share their fsync. The users are periodically written to a compact
+ * snapshot, after which the log segments it covers are deleted, and on startup the latest
+ * snapshot is loaded and the tail of the log is replayed on top of it.
+ * <p>
+ * Writes are appended to the log and then applied to memory under one lock, so the log order
+ * always matches the order in which the users changed, and a write the log rejects is never seen
+ * by readers or written to a snapshot. A change is visible to readers before its fsync completes,
+ * but the writer is only acknowledged afterwards.
+ */
+public class DurableInMemoryRepository extends IUserRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DurableInMemoryRepository.class);
+
+    private final InMemoryRepository fUsers = new InMemoryRepository();
+    private final ReentrantLock fWriteLock = new ReentrantLock();
+    private final SnapshotStore fSnapshots;
+    private final WriteAheadLog fLog;
+    private final ScheduledExecutorService fSnapshotScheduler;
+
+    public DurableInMemoryRepository(JournalConfig config) {
+        setDefaultAdministrator(fUsers.getDefaultAdministrator());
+        setDefaultUser(fUsers.getDefaultUser());
+        fSnapshots = new SnapshotStore(config.getDirectory());
+        try {
+            final var startTime = System.nanoTime();
+            if (fSnapshots.getLatestLsn().isPresent())
+                fUsers.clear();
+            final var snapshotLsn = fSnapshots.load(fUsers::putUser);
+            fLog = WriteAheadLog.open(config, snapshotLsn, this::replay);
+            LOGGER.info("Recovered {} users from the snapshot at lsn {} and the journal up to lsn {} in {} ms.",
+                    fUsers.size(), snapshotLsn, fLog.getLastLsn(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fSnapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "user-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var interval = config.getSnapshotIntervalSeconds();
+        if (interval > 0)
+            fSnapshotScheduler.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public User createUser(UserDto userDto) {
+        validateNotNull(userDto);
+        final var user = User.with(userDto, UUID.randomUUID());
+        final long lsn;
+        fWriteLock.lock();
+        try {
+            lsn = fLog.append(JournalRecord.upsert(user));
+            fUsers.putUser(user);
+        } finally {
+            fWriteLock.unlock();
+        }
+        fLog.awaitDurable(lsn);
+        return user;
+    }
+
+    @Override
+    public User getUser(UUID id) {
+        return fUsers.getUser(id);
+    }
+
+    @Override
+    public List<User> findByEmail(String email) {
+        return fUsers.findByEmail(email);
+    }
+
+    @Override
+    public List<User> findByPhone(String phone) {
+        return fUsers.findByPhone(phone);
+    }
+
+    @Override
+    public List<User> searchByName(String query, int limit) {
+        return fUsers.searchByName(query, limit);
+    }
+
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        return fUsers.getUsersAfter(after, limit);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        fUsers.forEachUser(consumer);
+    }
+
+    /**
+     * @return the number of users currently held by the repository.
+     */
+    public int size() {
+        return fUsers.size();
+    }
+
+    @Override
+    public User updateUser(UUID id, UpdateUserDto userDto) {
+        validateNotNull(userDto);
+        final User user;
+        final long lsn;
+        fWriteLock.lock();
+        try {
+            user = User.with(userDto, fUsers.getUser(id));
+            lsn = fLog.append(JournalRecord.upsert(user));
+            fUsers.putUser(user);
+        } finally {
+            fWriteLock.unlock();
+        }
+        fLog.awaitDurable(lsn);
+        return user;
+    }
+
+    @Override
+    public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+        return updateUserToVersion(id, expectedVersion, expectedVersion + 1, userDto);
+    }
+
+    @Override
+    public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+        validateNotNull(userDto);
+        validateIsTrue(version > expectedVersion, "The version must be above the expected one.");
+        final User user;
+        final long lsn;
+        fWriteLock.lock();
+        try {
+            final var current = fUsers.getUser(id);
+            validateVersion(current, expectedVersion);
+            user = User.with(userDto, current, version);
+            lsn = fLog.append(JournalRecord.upsert(user));
+            fUsers.putUser(user);
+        } finally {
+            fWriteLock.unlock();
+        }
+        fLog.awaitDurable(lsn);
+        return user;
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        final long lsn;
+        fWriteLock.lock();
+        try {
+            // Only an existing user is deleted, and the delete is logged before it is applied.
+            fUsers.getUser(id);
+            lsn = fLog.append(JournalRecord.delete(id));
+            fUsers.removeUser(id);
+        } finally {
+            fWriteLock.unlock();
+        }
+        fLog.awaitDurable(lsn);
+    }
+
+    /**
+     * Writes a snapshot of all users and deletes the log segments it makes redundant. Writers
+     * keep running while the snapshot is written; whatever they change after the snapshot lsn is
+     * read is replayed from the log on recovery.
+     */
+    public void snapshot() throws IOException {
+        final long lsn;
+        fWriteLock.lock();
+        try {
+            lsn = fLog.getLastLsn();
+        } finally {
+            fWriteLock.unlock();
+        }
+        try (var writer = fSnapshots.newWriter(lsn)) {
+            fUsers.forEachUser(writer::write);
+            writer.commit();
+        }
+        fLog.deleteSegmentsCoveredBy(lsn);
+    }
+
+    /**
+     * Takes a final snapshot, so the next startup doesn't have to replay the log, and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        fSnapshotScheduler.shutdownNow();
+        try {
+            fSnapshotScheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+        fLog.close();
+    }
+
+    private void replay(JournalRecord record) {
+        if (record.isDelete())
+            fUsers.removeUser(record.getId());
+        else
+            fUsers.putUser(record.getUser());
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to write a user snapshot.", e);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Creates the users of another repository in groups, so concurrent creates share one commit
+ * instead of waiting for one each (group commit). A committer thread takes the first waiting
+ * create, gives others up to maxDelayMicros to join it unless maxBatchSize are already waiting,
+ * and creates them all with one {@link IUserRepository#createUsers(List)}. Each caller waits for
+ * its own user, which is returned once the group is committed.
+ * <p>
+ * The other repository must create the users of a batch all or none, as the postgres repository
+ * does in one transaction. If a group fails, its users are created one by one, so a bad
+ * user only fails its own create. Everything but single creates goes straight to the other
+ * repository.
+ * <p>
+ * A caller waits at most {@value #COMMIT_TIMEOUT_SECONDS} seconds for its group. If the committer
+ * thread stops on an unexpected error, every create it hasn't completed fails, and so do the
+ * creates that follow.
+ */
+public class GroupCommitRepository extends IUserRepository {
+
+    // The longest a caller waits for its create to be committed.
+    private static final long COMMIT_TIMEOUT_SECONDS = 60;
+
+    private final IUserRepository fUsers;
+    private final long fMaxDelayNanos;
+    private final int fMaxBatchSize;
+    private final ReentrantLock fLock = new ReentrantLock();
+    private final Condition fCreateRequested = fLock.newCondition();
+    private final Thread fCommitter;
+
+    private List<PendingCreate> fPending = new ArrayList<>();
+    private boolean fClosed;
+
+    /**
+     * @param users          the repository the users are created in.
+     * @param maxDelayMicros the longest a create waits for others to join its group.
+     * @param maxBatchSize   the most users created by one commit.
+     */
+    public GroupCommitRepository(IUserRepository users,
+                                 long maxDelayMicros,
+                                 int maxBatchSize) {
+        validateNotNull(users);
+        validateIsTrue(maxDelayMicros >= 0, "The group commit delay can't be negative.");
+        validateIsTrue(maxBatchSize > 0, "The group commit batch size must be positive.");
+        fUsers = users;
+        fMaxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        fMaxBatchSize = maxBatchSize;
+        setDefaultAdministrator(users.getDefaultAdministrator());
+        setDefaultUser(users.getDefaultUser());
+        fCommitter = new Thread(this::runCommitter, "user-group-commit");
+        fCommitter.setDaemon(true);
+        fCommitter.start();
+    }
+
+    /**
+     * Queues the create for the next group and waits until the group is committed.
+     */
+    @Override
+    public User createUser(UserDto userDto) {
+        validateNotNull(userDto);
+        final var create = new PendingCreate(userDto);
+        fLock.lock();
+        try {
+            if (fClosed)
+                throw new IllegalStateException("The group commit repository is closed.");
+            fPending.add(create);
+            // Wake the committer to open a new group, or to end it early when full.
+            if (fPending.size() == 1 || fPending.size() >= fMaxBatchSize)
+                fCreateRequested.signal();
+        } finally {
+            fLock.unlock();
+        }
+        try {
+            return create.fUser.get(COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(abandon(create)
+                    ? "The create wasn't committed within " + COMMIT_TIMEOUT_SECONDS + " seconds."
+                    : "The group commit of the create didn't complete within " + COMMIT_TIMEOUT_SECONDS
+                    + " seconds; the user may still be created.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(abandon(create)
+                    ? "Interrupted while waiting for the create to be committed."
+                    : "Interrupted while waiting for the create to be committed; the user may still be created.", e);
+        }
+    }
+
+    @Override
+    public List<User> createUsers(List<UserDto> userDtos) {
+        return fUsers.createUsers(userDtos);
+    }
+
+    @Override
+    public long importUsers(Iterator<User> users) {
+        return fUsers.importUsers(users);
+    }
+
+    @Override
+    public User getUser(UUID id) {
+        return fUsers.getUser(id);
+    }
+
+    @Override
+    public List<User> getUsers(Collection<UUID> ids) {
+        return fUsers.getUsers(ids);
+    }
+
+    @Override
+    public List<User> findByEmail(String email) {
+        return fUsers.findByEmail(email);
+    }
+
+    @Override
+    public List<User> findByPhone(String phone) {
+        return fUsers.findByPhone(phone);
+    }
+
+    @Override
+    public List<User> searchByName(String query, int limit) {
+        return fUsers.searchByName(query, limit);
+    }
+
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        return fUsers.getUsersAfter(after, limit);
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        fUsers.forEachUser(consumer);
+    }
+
+    @Override
+    public User updateUser(UUID id, UpdateUserDto userDto) {
+        return fUsers.updateUser(id, userDto);
+    }
+
+    @Override
+    public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+        return fUsers.updateUser(id, expectedVersion, userDto);
+    }
+
+    @Override
+    public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+        return fUsers.updateUserToVersion(id, expectedVersion, version, userDto);
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        fUsers.deleteUser(id);
+    }
+
+    /**
+     * Commits the creates already queued, stops the committer and closes the other repository.
+     */
+    @Override
+    public void close() throws IOException {
+        fLock.lock();
+        try {
+            fClosed = true;
+            fCreateRequested.signal();
+        } finally {
+            fLock.unlock();
+        }
+        try {
+            fCommitter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        fUsers.close();
+    }
+
+    /**
+     * Commits groups until closed. However it stops, the creates it took or left queued are all
+     * completed, failed if they weren't committed, so no caller waits for a group that won't come.
+     */
+    private void runCommitter() {
+        List<PendingCreate> group = List.of();
+        var failure = new IllegalStateException("The group commit stopped.");
+        try {
+            while (true) {
+                fLock.lock();
+                try {
+                    while (!fClosed && fPending.isEmpty()) {
+                        fCreateRequested.awaitUninterruptibly();
+                    }
+                    if (fPending.isEmpty())
+                        return;
+                    // Give other creates a chance to join this commit, unless the group is already full.
+                    var remaining = fMaxDelayNanos;
+                    while (!fClosed && remaining > 0 && fPending.size() < fMaxBatchSize) {
+                        remaining = fCreateRequested.awaitNanos(remaining);
+                    }
+                    group = takeGroup();
+                } finally {
+                    fLock.unlock();
+                }
+                commit(group);
+            }
+        } catch (InterruptedException e) {
+            failure = new IllegalStateException("The group commit was interrupted.", e);
+        } catch (Throwable t) {
+            failure = new IllegalStateException("The group commit stopped on an unexpected error.", t);
+            throw t;
+        } finally {
+            // Completing a create that was already committed does nothing.
+            for (var create : group) {
+                create.fUser.completeExceptionally(failure);
+            }
+            fLock.lock();
+            try {
+                failPending(failure);
+            } finally {
+                fLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the next group from the pending creates. Called with the lock held.
+     */
+    private List<PendingCreate> takeGroup() {
+        if (fPending.size() <= fMaxBatchSize) {
+            final var group = fPending;
+            fPending = new ArrayList<>();
+            return group;
+        }
+        final var head = fPending.subList(0, fMaxBatchSize);
+        final var group = new ArrayList<>(head);
+        head.clear();
+        return group;
+    }
+
+    private void commit(List<PendingCreate> group) {
+        final var userDtos = new ArrayList<UserDto>(group.size());
+        for (var create : group) {
+            userDtos.add(create.fUserDto);
+        }
+        final List<User> users;
+        try {
+            users = fUsers.createUsers(userDtos);
+        } catch (RuntimeException e) {
+            for (var create : group) {
+                createAlone(create);
+            }
+            return;
+        }
+        for (var i = 0; i < group.size(); i++) {
+            group.get(i).fUser.complete(users.get(i));
+        }
+    }
+
+    private void createAlone(PendingCreate create) {
+        try {
+            create.fUser.complete(fUsers.createUser(create.fUserDto));
+        } catch (RuntimeException e) {
+            create.fUser.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Removes the create from the queue, if it is still there.
+     *
+     * @return true if it was, so it won't be committed.
+     */
+    private boolean abandon(PendingCreate create) {
+        fLock.lock();
+        try {
+            return fPending.remove(create);
+        } finally {
+            fLock.unlock();
+        }
+    }
+
+    /**
+     * Fails the queued creates and refuses new ones. Called with the lock held.
+     */
+    private void failPending(RuntimeException failure) {
+        fClosed = true;
+        for (var create : fPending) {
+            create.fUser.completeExceptionally(failure);
+        }
+        fPending.clear();
+    }
+
+    private static final class PendingCreate {
+
+        private final UserDto fUserDto;
+        private final CompletableFuture<User> fUser = new CompletableFuture<>();
+
+        private PendingCreate(UserDto userDto) {
+            fUserDto = userDto;
+        }
+    }
+}
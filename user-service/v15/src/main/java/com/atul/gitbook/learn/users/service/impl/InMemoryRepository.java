@@ -1,69 +1,341 @@
 package com.atul.gitbook.learn.users.service.impl;
 
+import com.atul.gitbook.learn.collections.UuidHashing;
+import com.atul.gitbook.learn.collections.UuidMap;
+import com.atul.gitbook.learn.search.NameSearch;
+import com.atul.gitbook.learn.users.models.CompactUser;
 import com.atul.gitbook.learn.users.models.UpdateUserDto;
 import com.atul.gitbook.learn.users.models.User;
 import com.atul.gitbook.learn.users.models.UserDto;
 import com.atul.gitbook.learn.users.service.IUserRepository;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
 import static com.atul.gitbook.learn.Preconditions.validateNotNull;
 
+/**
+ * Keeps the users as {@link CompactUser}s in {@link UuidMap}s keyed by the user id, so every
+ * lookup is a single probe over primitive arrays and each user takes about half the memory of a
+ * {@link User}. The users are spread over {@value #STRIPES} stripes by the hash of their
+ * id, each guarded by its own {@link StampedLock}, so writes only serialize within a stripe.
+ * <p>
+ * Lookups don't take the lock: they read the stripe under an optimistic stamp and only fall back
+ * to the read lock when a write to the same stripe ran in the meantime. Reads therefore never
+ * write to shared memory, which keeps the read-mostly user lookups from bouncing lock cache lines
+ * between cores.
+ * <p>
+ * Users are also indexed by their normalized email and phone number in {@link SecondaryIndex}es,
+ * and by the trigrams of their name in a {@link TrigramIndex}, which a write to a user updates
+ * while holding the lock of the user's stripe.
+ */
 public class InMemoryRepository extends IUserRepository {
 
-    private List<User> users = new ArrayList<>();
+    private static final int STRIPES = 64;
+
+    private final Stripe[] fStripes = new Stripe[STRIPES];
+    private final SecondaryIndex fByEmail = new SecondaryIndex();
+    private final SecondaryIndex fByPhone = new SecondaryIndex();
+    private final TrigramIndex fByName = new TrigramIndex();
 
     public InMemoryRepository() {
+        for (var i = 0; i < STRIPES; i++) {
+            fStripes[i] = new Stripe();
+        }
         setDefaultAdministrator(new User(UUID.fromString("f994c61d-ebd1-463c-a8d8-ebe5989aa501"), "King Kong", "9999999999", "king@kong.com", true));
         setDefaultUser(new User(UUID.fromString("1109a8c8-49a3-4921-aa80-65e730d587fe"), "David Marshal", "9999999999", "david@marshall.com", false));
-        users.add(getDefaultAdministrator());
-        users.add(getDefaultUser());
+        putUser(getDefaultAdministrator());
+        putUser(getDefaultUser());
     }
 
     @Override
     public User createUser(UserDto userDto) {
         validateNotNull(userDto);
         final var user = User.with(userDto, UUID.randomUUID());
-        users.add(user);
+        putUser(user);
         return user;
     }
 
     @Override
     public User getUser(UUID id) {
         validateNotNull(id);
-        for (var user : users) {
-            if (id.equals(user.getId()))
-                return user;
+        final var user = stripeFor(id).get(id);
+        if (user == null)
+            throw new NoSuchElementException();
+        return user.toUser();
+    }
+
+    /**
+     * Looks each user up in its stripe like {@link #getUser(UUID)}, without the exception for absent
+     * users. The users of different stripes are read at slightly different times.
+     */
+    @Override
+    public List<User> getUsers(Collection<UUID> ids) {
+        validateNotNull(ids);
+        final var users = new ArrayList<User>(ids.size());
+        for (var id : new LinkedHashSet<>(ids)) {
+            validateNotNull(id);
+            final var user = stripeFor(id).get(id);
+            if (user != null)
+                users.add(user.toUser());
+        }
+        return users;
+    }
+
+    /**
+     * Looks the ids up in the email index, then each user in its stripe.
+     */
+    @Override
+    public List<User> findByEmail(String email) {
+        final var normalized = User.normalizeEmail(email);
+        return findBy(fByEmail.get(normalized), user -> User.normalizeEmail(user.getEmail()).equals(normalized));
+    }
+
+    /**
+     * Looks the ids up in the phone index, then each user in its stripe.
+     */
+    @Override
+    public List<User> findByPhone(String phone) {
+        final var normalized = User.normalizePhone(phone);
+        return findBy(fByPhone.get(normalized), user -> User.normalizePhone(user.getPhone()).equals(normalized));
+    }
+
+    /**
+     * Ranks only the users the trigram index gives as candidates, reading each in its stripe.
+     */
+    @Override
+    public List<User> searchByName(String query, int limit) {
+        final var search = new NameSearch(query, limit);
+        if (search.getQuery().isEmpty())
+            return search.getUsers();
+        for (var id : fByName.candidates(search.getQuery())) {
+            final var user = stripeFor(id).get(id);
+            if (user != null)
+                search.offer(user.toUser());
+        }
+        return search.getUsers();
+    }
+
+    /**
+     * Scans every stripe, as the users are kept by hash, keeping only a page worth of them.
+     * Only the users on the page are expanded from their compact form.
+     */
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        final var page = new PageCollector<CompactUser>(after, limit);
+        for (var stripe : fStripes) {
+            final var stamp = stripe.fLock.readLock();
+            try {
+                stripe.fUsers.forEach(page::offer);
+            } finally {
+                stripe.fLock.unlockRead(stamp);
+            }
+        }
+        final var users = new ArrayList<User>();
+        for (var user : page.getItems()) {
+            users.add(user.toUser());
+        }
+        return users;
+    }
+
+    @Override
+    public User updateUser(UUID id, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        final var stripe = stripeFor(id);
+        final CompactUser updated;
+        final var stamp = stripe.fLock.writeLock();
+        try {
+            final var user = stripe.fUsers.get(id);
+            if (user == null)
+                throw new NoSuchElementException();
+            updated = CompactUser.from(User.with(userDto, user.toUser()));
+            stripe.fUsers.put(id, updated);
+            reindex(id, user, updated);
+        } finally {
+            stripe.fLock.unlockWrite(stamp);
         }
-        throw new NoSuchElementException();
+        return updated.toUser();
+    }
+
+    @Override
+    public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+        return updateUserToVersion(id, expectedVersion, expectedVersion + 1, userDto);
     }
 
     @Override
-    public void updateUser(UUID id, UpdateUserDto userDto) {
+    public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
         validateNotNull(id);
         validateNotNull(userDto);
-        for (var i = 0; i < users.size(); i++) {
-            final var user = users.get(i);
-            if (user.getId().equals(id)) {
-                users.set(i, User.with(userDto, user));
-                return;
-            }
+        validateIsTrue(version > expectedVersion, "The version must be above the expected one.");
+        final var stripe = stripeFor(id);
+        final CompactUser updated;
+        final var stamp = stripe.fLock.writeLock();
+        try {
+            final var compactUser = stripe.fUsers.get(id);
+            if (compactUser == null)
+                throw new NoSuchElementException();
+            final var user = compactUser.toUser();
+            validateVersion(user, expectedVersion);
+            updated = CompactUser.from(User.with(userDto, user, version));
+            stripe.fUsers.put(id, updated);
+            reindex(id, compactUser, updated);
+        } finally {
+            stripe.fLock.unlockWrite(stamp);
         }
-        throw new NoSuchElementException();
+        return updated.toUser();
     }
 
     @Override
     public void deleteUser(UUID id) {
         validateNotNull(id);
-        for (var i = 0; i < users.size(); i++) {
-            if (users.get(i).getId().equals(id)) {
-                users.remove(i);
-                return;
+        if (remove(id) == null)
+            throw new NoSuchElementException();
+    }
+
+    /**
+     * @return the number of users currently held by the repository.
+     */
+    public int size() {
+        var size = 0;
+        for (var stripe : fStripes) {
+            final var stamp = stripe.fLock.readLock();
+            try {
+                size += stripe.fUsers.size();
+            } finally {
+                stripe.fLock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Inserts the user as is, or replaces the user with the same id. Used to restore users that
+     * were created earlier, e.g. from a snapshot or a journal.
+     */
+    public void putUser(User user) {
+        validateNotNull(user);
+        final var compactUser = CompactUser.from(user);
+        final var stripe = stripeFor(user.getId());
+        final var stamp = stripe.fLock.writeLock();
+        try {
+            reindex(user.getId(), stripe.fUsers.put(user.getId(), compactUser), compactUser);
+        } finally {
+            stripe.fLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the user if it is present.
+     */
+    public void removeUser(UUID id) {
+        validateNotNull(id);
+        remove(id);
+    }
+
+    /**
+     * Removes every user, including the default accounts.
+     */
+    public void clear() {
+        for (var stripe : fStripes) {
+            final var stamp = stripe.fLock.writeLock();
+            try {
+                stripe.fUsers.clear();
+            } finally {
+                stripe.fLock.unlockWrite(stamp);
+            }
+        }
+        fByEmail.clear();
+        fByPhone.clear();
+        fByName.clear();
+    }
+
+    /**
+     * Passes every user to the consumer. Each stripe is read under its own lock, so users
+     * created, updated or deleted in other stripes while the iteration is running may or may
+     * not be seen. Writes to a stripe wait while its users are passed to the consumer.
+     */
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        for (var stripe : fStripes) {
+            final var stamp = stripe.fLock.readLock();
+            try {
+                stripe.fUsers.forEach((id, user) -> consumer.accept(user.toUser()));
+            } finally {
+                stripe.fLock.unlockRead(stamp);
+            }
+        }
+    }
+
+    private CompactUser remove(UUID id) {
+        final var stripe = stripeFor(id);
+        final var stamp = stripe.fLock.writeLock();
+        try {
+            final var removed = stripe.fUsers.remove(id);
+            reindex(id, removed, null);
+            return removed;
+        } finally {
+            stripe.fLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Moves the user's index entries from the previous to the current user, either of which may
+     * be null. Called with the write lock of the user's stripe held, after the stripe changed.
+     */
+    private void reindex(UUID id, CompactUser previous, CompactUser current) {
+        fByEmail.replace(previous == null ? null : User.normalizeEmail(previous.getEmail()),
+                current == null ? null : User.normalizeEmail(current.getEmail()), id);
+        fByPhone.replace(previous == null ? null : User.normalizePhone(previous.getPhone()),
+                current == null ? null : User.normalizePhone(current.getPhone()), id);
+        fByName.replace(previous == null ? null : previous.getName(), current == null ? null : current.getName(), id);
+    }
+
+    /**
+     * Reads each user in its stripe, keeping those that still match, as a user whose email or
+     * phone number just changed may be found under its previous one.
+     */
+    private List<User> findBy(Collection<UUID> ids, Predicate<CompactUser> matches) {
+        final var users = new ArrayList<User>(ids.size());
+        for (var id : ids) {
+            final var user = stripeFor(id).get(id);
+            if (user != null && matches.test(user))
+                users.add(user.toUser());
+        }
+        return users;
+    }
+
+    private Stripe stripeFor(UUID id) {
+        // The low bits of the hash pick the slot inside the stripe's map, so use the high ones here.
+        return fStripes[UuidHashing.hash(id) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES))];
+    }
+
+    private static final class Stripe {
+        private final UuidMap<CompactUser> fUsers = new UuidMap<>();
+        private final StampedLock fLock = new StampedLock();
+
+        private CompactUser get(UUID id) {
+            final var stamp = fLock.tryOptimisticRead();
+            if (stamp != 0) {
+                // The map tolerates racing reads; the result is only used if no write slipped in.
+                final var user = fUsers.get(id);
+                if (fLock.validate(stamp))
+                    return user;
+            }
+            final var readStamp = fLock.readLock();
+            try {
+                return fUsers.get(id);
+            } finally {
+                fLock.unlockRead(readStamp);
             }
         }
-        throw new NoSuchElementException();
     }
 }
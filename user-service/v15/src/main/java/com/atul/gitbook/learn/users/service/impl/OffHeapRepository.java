@@ -0,0 +1,117 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.offheap.UserSlabStore;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Keeps the users outside of the Java heap in a {@link UserSlabStore}, so millions of users
+ * don't add to the live set the garbage collector has to trace.
+ */
+public class OffHeapRepository extends IUserRepository {
+
+    private final UserSlabStore fStore;
+
+    public OffHeapRepository(int slabSize) {
+        fStore = new UserSlabStore(slabSize);
+        setDefaultAdministrator(new User(UUID.fromString("f994c61d-ebd1-463c-a8d8-ebe5989aa501"), "King Kong", "9999999999", "king@kong.com", true));
+        setDefaultUser(new User(UUID.fromString("1109a8c8-49a3-4921-aa80-65e730d587fe"), "David Marshal", "9999999999", "david@marshall.com", false));
+        fStore.put(getDefaultAdministrator());
+        fStore.put(getDefaultUser());
+    }
+
+    @Override
+    public User createUser(UserDto userDto) {
+        validateNotNull(userDto);
+        final var user = User.with(userDto, UUID.randomUUID());
+        fStore.put(user);
+        return user;
+    }
+
+    @Override
+    public User getUser(UUID id) {
+        validateNotNull(id);
+        final var user = fStore.get(id);
+        if (user == null)
+            throw new NoSuchElementException();
+        return user;
+    }
+
+    /**
+     * Scans every record in the store, keeping only a page worth of them.
+     */
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        final var page = new PageCollector<User>(after, limit);
+        fStore.forEach(user -> page.offer(user.getId(), user));
+        return page.getItems();
+    }
+
+    /**
+     * Writes wait while the users are passed to the consumer.
+     */
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        fStore.forEach(consumer);
+    }
+
+    @Override
+    public User updateUser(UUID id, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        final var updated = fStore.replace(id, user -> User.with(userDto, user));
+        if (updated == null)
+            throw new NoSuchElementException();
+        return updated;
+    }
+
+    @Override
+    public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+        return updateUserToVersion(id, expectedVersion, expectedVersion + 1, userDto);
+    }
+
+    @Override
+    public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        validateIsTrue(version > expectedVersion, "The version must be above the expected one.");
+        final var updated = fStore.replace(id, user -> {
+            validateVersion(user, expectedVersion);
+            return User.with(userDto, user, version);
+        });
+        if (updated == null)
+            throw new NoSuchElementException();
+        return updated;
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        validateNotNull(id);
+        if (!fStore.remove(id))
+            throw new NoSuchElementException();
+    }
+
+    /**
+     * @return the number of users currently held by the repository.
+     */
+    public int size() {
+        return fStore.size();
+    }
+
+    /**
+     * @return the number of bytes reserved in direct memory for the users.
+     */
+    public long getOffHeapBytes() {
+        return fStore.getOffHeapBytes();
+    }
+}
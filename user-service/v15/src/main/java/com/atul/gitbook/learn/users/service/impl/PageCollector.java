@@ -0,0 +1,68 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.collections.UuidOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+
+/**
+ * Picks the first items, in {@link UuidOrder} of their ids, that come after a given id, out of
+ * items offered in any order. Only a page worth of items is kept, in a heap with the largest id
+ * on top, so a page of a hash keyed store costs one scan of the store and the memory of one page.
+ */
+final class PageCollector<T> {
+
+    private final UUID fAfter;
+    private final int fLimit;
+    private final PriorityQueue<Entry<T>> fLargestFirst;
+
+    /**
+     * @param after the id the page starts after, or null for the first page.
+     * @param limit the most items on the page.
+     */
+    PageCollector(UUID after, int limit) {
+        validateIsTrue(limit > 0, "The page size must be positive.");
+        fAfter = after;
+        fLimit = limit;
+        fLargestFirst = new PriorityQueue<>(limit, (a, b) -> UuidOrder.compare(b.fId, a.fId));
+    }
+
+    void offer(UUID id, T item) {
+        if (fAfter != null && UuidOrder.compare(id, fAfter) <= 0)
+            return;
+        if (fLargestFirst.size() < fLimit) {
+            fLargestFirst.add(new Entry<>(id, item));
+        } else if (UuidOrder.compare(id, fLargestFirst.peek().fId) < 0) {
+            fLargestFirst.poll();
+            fLargestFirst.add(new Entry<>(id, item));
+        }
+    }
+
+    /**
+     * @return the items kept, in order of their ids.
+     */
+    List<T> getItems() {
+        final var entries = new ArrayList<>(fLargestFirst);
+        entries.sort((a, b) -> UuidOrder.compare(a.fId, b.fId));
+        final var items = new ArrayList<T>(entries.size());
+        for (var entry : entries) {
+            items.add(entry.fItem);
+        }
+        return items;
+    }
+
+    private static final class Entry<T> {
+
+        private final UUID fId;
+        private final T fItem;
+
+        private Entry(UUID id, T item) {
+            fId = id;
+            fItem = item;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.atul.gitbook.learn.users.service.impl;
 
+import com.atul.gitbook.learn.Preconditions;
+import com.atul.gitbook.learn.imports.CopyRowReader;
 import com.atul.gitbook.learn.jackson.Serializer;
 import com.atul.gitbook.learn.jackson.Serializers;
 import com.atul.gitbook.learn.postgres.RepositoryJdbcDaoSupport;
@@ -9,22 +11,42 @@ import com.atul.gitbook.learn.users.models.UserDto;
 import com.atul.gitbook.learn.users.service.IUserRepository;
 import org.springframework.jdbc.core.RowMapper;
 
-import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.function.Consumer;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
 
 public class PostgresRepository extends IUserRepository {
 
+    // The most users inserted by one call of the batch stored procedure.
+    private static final int CREATE_USERS_BATCH_SIZE = 10_000;
+
     private final RepositoryJdbcDaoSupport fJdbcDaoSupport;
     private final RowMapper<User> fRowMapper;
+    private final boolean fTypedWrites;
 
     private final Serializer<UserDto> SERIALIZER_USER_DTO = Serializers.newJsonSerializer(UserDto.class);
     private final Serializer<UpdateUserDto> SERIALIZER_UPDATE_USER_DTO = Serializers.newJsonSerializer(UpdateUserDto.class);
+    private final Serializer<User[]> SERIALIZER_USERS = Serializers.newJsonSerializer(User[].class);
 
+    /**
+     * @param typedWrites true to create and update users with the procedures taking typed
+     *                    parameters, false to send the users as JSON.
+     */
     public PostgresRepository(RepositoryJdbcDaoSupport jdbcDaoSupport,
-                              RowMapper<User> rowMapper) {
+                              RowMapper<User> rowMapper,
+                              boolean typedWrites) {
         fJdbcDaoSupport = jdbcDaoSupport;
         fRowMapper = rowMapper;
+        fTypedWrites = typedWrites;
         setDefaultAdministrator(createUserIfNotPresent(UUID.fromString("f994c61d-ebd1-463c-a8d8-ebe5989aa501"),
                 new UserDto("King Kong", "9999999999", "king@kong.com", true)));
         setDefaultUser(createUserIfNotPresent(UUID.fromString("1109a8c8-49a3-4921-aa80-65e730d587fe"),
@@ -36,14 +58,55 @@ public class PostgresRepository extends IUserRepository {
         return createUser(UUID.randomUUID(), userDto);
     }
 
-    private User createUser(UUID userId, UserDto userDto) {
-        try {
-            fJdbcDaoSupport.create(userId.toString(), userDto, SERIALIZER_USER_DTO);
-            return getUser(userId);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return null;
+    /**
+     * Inserts the users with one call of the batch stored procedure per
+     * {@value #CREATE_USERS_BATCH_SIZE} users, all in one transaction so the users are created all
+     * or none. The procedure returns the inserted rows, so no follow-up read is needed.
+     */
+    @Override
+    public List<User> createUsers(List<UserDto> userDtos) {
+        validateNotNull(userDtos);
+        final var batches = new ArrayList<User[]>();
+        for (var from = 0; from < userDtos.size(); from += CREATE_USERS_BATCH_SIZE) {
+            final var batch = userDtos.subList(from, Math.min(from + CREATE_USERS_BATCH_SIZE, userDtos.size()));
+            final var requested = new User[batch.size()];
+            for (var i = 0; i < requested.length; i++) {
+                validateNotNull(batch.get(i));
+                requested[i] = User.with(batch.get(i), UUID.randomUUID());
+            }
+            batches.add(requested);
         }
+        final var users = new ArrayList<User>(userDtos.size());
+        if (batches.isEmpty())
+            return users;
+        final var created = new HashMap<UUID, User>();
+        for (var user : fJdbcDaoSupport.createAll(batches, SERIALIZER_USERS, fRowMapper)) {
+            created.put(user.getId(), user);
+        }
+        // The procedure doesn't promise to return the rows in insertion order.
+        for (var batch : batches) {
+            for (var user : batch) {
+                users.add(created.get(user.getId()));
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Copies the users into a staging table with {@code COPY} and merges them into users in one
+     * statement, keeping their ids. Users whose id is already taken are skipped.
+     */
+    @Override
+    public long importUsers(Iterator<User> users) {
+        validateNotNull(users);
+        return fJdbcDaoSupport.importAll(new CopyRowReader(users));
+    }
+
+    private User createUser(UUID userId, UserDto userDto) {
+        if (fTypedWrites)
+            return fJdbcDaoSupport.createWithColumns(userId, new Object[]{userDto.getName(), userDto.getPhone(),
+                    userDto.getEmail(), userDto.isAdministrator()}, fRowMapper);
+        return fJdbcDaoSupport.create(userId.toString(), userDto, SERIALIZER_USER_DTO, fRowMapper);
     }
 
     private User createUserIfNotPresent(UUID userId, UserDto userDto) {
@@ -59,21 +122,127 @@ public class PostgresRepository extends IUserRepository {
         return fJdbcDaoSupport.get(id.toString(), fRowMapper);
     }
 
+    /**
+     * Fetches all the users with one call of the procedure taking an array of ids.
+     */
+    @Override
+    public List<User> getUsers(Collection<UUID> ids) {
+        validateNotNull(ids);
+        final var uniqueIds = new LinkedHashSet<>(ids);
+        uniqueIds.forEach(Preconditions::validateNotNull);
+        if (uniqueIds.isEmpty())
+            return new ArrayList<>();
+        final var found = new HashMap<UUID, User>();
+        for (var user : fJdbcDaoSupport.getAll(uniqueIds.toArray(new UUID[0]), fRowMapper)) {
+            found.put(user.getId(), user);
+        }
+        // The procedure doesn't promise to return the rows in the order of the ids.
+        final var users = new ArrayList<User>(found.size());
+        for (var id : uniqueIds) {
+            final var user = found.get(id);
+            if (user != null)
+                users.add(user);
+        }
+        return users;
+    }
+
+    /**
+     * Calls the procedure matching the normalized email, a probe of the index on it.
+     */
+    @Override
+    public List<User> findByEmail(String email) {
+        validateNotNull(email);
+        return fJdbcDaoSupport.getByEmail(email, fRowMapper);
+    }
+
+    /**
+     * Calls the procedure matching the digits of the phone number, a probe of the index on them.
+     */
     @Override
-    public void updateUser(UUID userId, UpdateUserDto userDto) {
+    public List<User> findByPhone(String phone) {
+        validateNotNull(phone);
+        return fJdbcDaoSupport.getByPhone(phone, fRowMapper);
+    }
+
+    /**
+     * Calls the search procedure, which finds the matching names through the trigram index on
+     * them and ranks only those.
+     */
+    @Override
+    public List<User> searchByName(String query, int limit) {
+        validateNotNull(query);
+        validateIsTrue(limit > 0, "The search limit must be positive.");
+        return fJdbcDaoSupport.search(query, limit, fRowMapper);
+    }
+
+    /**
+     * Reads the page with keyset pagination, a range scan of the primary key index that starts
+     * at the after id, so it costs the same on every page.
+     */
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        validateIsTrue(limit > 0, "The page size must be positive.");
+        return fJdbcDaoSupport.getPage(after, limit, fRowMapper);
+    }
+
+    /**
+     * Streams the users table through a server-side cursor, so only one fetch of rows is held at a time.
+     */
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        validateNotNull(consumer);
+        fJdbcDaoSupport.forEach(fRowMapper, consumer);
+    }
+
+    @Override
+    public User updateUser(UUID userId, UpdateUserDto userDto) {
+        if (fTypedWrites)
+            return fJdbcDaoSupport.updateWithColumns(userId, new Object[]{userDto.getName(), userDto.getPhone(),
+                    userDto.getEmail()}, fRowMapper);
+        return fJdbcDaoSupport.update(userId.toString(), userDto, SERIALIZER_UPDATE_USER_DTO, fRowMapper);
+    }
+
+    /**
+     * Updates the row only where it still has the expected version, in one statement, so the
+     * check and the write can't be interleaved with another update. The version always goes
+     * through the procedure taking typed parameters.
+     */
+    @Override
+    public User updateUser(UUID userId, long expectedVersion, UpdateUserDto userDto) {
+        validateNotNull(userId);
+        validateNotNull(userDto);
         try {
-            fJdbcDaoSupport.update(userId.toString(), userDto, SERIALIZER_UPDATE_USER_DTO);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return fJdbcDaoSupport.updateWithColumnsIfVersion(userId, expectedVersion, new Object[]{userDto.getName(),
+                    userDto.getPhone(), userDto.getEmail()}, fRowMapper);
+        } catch (NoSuchElementException e) {
+            // No row was updated, either as there is none or as it has another version. A replica
+            // may still have the row at the expected version, so the version is read from the primary.
+            validateVersion(fJdbcDaoSupport.getFromPrimary(userId.toString(), fRowMapper), expectedVersion);
+            throw e;
         }
     }
 
+    /**
+     * Like {@link #updateUser(UUID, long, UpdateUserDto)}, in one statement that also sets the version.
+     */
     @Override
-    public void deleteUser(UUID id) {
+    public User updateUserToVersion(UUID userId, long expectedVersion, long version, UpdateUserDto userDto) {
+        validateNotNull(userId);
+        validateNotNull(userDto);
+        validateIsTrue(version > expectedVersion, "The version must be above the expected one.");
         try {
-            fJdbcDaoSupport.delete(id.toString());
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return fJdbcDaoSupport.updateWithColumnsToVersion(userId, expectedVersion, version, new Object[]{
+                    userDto.getName(), userDto.getPhone(), userDto.getEmail()}, fRowMapper);
+        } catch (NoSuchElementException e) {
+            // No row was updated, either as there is none or as it has another version. A replica
+            // may still have the row at the expected version, so the version is read from the primary.
+            validateVersion(fJdbcDaoSupport.getFromPrimary(userId.toString(), fRowMapper), expectedVersion);
+            throw e;
         }
     }
+
+    @Override
+    public void deleteUser(UUID id) {
+        fJdbcDaoSupport.delete(id.toString());
+    }
 }
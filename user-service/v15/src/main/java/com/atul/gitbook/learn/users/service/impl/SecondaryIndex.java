@@ -0,0 +1,89 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps a key, such as a normalized email, to the ids of the users with that key, so users can be
+ * looked up by it with a single probe. A key held by one user maps straight to its id, and only
+ * keys shared by several users get a set, which keeps the index small when most keys are unique.
+ * <p>
+ * Lookups don't lock. The entries of a key change atomically, but a user moving from one key to
+ * another is briefly under both or neither, so callers check the users they find.
+ */
+final class SecondaryIndex {
+
+    // Each value is either the UUID of the only user with the key, or a concurrent Set of them.
+    private final ConcurrentHashMap<String, Object> fIds = new ConcurrentHashMap<>();
+
+    /**
+     * @return the ids of the users with the key.
+     */
+    @SuppressWarnings("unchecked")
+    Collection<UUID> get(String key) {
+        final var ids = fIds.get(key);
+        if (ids == null)
+            return List.of();
+        if (ids instanceof UUID)
+            return List.of((UUID) ids);
+        return new ArrayList<>((Set<UUID>) ids);
+    }
+
+    /**
+     * @return the number of users with the key, without copying their ids.
+     */
+    @SuppressWarnings("unchecked")
+    int count(String key) {
+        final var ids = fIds.get(key);
+        if (ids == null)
+            return 0;
+        return ids instanceof UUID ? 1 : ((Set<UUID>) ids).size();
+    }
+
+    @SuppressWarnings("unchecked")
+    void add(String key, UUID id) {
+        fIds.compute(key, (k, ids) -> {
+            if (ids == null || ids.equals(id))
+                return id;
+            if (ids instanceof UUID) {
+                final Set<UUID> shared = ConcurrentHashMap.newKeySet();
+                shared.add((UUID) ids);
+                shared.add(id);
+                return shared;
+            }
+            ((Set<UUID>) ids).add(id);
+            return ids;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    void remove(String key, UUID id) {
+        fIds.computeIfPresent(key, (k, ids) -> {
+            if (ids instanceof UUID)
+                return ids.equals(id) ? null : ids;
+            final var shared = (Set<UUID>) ids;
+            shared.remove(id);
+            return shared.isEmpty() ? null : shared;
+        });
+    }
+
+    /**
+     * Moves the user from one key to another, either of which may be null for none.
+     */
+    void replace(String previousKey, String key, UUID id) {
+        if (previousKey != null && previousKey.equals(key))
+            return;
+        if (key != null)
+            add(key, id);
+        if (previousKey != null)
+            remove(previousKey, id);
+    }
+
+    void clear() {
+        fIds.clear();
+    }
+}
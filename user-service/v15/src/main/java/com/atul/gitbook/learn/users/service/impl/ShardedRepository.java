@@ -0,0 +1,211 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.collections.PersistentUuidMap;
+import com.atul.gitbook.learn.collections.UuidHashing;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Partitions the users over a fixed number of shards by the hash of their id. Each shard is owned
+ * by a single writer thread: creates, updates and deletes are handed to the writer of the user's
+ * shard and the caller waits for the result, so writes to one shard are applied one at a time
+ * without any lock, and writes to different shards run in parallel.
+ * <p>
+ * The writer publishes every new state of its shard as a {@link PersistentUuidMap} through a
+ * volatile field, so reads go straight to the published map on the calling thread and never
+ * wait for a writer.
+ */
+public class ShardedRepository extends IUserRepository {
+
+    private final Shard[] fShards;
+
+    /**
+     * @param shardCount the number of shards, and so of writer threads. Usually the number of cores.
+     */
+    public ShardedRepository(int shardCount) {
+        validateIsTrue(shardCount > 0, "The shard count must be positive.");
+        fShards = new Shard[shardCount];
+        for (var i = 0; i < shardCount; i++) {
+            fShards[i] = new Shard(i);
+        }
+        setDefaultAdministrator(new User(UUID.fromString("f994c61d-ebd1-463c-a8d8-ebe5989aa501"), "King Kong", "9999999999", "king@kong.com", true));
+        setDefaultUser(new User(UUID.fromString("1109a8c8-49a3-4921-aa80-65e730d587fe"), "David Marshal", "9999999999", "david@marshall.com", false));
+        put(getDefaultAdministrator());
+        put(getDefaultUser());
+    }
+
+    @Override
+    public User createUser(UserDto userDto) {
+        validateNotNull(userDto);
+        final var user = User.with(userDto, UUID.randomUUID());
+        put(user);
+        return user;
+    }
+
+    @Override
+    public User getUser(UUID id) {
+        validateNotNull(id);
+        final var user = shardFor(id).fUsers.get(id);
+        if (user == null)
+            throw new NoSuchElementException();
+        return user;
+    }
+
+    /**
+     * Scans the published map of every shard.
+     */
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        final var page = new PageCollector<User>(after, limit);
+        for (var shard : fShards) {
+            shard.fUsers.forEach(page::offer);
+        }
+        return page.getItems();
+    }
+
+    /**
+     * Iterates over the published map of each shard in turn, without blocking the writers.
+     */
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        for (var shard : fShards) {
+            shard.fUsers.forEach((id, user) -> consumer.accept(user));
+        }
+    }
+
+    @Override
+    public User updateUser(UUID id, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        final var shard = shardFor(id);
+        return shard.write(() -> {
+            final var user = shard.fUsers.get(id);
+            if (user == null)
+                throw new NoSuchElementException();
+            final var updated = User.with(userDto, user);
+            shard.fUsers = shard.fUsers.put(id, updated);
+            return updated;
+        });
+    }
+
+    @Override
+    public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+        return updateUserToVersion(id, expectedVersion, expectedVersion + 1, userDto);
+    }
+
+    @Override
+    public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        validateIsTrue(version > expectedVersion, "The version must be above the expected one.");
+        final var shard = shardFor(id);
+        return shard.write(() -> {
+            final var user = shard.fUsers.get(id);
+            if (user == null)
+                throw new NoSuchElementException();
+            validateVersion(user, expectedVersion);
+            final var updated = User.with(userDto, user, version);
+            shard.fUsers = shard.fUsers.put(id, updated);
+            return updated;
+        });
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        validateNotNull(id);
+        final var shard = shardFor(id);
+        shard.write(() -> {
+            final var users = shard.fUsers.remove(id);
+            if (users == shard.fUsers)
+                throw new NoSuchElementException();
+            shard.fUsers = users;
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of users currently held by the repository.
+     */
+    public int size() {
+        var size = 0;
+        for (var shard : fShards) {
+            size += shard.fUsers.size();
+        }
+        return size;
+    }
+
+    /**
+     * Stops the writer threads after the writes already handed to them are applied.
+     */
+    @Override
+    public void close() {
+        for (var shard : fShards) {
+            shard.fWriter.shutdown();
+        }
+        try {
+            for (var shard : fShards) {
+                shard.fWriter.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void put(User user) {
+        final var shard = shardFor(user.getId());
+        shard.write(() -> {
+            shard.fUsers = shard.fUsers.put(user.getId(), user);
+            return null;
+        });
+    }
+
+    private Shard shardFor(UUID id) {
+        return fShards[Integer.remainderUnsigned(UuidHashing.hash(id), fShards.length)];
+    }
+
+    private static final class Shard {
+
+        private final ExecutorService fWriter;
+        // Only assigned by the writer thread; read by any thread.
+        private volatile PersistentUuidMap<User> fUsers = PersistentUuidMap.empty();
+
+        private Shard(int index) {
+            fWriter = Executors.newSingleThreadExecutor(runnable -> {
+                final var thread = new Thread(runnable, "user-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Runs the write on the shard's writer thread and waits for it, rethrowing what it threw.
+         */
+        private <T> T write(Callable<T> write) {
+            try {
+                return fWriter.submit(write).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the shard writer.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.search.Trigrams;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An inverted index from each {@link Trigrams trigram} of the users' names to the ids of the
+ * users whose name has it, for the in-memory name search.
+ * <p>
+ * A name matching a query has all but a few of the query's trigrams, so it must have at least one
+ * of any few of them. The candidates are therefore read only from the postings of the rarest of
+ * the query's trigrams, and never from those of a trigram most names share, like the one starting
+ * a common first name. The candidates still have to be checked against their names.
+ */
+final class TrigramIndex {
+
+    private final SecondaryIndex fIds = new SecondaryIndex();
+
+    /**
+     * Moves the user from the trigrams of one name to those of another, either of which may be
+     * null for none. Trigrams the names share are left as they are.
+     */
+    void replace(String previousName, String name, UUID id) {
+        final Set<String> previous = previousName == null ? Set.of() : Trigrams.of(previousName);
+        final Set<String> current = name == null ? Set.of() : Trigrams.of(name);
+        for (var trigram : current) {
+            if (!previous.contains(trigram))
+                fIds.add(trigram, id);
+        }
+        for (var trigram : previous) {
+            if (!current.contains(trigram))
+                fIds.remove(trigram, id);
+        }
+    }
+
+    /**
+     * @param query the trigrams of the query.
+     * @return the ids of the users whose name may match the query, among which all those that do.
+     */
+    Set<UUID> candidates(Set<String> query) {
+        final var rarestFirst = new ArrayList<>(query);
+        rarestFirst.sort(Comparator.comparingInt(fIds::count));
+        // A match misses at most this many more trigrams, so it has one of this many rarest ones.
+        final var postingsToRead = query.size() - Trigrams.requiredMatches(query.size()) + 1;
+        final var candidates = new HashSet<UUID>();
+        for (var i = 0; i < postingsToRead && i < rarestFirst.size(); i++) {
+            candidates.addAll(fIds.get(rarestFirst.get(i)));
+        }
+        return candidates;
+    }
+
+    void clear() {
+        fIds.clear();
+    }
+}
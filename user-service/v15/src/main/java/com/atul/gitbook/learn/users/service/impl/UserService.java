@@ -1,25 +1,55 @@
 package com.atul.gitbook.learn.users.service.impl;
 
+import com.atul.gitbook.learn.Preconditions;
 import com.atul.gitbook.learn.exceptions.ForbiddenException;
+import com.atul.gitbook.learn.exceptions.PreconditionFailedException;
 import com.atul.gitbook.learn.exceptions.UnauthorizedException;
+import com.atul.gitbook.learn.exports.NdjsonUserWriter;
+import com.atul.gitbook.learn.imports.ImportFormat;
+import com.atul.gitbook.learn.imports.UserRecordReader;
+import com.atul.gitbook.learn.search.Trigrams;
+import com.atul.gitbook.learn.users.models.ImportReport;
 import com.atul.gitbook.learn.users.models.UpdateUserDto;
 import com.atul.gitbook.learn.users.models.User;
 import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.models.UserPage;
 import com.atul.gitbook.learn.users.service.IUserRepository;
 import com.atul.gitbook.learn.users.service.IUserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.UUID;
 
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
 import static com.atul.gitbook.learn.Preconditions.validateNotNull;
 
 public class UserService implements IUserService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserService.class);
+
     private static final String ERROR_UPDATE_OWN_PROFILE = "User can only update own profile details.";
     private static final String ERROR_DELETE_OWN_PROFILE = "User can only delete own profile details.";
     private static final String ERROR_REQUESTER_UNAVAILABLE = "Requester is not present.";
     private static final String ERROR_REQUESTER_CANT_CREATE = "Requester is not an administrator and cannot request user creation.";
     private static final String ERROR_REQUESTER_CANT_GET = "Requester can not request to get the user's profile details.";
+    private static final String ERROR_TOO_MANY_USERS = "At most " + IUserService.MAX_USERS_PER_REQUEST + " users can be created in one request.";
+    private static final String ERROR_REQUESTER_CANT_EXPORT = "Requester is not an administrator and cannot export the users.";
+    private static final String ERROR_REQUESTER_CANT_LIST = "Requester is not an administrator and cannot list the users.";
+    private static final String ERROR_PAGE_SIZE = "The page size must be between 1 and " + IUserService.MAX_USERS_PER_PAGE + ".";
+    private static final String ERROR_REQUESTER_CANT_FIND = "Requester is not an administrator and cannot find users by their contact details.";
+    private static final String ERROR_EMPTY_EMAIL = "The email to find the users by is empty.";
+    private static final String ERROR_EMPTY_PHONE = "The phone number to find the users by has no digits.";
+    private static final String ERROR_REQUESTER_CANT_SEARCH = "Requester is not an administrator and cannot search the users.";
+    private static final String ERROR_SEARCH_QUERY = "The search query must have a letter or digit and at most " + IUserService.MAX_SEARCH_QUERY_LENGTH + " characters.";
+    private static final String ERROR_SEARCH_LIMIT = "The search limit must be between 1 and " + IUserService.MAX_USERS_PER_SEARCH + ".";
+    private static final String ERROR_TOO_MANY_LOOKUPS = "At most " + IUserService.MAX_USERS_PER_LOOKUP + " users can be looked up in one request.";
 
     private final IUserRepository fUserRepository;
 
@@ -36,6 +66,49 @@ public class UserService implements IUserService {
         return fUserRepository.createUser(userDto);
     }
 
+    @Override
+    public List<User> createUsers(UUID requesterId, List<UserDto> userDtos) {
+        validateNotNull(requesterId);
+        validateNotNull(userDtos);
+        validateIsTrue(userDtos.size() <= MAX_USERS_PER_REQUEST, ERROR_TOO_MANY_USERS);
+        userDtos.forEach(Preconditions::validateNotNull);
+        final var requester = getRequester(requesterId);
+        validateRequesterCanCreateUser(requester);
+        return fUserRepository.createUsers(userDtos);
+    }
+
+    @Override
+    public ImportReport importUsers(UUID requesterId, ImportFormat format, InputStream body) {
+        validateNotNull(requesterId);
+        validateNotNull(format);
+        validateNotNull(body);
+        final var requester = getRequester(requesterId);
+        validateRequesterCanCreateUser(requester);
+        final var startTime = System.nanoTime();
+        final var users = new UserRecordReader(new InputStreamReader(body, StandardCharsets.UTF_8), format);
+        final var imported = fUserRepository.importUsers(users);
+        final var report = new ImportReport(users.getRowsRead(), users.getRowsRejected(), imported,
+                users.getRejectedLines(), System.nanoTime() - startTime);
+        LOGGER.info("User import by {}: {}.", requesterId, report);
+        return report;
+    }
+
+    @Override
+    public StreamingResponseBody exportUsers(UUID requesterId) {
+        validateNotNull(requesterId);
+        final var requester = getRequester(requesterId);
+        if (!requester.isAdministrator())
+            throw new ForbiddenException(ERROR_REQUESTER_CANT_EXPORT);
+        return out -> {
+            final var startTime = System.nanoTime();
+            final var writer = new NdjsonUserWriter(out);
+            fUserRepository.forEachUser(writer);
+            writer.flush();
+            LOGGER.info("User export by {}: {} users in {} ms.", requesterId, writer.getUsers(),
+                    (System.nanoTime() - startTime) / 1_000_000);
+        };
+    }
+
     @Override
     public User getUser(UUID requesterId, UUID userId) {
         validateNotNull(requesterId);
@@ -45,6 +118,64 @@ public class UserService implements IUserService {
         return fUserRepository.getUser(userId);
     }
 
+    @Override
+    public List<User> getUsers(UUID requesterId, List<UUID> userIds) {
+        validateNotNull(requesterId);
+        validateNotNull(userIds);
+        validateIsTrue(userIds.size() <= MAX_USERS_PER_LOOKUP, ERROR_TOO_MANY_LOOKUPS);
+        userIds.forEach(Preconditions::validateNotNull);
+        final var requester = getRequester(requesterId);
+        for (var userId : userIds) {
+            validateRequesterCanGetUser(requester, userId);
+        }
+        return fUserRepository.getUsers(userIds);
+    }
+
+    @Override
+    public UserPage listUsers(UUID requesterId, UUID after, int limit) {
+        validateNotNull(requesterId);
+        validateIsTrue(limit > 0 && limit <= MAX_USERS_PER_PAGE, ERROR_PAGE_SIZE);
+        final var requester = getRequester(requesterId);
+        if (!requester.isAdministrator())
+            throw new ForbiddenException(ERROR_REQUESTER_CANT_LIST);
+        // One user more than the page tells whether there is a next page.
+        final var users = fUserRepository.getUsersAfter(after, limit + 1);
+        if (users.size() <= limit)
+            return new UserPage(users, null);
+        final var page = users.subList(0, limit);
+        return new UserPage(page, page.get(limit - 1).getId());
+    }
+
+    @Override
+    public List<User> findUsersByEmail(UUID requesterId, String email) {
+        validateNotNull(requesterId);
+        validateNotNull(email);
+        validateIsTrue(!User.normalizeEmail(email).isEmpty(), ERROR_EMPTY_EMAIL);
+        validateRequesterCanFindUsers(getRequester(requesterId));
+        return fUserRepository.findByEmail(email);
+    }
+
+    @Override
+    public List<User> findUsersByPhone(UUID requesterId, String phone) {
+        validateNotNull(requesterId);
+        validateNotNull(phone);
+        validateIsTrue(!User.normalizePhone(phone).isEmpty(), ERROR_EMPTY_PHONE);
+        validateRequesterCanFindUsers(getRequester(requesterId));
+        return fUserRepository.findByPhone(phone);
+    }
+
+    @Override
+    public List<User> searchUsers(UUID requesterId, String query, int limit) {
+        validateNotNull(requesterId);
+        validateNotNull(query);
+        validateIsTrue(query.length() <= MAX_SEARCH_QUERY_LENGTH && !Trigrams.of(query).isEmpty(), ERROR_SEARCH_QUERY);
+        validateIsTrue(limit > 0 && limit <= MAX_USERS_PER_SEARCH, ERROR_SEARCH_LIMIT);
+        final var requester = getRequester(requesterId);
+        if (!requester.isAdministrator())
+            throw new ForbiddenException(ERROR_REQUESTER_CANT_SEARCH);
+        return fUserRepository.searchByName(query, limit);
+    }
+
     @Override
     public User updateUser(UUID requesterId, UUID userId, UpdateUserDto userDto) {
         validateNotNull(requesterId);
@@ -52,8 +183,21 @@ public class UserService implements IUserService {
         validateNotNull(userDto);
         getRequester(requesterId);
         validateRequesterSameAsUser(requesterId, userId, ERROR_UPDATE_OWN_PROFILE);
-        fUserRepository.updateUser(userId, userDto);
-        return fUserRepository.getUser(userId);
+        return fUserRepository.updateUser(userId, userDto);
+    }
+
+    @Override
+    public User updateUser(UUID requesterId, UUID userId, long expectedVersion, UpdateUserDto userDto) {
+        validateNotNull(requesterId);
+        validateNotNull(userId);
+        validateNotNull(userDto);
+        getRequester(requesterId);
+        validateRequesterSameAsUser(requesterId, userId, ERROR_UPDATE_OWN_PROFILE);
+        try {
+            return fUserRepository.updateUser(userId, expectedVersion, userDto);
+        } catch (ConcurrentModificationException e) {
+            throw new PreconditionFailedException(e.getMessage());
+        }
     }
 
     @Override
@@ -83,6 +227,11 @@ public class UserService implements IUserService {
             throw new ForbiddenException(ERROR_REQUESTER_CANT_GET);
     }
 
+    private void validateRequesterCanFindUsers(User requester) {
+        if (!requester.isAdministrator())
+            throw new ForbiddenException(ERROR_REQUESTER_CANT_FIND);
+    }
+
     private void validateRequesterSameAsUser(UUID requesterId, UUID userId, String message) {
         if (!requesterId.equals(userId))
             throw new ForbiddenException(message);
@@ -0,0 +1,160 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.collections.PersistentUuidMap;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Keeps every version of the users in a {@link PersistentUuidMap}. A write builds the next version
+ * by copying the path to the changed user and publishes it with a compare-and-set, so writes never
+ * block each other or the readers, and {@link #snapshot()} is a single volatile read.
+ * <p>
+ * A snapshot never changes, so exports and reports can iterate over all users while writes keep
+ * going and still see a consistent point in time. Versions no reader holds any more are reclaimed
+ * by the garbage collector like any other unreachable object.
+ */
+public class VersionedRepository extends IUserRepository {
+
+    private final AtomicReference<PersistentUuidMap<User>> fUsers = new AtomicReference<>(PersistentUuidMap.empty());
+
+    public VersionedRepository() {
+        setDefaultAdministrator(new User(UUID.fromString("f994c61d-ebd1-463c-a8d8-ebe5989aa501"), "King Kong", "9999999999", "king@kong.com", true));
+        setDefaultUser(new User(UUID.fromString("1109a8c8-49a3-4921-aa80-65e730d587fe"), "David Marshal", "9999999999", "david@marshall.com", false));
+        put(getDefaultAdministrator());
+        put(getDefaultUser());
+    }
+
+    @Override
+    public User createUser(UserDto userDto) {
+        validateNotNull(userDto);
+        final var user = User.with(userDto, UUID.randomUUID());
+        put(user);
+        return user;
+    }
+
+    @Override
+    public User getUser(UUID id) {
+        validateNotNull(id);
+        final var user = fUsers.get().get(id);
+        if (user == null)
+            throw new NoSuchElementException();
+        return user;
+    }
+
+    /**
+     * Reads every user from the same snapshot, so the users returned are as of one point in time.
+     */
+    @Override
+    public List<User> getUsers(Collection<UUID> ids) {
+        validateNotNull(ids);
+        final var snapshot = fUsers.get();
+        final var users = new ArrayList<User>(ids.size());
+        for (var id : new LinkedHashSet<>(ids)) {
+            validateNotNull(id);
+            final var user = snapshot.get(id);
+            if (user != null)
+                users.add(user);
+        }
+        return users;
+    }
+
+    /**
+     * Scans one snapshot, so the page is as of one point in time.
+     */
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        final var page = new PageCollector<User>(after, limit);
+        fUsers.get().forEach(page::offer);
+        return page.getItems();
+    }
+
+    /**
+     * Iterates over one snapshot, without blocking writers, so the users are as of one point in time.
+     */
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        fUsers.get().forEach((id, user) -> consumer.accept(user));
+    }
+
+    @Override
+    public User updateUser(UUID id, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        while (true) {
+            final var users = fUsers.get();
+            final var user = users.get(id);
+            if (user == null)
+                throw new NoSuchElementException();
+            final var updated = User.with(userDto, user);
+            if (fUsers.compareAndSet(users, users.put(id, updated)))
+                return updated;
+        }
+    }
+
+    @Override
+    public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+        return updateUserToVersion(id, expectedVersion, expectedVersion + 1, userDto);
+    }
+
+    @Override
+    public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        validateIsTrue(version > expectedVersion, "The version must be above the expected one.");
+        while (true) {
+            final var users = fUsers.get();
+            final var user = users.get(id);
+            if (user == null)
+                throw new NoSuchElementException();
+            validateVersion(user, expectedVersion);
+            final var updated = User.with(userDto, user, version);
+            if (fUsers.compareAndSet(users, users.put(id, updated)))
+                return updated;
+        }
+    }
+
+    @Override
+    public void deleteUser(UUID id) {
+        validateNotNull(id);
+        while (true) {
+            final var users = fUsers.get();
+            final var remaining = users.remove(id);
+            if (remaining == users)
+                throw new NoSuchElementException();
+            if (fUsers.compareAndSet(users, remaining))
+                return;
+        }
+    }
+
+    /**
+     * @return an immutable view of all users as of now. Later writes are not reflected in it.
+     */
+    public PersistentUuidMap<User> snapshot() {
+        return fUsers.get();
+    }
+
+    /**
+     * @return the number of users currently held by the repository.
+     */
+    public int size() {
+        return fUsers.get().size();
+    }
+
+    private void put(User user) {
+        fUsers.updateAndGet(users -> users.put(user.getId(), user));
+    }
+}
@@ -0,0 +1,512 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.search.NameSearch;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static com.atul.gitbook.learn.Preconditions.validateIsTrue;
+import static com.atul.gitbook.learn.Preconditions.validateNotNull;
+
+/**
+ * Buffers the updates of the users of another repository and writes them behind, once per
+ * window: all the updates of a user within a window become a single write of the last one.
+ * Everything else goes straight to the other repository.
+ * <p>
+ * Reads see a pending update as soon as it is accepted. Each accepted update moves the user to
+ * the next version, as if written, so no two of them share a version; the coalesced updates are
+ * then written as one that moves the user straight to the last of those versions, with
+ * {@link IUserRepository#updateUserToVersion}.
+ * <p>
+ * While about maxPending users have updates pending, the updates of other users are written
+ * through. The pending updates are written when the repository is closed, which fails if they
+ * can't be, and those accepted since the last flush are lost if the process dies. Once closed,
+ * the repository accepts no more updates.
+ * <p>
+ * A conditional update first writes the user's pending update, then goes to the other repository,
+ * so the version is checked against the written user.
+ */
+public class WriteBehindRepository extends IUserRepository {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindRepository.class);
+    // Flushes tried on close, a longer pause after each, before the updates still pending are given up.
+    private static final int CLOSE_FLUSH_ATTEMPTS = 3;
+    private static final long CLOSE_FLUSH_BACKOFF_MILLIS = 100;
+
+    private final IUserRepository fUsers;
+    private final int fMaxPending;
+    private final ConcurrentHashMap<UUID, PendingUpdate> fPending = new ConcurrentHashMap<>();
+    // Held while writing pending updates, so none is written twice.
+    private final ReentrantLock fFlushLock = new ReentrantLock();
+    private final ScheduledExecutorService fFlusher;
+    private final LongAdder fUpdates = new LongAdder();
+    private final LongAdder fWrites = new LongAdder();
+    private final Timer fFlushLatency;
+    // Held to accept an update, and exclusively to close, so no update is accepted after the last flush.
+    private final ReentrantReadWriteLock fCloseLock = new ReentrantReadWriteLock();
+    // Counts the deletes, so an update that read its user before a delete checks it still exists.
+    private final AtomicLong fDeletes = new AtomicLong();
+    // The last error of a pending write, reported if the updates can't be written on close.
+    private volatile RuntimeException fLastFlushFailure;
+    private boolean fClosed;
+
+    /**
+     * @param users         the repository the updates are written to.
+     * @param windowMillis  how often the pending updates are written.
+     * @param maxPending    about the most users with an update pending.
+     * @param meterRegistry takes the update and write counts, their ratio, the pending users and
+     *                      the time from accepting an update to writing it.
+     */
+    public WriteBehindRepository(IUserRepository users,
+                                 long windowMillis,
+                                 int maxPending,
+                                 MeterRegistry meterRegistry) {
+        validateNotNull(users);
+        validateIsTrue(windowMillis > 0, "The write-behind window must be positive.");
+        validateIsTrue(maxPending > 0, "The most pending users must be positive.");
+        validateNotNull(meterRegistry);
+        fUsers = users;
+        fMaxPending = maxPending;
+        setDefaultAdministrator(users.getDefaultAdministrator());
+        setDefaultUser(users.getDefaultUser());
+        FunctionCounter.builder("users.write.behind.updates", fUpdates, LongAdder::sum)
+                .description("Updates accepted, buffered or written through.")
+                .register(meterRegistry);
+        FunctionCounter.builder("users.write.behind.writes", fWrites, LongAdder::sum)
+                .description("Writes made to the repository for the accepted updates.")
+                .register(meterRegistry);
+        Gauge.builder("users.write.behind.coalescing.ratio", this, WriteBehindRepository::getCoalescingRatio)
+                .description("Updates accepted per write made.")
+                .register(meterRegistry);
+        Gauge.builder("users.write.behind.pending", fPending, ConcurrentHashMap::size)
+                .description("Users with an update waiting to be written.")
+                .register(meterRegistry);
+        fFlushLatency = Timer.builder("users.write.behind.flush.latency")
+                .description("Time from accepting the first of the coalesced updates to writing them.")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        fFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "user-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fFlusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public User createUser(UserDto userDto) {
+        return fUsers.createUser(userDto);
+    }
+
+    @Override
+    public List<User> createUsers(List<UserDto> userDtos) {
+        return fUsers.createUsers(userDtos);
+    }
+
+    @Override
+    public long importUsers(Iterator<User> users) {
+        return fUsers.importUsers(users);
+    }
+
+    @Override
+    public User getUser(UUID id) {
+        validateNotNull(id);
+        final var pending = fPending.get(id);
+        if (pending != null)
+            return pending.fUser;
+        return fUsers.getUser(id);
+    }
+
+    @Override
+    public List<User> getUsers(Collection<UUID> ids) {
+        return withPendingUpdates(fUsers.getUsers(ids));
+    }
+
+    /**
+     * Looks the users up in the other repository, then in the pending updates, which may have
+     * changed the email of a user from the one written.
+     */
+    @Override
+    public List<User> findByEmail(String email) {
+        final var normalized = User.normalizeEmail(email);
+        return findWithPendingUpdates(fUsers.findByEmail(email), user -> User.normalizeEmail(user.getEmail()).equals(normalized));
+    }
+
+    /**
+     * Looks the users up in the other repository, then in the pending updates, which may have
+     * changed the phone number of a user from the one written.
+     */
+    @Override
+    public List<User> findByPhone(String phone) {
+        final var normalized = User.normalizePhone(phone);
+        return findWithPendingUpdates(fUsers.findByPhone(phone), user -> User.normalizePhone(user.getPhone()).equals(normalized));
+    }
+
+    /**
+     * Searches the other repository, then ranks its results again together with the pending
+     * updates, which may have changed the names. A result renamed by a pending update is left out
+     * if its new name no longer matches, so fewer than limit users may be returned.
+     */
+    @Override
+    public List<User> searchByName(String query, int limit) {
+        final var search = new NameSearch(query, limit);
+        final var offered = new HashSet<UUID>();
+        for (var user : fUsers.searchByName(query, limit)) {
+            if (offered.add(user.getId()))
+                search.offer(withPendingUpdate(user));
+        }
+        for (var pending : fPending.values()) {
+            if (offered.add(pending.fUser.getId()))
+                search.offer(pending.fUser);
+        }
+        return search.getUsers();
+    }
+
+    @Override
+    public List<User> getUsersAfter(UUID after, int limit) {
+        return withPendingUpdates(fUsers.getUsersAfter(after, limit));
+    }
+
+    @Override
+    public void forEachUser(Consumer<User> consumer) {
+        validateNotNull(consumer);
+        fUsers.forEachUser(user -> consumer.accept(withPendingUpdate(user)));
+    }
+
+    /**
+     * Accepts the update without writing it. Only the first update of a user in a window reads the
+     * user; the later ones replace the pending update, each at the version after the one it replaces.
+     *
+     * @throws IllegalStateException if the repository is closed.
+     */
+    @Override
+    public User updateUser(UUID id, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        fUpdates.increment();
+        fCloseLock.readLock().lock();
+        try {
+            if (fClosed)
+                throw new IllegalStateException("The write-behind repository is closed.");
+            return accept(id, userDto);
+        } finally {
+            fCloseLock.readLock().unlock();
+        }
+    }
+
+    private User accept(UUID id, UpdateUserDto userDto) {
+        while (true) {
+            final var pending = fPending.get(id);
+            if (pending != null) {
+                final var replaced = pending.replacedBy(userDto);
+                if (fPending.replace(id, pending, replaced))
+                    return replaced.fUser;
+                continue;
+            }
+            if (fPending.size() >= fMaxPending) {
+                fWrites.increment();
+                return fUsers.updateUser(id, userDto);
+            }
+            final var deletes = fDeletes.get();
+            final var queued = PendingUpdate.on(fUsers.getUser(id), userDto);
+            if (fPending.putIfAbsent(id, queued) != null)
+                continue;
+            // A delete that ran entirely between reading the user and queuing the update missed it.
+            if (fDeletes.get() != deletes && !exists(id)) {
+                fPending.remove(id);
+                throw new NoSuchElementException();
+            }
+            return queued.fUser;
+        }
+    }
+
+    private boolean exists(UUID id) {
+        try {
+            fUsers.getUser(id);
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        return writeThrough(id, () -> fUsers.updateUser(id, expectedVersion, userDto));
+    }
+
+    @Override
+    public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+        validateNotNull(id);
+        validateNotNull(userDto);
+        return writeThrough(id, () -> fUsers.updateUserToVersion(id, expectedVersion, version, userDto));
+    }
+
+    /**
+     * Writes the pending update of the user, then makes the write, so it is checked against the
+     * written user.
+     */
+    private User writeThrough(UUID id, Supplier<User> write) {
+        fUpdates.increment();
+        fFlushLock.lock();
+        try {
+            flush(id);
+            fWrites.increment();
+            final var updated = write.get();
+            // An update accepted meanwhile is written after this one, so it applies on top of it.
+            fPending.computeIfPresent(id, (key, pending) -> pending.rebasedOn(updated));
+            return updated;
+        } finally {
+            fFlushLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the pending update of the user and deletes it, with the flush lock held so a flush
+     * can't write the update meanwhile. The pending update is dropped again once the user is
+     * deleted, in case one was accepted during the delete, and an update that read the user before
+     * the delete but is queued after it finds the user gone.
+     */
+    @Override
+    public void deleteUser(UUID id) {
+        validateNotNull(id);
+        fFlushLock.lock();
+        try {
+            fPending.remove(id);
+            fUsers.deleteUser(id);
+            fDeletes.incrementAndGet();
+            fPending.remove(id);
+        } finally {
+            fFlushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes every pending update. Runs once per window, and can be called to write them right away.
+     * If a write fails the rest are left pending for the next flush.
+     */
+    public void flush() {
+        fFlushLock.lock();
+        try {
+            for (var id : fPending.keySet()) {
+                if (!flush(id))
+                    return;
+            }
+        } finally {
+            fFlushLock.unlock();
+        }
+    }
+
+    /**
+     * @return the updates accepted per write made to the other repository, 1 before any write.
+     */
+    public double getCoalescingRatio() {
+        final var writes = fWrites.sum();
+        return writes == 0 ? 1 : (double) fUpdates.sum() / writes;
+    }
+
+    /**
+     * @return the number of users with an update waiting to be written.
+     */
+    public int getPendingCount() {
+        return fPending.size();
+    }
+
+    /**
+     * Stops accepting updates and the periodic flushes, writes the updates still pending and
+     * closes the other repository.
+     *
+     * @throws IllegalStateException if pending updates still couldn't be written after
+     *                               {@value #CLOSE_FLUSH_ATTEMPTS} flushes; they are lost.
+     */
+    @Override
+    public void close() throws IOException {
+        fCloseLock.writeLock().lock();
+        try {
+            fClosed = true;
+        } finally {
+            fCloseLock.writeLock().unlock();
+        }
+        fFlusher.shutdown();
+        try {
+            fFlusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flushPending();
+        } finally {
+            fUsers.close();
+        }
+    }
+
+    /**
+     * Flushes until no update is pending, pausing longer after each failed flush.
+     */
+    private void flushPending() {
+        for (var attempt = 1; ; attempt++) {
+            flush();
+            if (fPending.isEmpty())
+                return;
+            if (attempt == CLOSE_FLUSH_ATTEMPTS)
+                break;
+            try {
+                Thread.sleep(CLOSE_FLUSH_BACKOFF_MILLIS * attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        throw new IllegalStateException(fPending.size() + " pending user updates couldn't be written and are lost.",
+                fLastFlushFailure);
+    }
+
+    /**
+     * Writes the pending update of the user, if any. Called with the flush lock held.
+     *
+     * @return false if the write failed and the update is still pending.
+     */
+    private boolean flush(UUID id) {
+        final var pending = fPending.get(id);
+        if (pending == null)
+            return true;
+        final User written;
+        try {
+            written = fUsers.updateUserToVersion(id, pending.fWritten.getVersion(), pending.fUser.getVersion(),
+                    pending.fUpdate);
+        } catch (NoSuchElementException e) {
+            // The user was deleted after the update was accepted.
+            fPending.remove(id);
+            return true;
+        } catch (ConcurrentModificationException e) {
+            // The user was written elsewhere since it was read, so the update goes on top of that.
+            return rebase(id);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Couldn't write the pending update of user {}, retrying with the next flush.", id, e);
+            fLastFlushFailure = e;
+            return false;
+        }
+        fWrites.increment();
+        fFlushLatency.record(System.nanoTime() - pending.fQueuedNanos, TimeUnit.NANOSECONDS);
+        // Updates accepted during the write stay pending, on top of the written user.
+        fPending.computeIfPresent(id, (key, current) -> current == pending ? null : current.rebasedOn(written));
+        return true;
+    }
+
+    /**
+     * Puts the pending update of the user on top of the user as now written, for the next flush.
+     *
+     * @return false if the user couldn't be read and the update is still pending as it was.
+     */
+    private boolean rebase(UUID id) {
+        final User current;
+        try {
+            current = fUsers.getUser(id);
+        } catch (NoSuchElementException e) {
+            fPending.remove(id);
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Couldn't read user {} to rebase its pending update, retrying with the next flush.", id, e);
+            fLastFlushFailure = e;
+            return false;
+        }
+        fPending.computeIfPresent(id, (key, pending) -> pending.rebasedOn(current));
+        return true;
+    }
+
+    private List<User> withPendingUpdates(List<User> users) {
+        final var updated = new ArrayList<User>(users.size());
+        for (var user : users) {
+            updated.add(withPendingUpdate(user));
+        }
+        return updated;
+    }
+
+    /**
+     * Replaces the found users with their pending updates and adds the pending updates that match,
+     * of which there are at most about maxPending.
+     */
+    private List<User> findWithPendingUpdates(List<User> found, Predicate<User> matches) {
+        final var users = new LinkedHashMap<UUID, User>();
+        for (var user : found) {
+            final var updated = withPendingUpdate(user);
+            if (matches.test(updated))
+                users.put(updated.getId(), updated);
+        }
+        for (var pending : fPending.values()) {
+            if (matches.test(pending.fUser))
+                users.putIfAbsent(pending.fUser.getId(), pending.fUser);
+        }
+        return new ArrayList<>(users.values());
+    }
+
+    private User withPendingUpdate(User user) {
+        final var pending = fPending.get(user.getId());
+        return pending == null ? user : pending.fUser;
+    }
+
+    private static final class PendingUpdate {
+
+        // The user as last written, which the update applies to.
+        private final User fWritten;
+        private final UpdateUserDto fUpdate;
+        // The user once the update is written, which reads see meanwhile. Its version counts every
+        // update accepted since the written user.
+        private final User fUser;
+        private final long fQueuedNanos;
+
+        private PendingUpdate(User written, UpdateUserDto update, long version, long queuedNanos) {
+            fWritten = written;
+            fUpdate = update;
+            fUser = User.with(update, written, version);
+            fQueuedNanos = queuedNanos;
+        }
+
+        private static PendingUpdate on(User written, UpdateUserDto update) {
+            return new PendingUpdate(written, update, written.getVersion() + 1, System.nanoTime());
+        }
+
+        private PendingUpdate replacedBy(UpdateUserDto update) {
+            return new PendingUpdate(fWritten, update, fUser.getVersion() + 1, fQueuedNanos);
+        }
+
+        /**
+         * Keeps the version of the pending user, which may have been returned already, unless the
+         * written user has caught up with it.
+         */
+        private PendingUpdate rebasedOn(User written) {
+            return new PendingUpdate(written, fUpdate, Math.max(fUser.getVersion(), written.getVersion() + 1),
+                    System.nanoTime());
+        }
+    }
+}
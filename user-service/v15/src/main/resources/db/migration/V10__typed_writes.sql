@@ -0,0 +1,26 @@
+CREATE OR REPLACE FUNCTION fn_user_create_typed(entity_id UUID, user_name VARCHAR, user_phone VARCHAR,
+                                                user_email VARCHAR, user_administrator BOOLEAN)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  INSERT INTO users (id, name, phone, email, administrator)
+  VALUES (entity_id, user_name, user_phone, user_email, user_administrator)
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION fn_user_update_typed(entity_id UUID, user_name VARCHAR, user_phone VARCHAR,
+                                                user_email VARCHAR)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  UPDATE users
+  SET name = user_name, phone = user_phone, email = user_email
+  WHERE id = entity_id
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
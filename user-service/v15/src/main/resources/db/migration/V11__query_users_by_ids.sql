@@ -0,0 +1,9 @@
+CREATE OR REPLACE FUNCTION fn_users_by_ids(user_ids UUID[])
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  SELECT * FROM users WHERE id = ANY(user_ids);
+END;
+$$
+LANGUAGE plpgsql STABLE;
@@ -0,0 +1,16 @@
+-- Keyset pagination: both queries are an ordered range scan of users_pkey that stops after
+-- page_size rows, so a page costs the same however deep into the table it starts.
+CREATE OR REPLACE FUNCTION fn_users_page(after_id UUID, page_size INTEGER)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  IF after_id IS NULL THEN
+    RETURN QUERY
+    SELECT * FROM users ORDER BY id LIMIT page_size;
+  ELSE
+    RETURN QUERY
+    SELECT * FROM users WHERE id > after_id ORDER BY id LIMIT page_size;
+  END IF;
+END;
+$$
+LANGUAGE plpgsql STABLE;
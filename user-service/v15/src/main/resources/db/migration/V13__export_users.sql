@@ -0,0 +1,9 @@
+-- A plain SQL function with a single SELECT is inlined into the calling query, so a cursor over
+-- it streams rows from the table scan. A PL/pgSQL RETURN QUERY would first collect every row into
+-- a tuplestore on the server.
+CREATE OR REPLACE FUNCTION fn_users_export()
+  RETURNS SETOF users AS
+$$
+  SELECT * FROM users;
+$$
+LANGUAGE sql STABLE;
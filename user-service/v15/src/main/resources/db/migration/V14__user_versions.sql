@@ -0,0 +1,35 @@
+-- Every user has a version, which starts at 1 and goes up by one on every update. The trigger
+-- bumps it, so the update procedures written before it keep the version right as they are.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+
+CREATE OR REPLACE FUNCTION fn_users_next_version()
+  RETURNS TRIGGER AS
+$$
+BEGIN
+  NEW.version := OLD.version + 1;
+  RETURN NEW;
+END;
+$$
+LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS users_next_version ON users;
+CREATE TRIGGER users_next_version
+  BEFORE UPDATE ON users
+  FOR EACH ROW
+  EXECUTE PROCEDURE fn_users_next_version();
+
+-- Updates the user only if it is still at the expected version, and returns the updated row.
+-- No row is returned if the user is absent or has another version.
+CREATE OR REPLACE FUNCTION fn_user_update_if_version(entity_id UUID, expected_version BIGINT, user_name VARCHAR,
+                                                     user_phone VARCHAR, user_email VARCHAR)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  UPDATE users
+  SET name = user_name, phone = user_phone, email = user_email
+  WHERE id = entity_id AND version = expected_version
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
@@ -0,0 +1,188 @@
+-- Splits users into ${users_partition_count} hash partitions on id, so each partition keeps its own
+-- heap, primary key index and vacuum, and concurrent inserts spread over them. The partition
+-- count is the flyway placeholder users_partition_count, read when this migration runs; changing
+-- it later takes a new migration.
+CREATE TABLE users_partitioned (LIKE users INCLUDING DEFAULTS) PARTITION BY HASH (id);
+
+DO
+$$
+DECLARE
+  partition_count CONSTANT INTEGER := ${users_partition_count};
+BEGIN
+  FOR i IN 0 .. partition_count - 1 LOOP
+    EXECUTE FORMAT(
+            'CREATE TABLE users_p%s PARTITION OF users_partitioned FOR VALUES WITH (MODULUS %s, REMAINDER %s)',
+            i, partition_count, i);
+  END LOOP;
+END;
+$$;
+
+INSERT INTO users_partitioned (id, name, phone, email, administrator, version)
+SELECT id, name, phone, email, administrator, version
+FROM users;
+
+-- Also drops the functions returning SETOF users and the version trigger, which are created again
+-- below for the partitioned table.
+DROP TABLE users CASCADE;
+ALTER TABLE users_partitioned RENAME TO users;
+-- Added after the copy, so each partition's index is built once instead of row by row.
+ALTER TABLE users ADD CONSTRAINT users_pkey PRIMARY KEY (id);
+
+CREATE TRIGGER users_next_version
+  BEFORE UPDATE ON users
+  FOR EACH ROW
+  EXECUTE PROCEDURE fn_users_next_version();
+
+-- The functions taking an id are planned on every call with plan_cache_mode = force_custom_plan,
+-- so the planner sees the id and keeps only its partition. A cached generic plan would cover
+-- every partition, locking them all on each call, and updates and deletes would also scan them
+-- all. The dynamic SQL of fn_user_by_id, fn_user_update and fn_user_delete is planned with the id
+-- already, and inserts are routed to their partition row by row.
+CREATE OR REPLACE FUNCTION public.fn_user_by_id(user_id UUID)
+    RETURNS SETOF users AS
+$$
+DECLARE
+    result users;
+BEGIN
+    EXECUTE FORMAT(
+            'SELECT * from users where id = %L',
+            user_id) INTO STRICT result;
+    RETURN NEXT result;
+EXCEPTION
+    WHEN TOO_MANY_ROWS THEN
+        RAISE EXCEPTION 'id must be unique in the table.';
+    WHEN NO_DATA_FOUND THEN
+        RETURN;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION fn_users_create(body JSONB)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  INSERT INTO users (id, name, phone, email, administrator)
+  SELECT u.id, u.name, u.phone, u.email, u.administrator
+  FROM jsonb_to_recordset(body) AS u(id UUID, name VARCHAR(100), phone VARCHAR(15), email VARCHAR(50), administrator BOOLEAN)
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION fn_user_create_returning(entity_id UUID, body JSONB)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  INSERT INTO users (id, name, phone, email, administrator)
+  VALUES (entity_id, body ->> 'name', body ->> 'phone', body ->> 'email', (body ->> 'administrator') :: BOOLEAN)
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION fn_user_update_returning(entity_id UUID, body JSONB)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  UPDATE users
+  SET name = body ->> 'name', phone = body ->> 'phone', email = body ->> 'email'
+  WHERE id = entity_id
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql
+SET plan_cache_mode = force_custom_plan;
+
+CREATE OR REPLACE FUNCTION fn_user_by_id_static(user_id UUID)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  SELECT * FROM users WHERE id = user_id;
+END;
+$$
+LANGUAGE plpgsql STABLE
+SET plan_cache_mode = force_custom_plan;
+
+ALTER FUNCTION fn_user_delete_static(UUID) SET plan_cache_mode = force_custom_plan;
+
+CREATE OR REPLACE FUNCTION fn_user_create_typed(entity_id UUID, user_name VARCHAR, user_phone VARCHAR,
+                                                user_email VARCHAR, user_administrator BOOLEAN)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  INSERT INTO users (id, name, phone, email, administrator)
+  VALUES (entity_id, user_name, user_phone, user_email, user_administrator)
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION fn_user_update_typed(entity_id UUID, user_name VARCHAR, user_phone VARCHAR,
+                                                user_email VARCHAR)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  UPDATE users
+  SET name = user_name, phone = user_phone, email = user_email
+  WHERE id = entity_id
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql
+SET plan_cache_mode = force_custom_plan;
+
+-- With the ids known to the planner, only the partitions holding them are read.
+CREATE OR REPLACE FUNCTION fn_users_by_ids(user_ids UUID[])
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  SELECT * FROM users WHERE id = ANY(user_ids);
+END;
+$$
+LANGUAGE plpgsql STABLE
+SET plan_cache_mode = force_custom_plan;
+
+-- Hashing scatters neighbouring ids over the partitions, so a page merges the ordered primary key
+-- scans of every partition. Each of them still stops after page_size rows.
+CREATE OR REPLACE FUNCTION fn_users_page(after_id UUID, page_size INTEGER)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  IF after_id IS NULL THEN
+    RETURN QUERY
+    SELECT * FROM users ORDER BY id LIMIT page_size;
+  ELSE
+    RETURN QUERY
+    SELECT * FROM users WHERE id > after_id ORDER BY id LIMIT page_size;
+  END IF;
+END;
+$$
+LANGUAGE plpgsql STABLE;
+
+CREATE OR REPLACE FUNCTION fn_users_export()
+  RETURNS SETOF users AS
+$$
+  SELECT * FROM users;
+$$
+LANGUAGE sql STABLE;
+
+CREATE OR REPLACE FUNCTION fn_user_update_if_version(entity_id UUID, expected_version BIGINT, user_name VARCHAR,
+                                                     user_phone VARCHAR, user_email VARCHAR)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  UPDATE users
+  SET name = user_name, phone = user_phone, email = user_email
+  WHERE id = entity_id AND version = expected_version
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql
+SET plan_cache_mode = force_custom_plan;
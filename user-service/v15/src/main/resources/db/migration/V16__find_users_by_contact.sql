@@ -0,0 +1,26 @@
+-- Users are looked up by their normalized email, trimmed and in lower case, and by the digits of
+-- their phone number. The indexes hold those expressions, so each lookup is a probe of the index
+-- rather than a scan. As neither is the partition key, the index of every partition is probed.
+CREATE INDEX IF NOT EXISTS users_email_normalized ON users (lower(btrim(email)));
+CREATE INDEX IF NOT EXISTS users_phone_normalized ON users (regexp_replace(phone, '[^0-9]', '', 'g'));
+
+-- The argument is normalized like the column, so the condition matches the index expression.
+CREATE OR REPLACE FUNCTION fn_users_by_email(user_email VARCHAR)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  SELECT * FROM users WHERE lower(btrim(email)) = lower(btrim(user_email));
+END;
+$$
+LANGUAGE plpgsql STABLE;
+
+CREATE OR REPLACE FUNCTION fn_users_by_phone(user_phone VARCHAR)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  SELECT * FROM users WHERE regexp_replace(phone, '[^0-9]', '', 'g') = regexp_replace(user_phone, '[^0-9]', '', 'g');
+END;
+$$
+LANGUAGE plpgsql STABLE;
@@ -0,0 +1,21 @@
+-- Names are searched by their trigrams. The GIN index maps each trigram to the rows whose name
+-- has it, so a search only reads and ranks the rows sharing enough trigrams with the query.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS users_name_trigrams ON users USING gin (name gin_trgm_ops);
+
+-- A name matches when a part of it is similar to the whole query, pg_trgm's word similarity, so
+-- part of a name finds it. search_query <% name is the indexable form of
+-- word_similarity(search_query, name) >= pg_trgm.word_similarity_threshold, 0.6 by default.
+CREATE OR REPLACE FUNCTION fn_users_search(search_query VARCHAR, max_results INTEGER)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  SELECT * FROM users
+  WHERE search_query <% name
+  ORDER BY word_similarity(search_query, name) DESC, id
+  LIMIT max_results;
+END;
+$$
+LANGUAGE plpgsql STABLE;
@@ -0,0 +1,29 @@
+-- An update may set a version above the next one, as when several updates coalesced into one
+-- write are counted each. The trigger still moves every other update to the next version.
+CREATE OR REPLACE FUNCTION fn_users_next_version()
+  RETURNS TRIGGER AS
+$$
+BEGIN
+  NEW.version := GREATEST(NEW.version, OLD.version + 1);
+  RETURN NEW;
+END;
+$$
+LANGUAGE plpgsql;
+
+-- Updates the user only if it is still at the expected version, moves it to the given later
+-- version, and returns the updated row. No row is returned if the user is absent or has another
+-- version.
+CREATE OR REPLACE FUNCTION fn_user_update_to_version(entity_id UUID, expected_version BIGINT, next_version BIGINT,
+                                                     user_name VARCHAR, user_phone VARCHAR, user_email VARCHAR)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  UPDATE users
+  SET name = user_name, phone = user_phone, email = user_email, version = next_version
+  WHERE id = entity_id AND version = expected_version
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql
+SET plan_cache_mode = force_custom_plan;
@@ -0,0 +1,12 @@
+CREATE OR REPLACE FUNCTION fn_users_create(body JSONB)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  INSERT INTO users (id, name, phone, email, administrator)
+  SELECT u.id, u.name, u.phone, u.email, u.administrator
+  FROM jsonb_to_recordset(body) AS u(id UUID, name VARCHAR(100), phone VARCHAR(15), email VARCHAR(50), administrator BOOLEAN)
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
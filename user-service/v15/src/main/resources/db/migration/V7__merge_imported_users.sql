@@ -0,0 +1,17 @@
+-- Moves the users copied into the users_import staging table, created by the import for its own
+-- transaction, into users. Users whose id is already taken are left as they are.
+CREATE OR REPLACE FUNCTION fn_users_import_merge()
+  RETURNS BIGINT AS
+$$
+DECLARE
+  imported BIGINT;
+BEGIN
+  INSERT INTO users (id, name, phone, email, administrator)
+  SELECT DISTINCT ON (i.id) i.id, i.name, i.phone, i.email, i.administrator
+  FROM users_import AS i
+  ON CONFLICT (id) DO NOTHING;
+  GET DIAGNOSTICS imported = ROW_COUNT;
+  RETURN imported;
+END;
+$$
+LANGUAGE plpgsql;
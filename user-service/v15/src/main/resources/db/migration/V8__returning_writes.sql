@@ -0,0 +1,24 @@
+CREATE OR REPLACE FUNCTION fn_user_create_returning(entity_id UUID, body JSONB)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  INSERT INTO users (id, name, phone, email, administrator)
+  VALUES (entity_id, body ->> 'name', body ->> 'phone', body ->> 'email', (body ->> 'administrator') :: BOOLEAN)
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION fn_user_update_returning(entity_id UUID, body JSONB)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  UPDATE users
+  SET name = body ->> 'name', phone = body ->> 'phone', email = body ->> 'email'
+  WHERE id = entity_id
+  RETURNING *;
+END;
+$$
+LANGUAGE plpgsql;
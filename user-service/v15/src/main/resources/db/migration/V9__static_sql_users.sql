@@ -0,0 +1,18 @@
+CREATE OR REPLACE FUNCTION fn_user_by_id_static(user_id UUID)
+  RETURNS SETOF users AS
+$$
+BEGIN
+  RETURN QUERY
+  SELECT * FROM users WHERE id = user_id;
+END;
+$$
+LANGUAGE plpgsql STABLE;
+
+CREATE OR REPLACE FUNCTION fn_user_delete_static(entity_id UUID)
+  RETURNS VOID AS
+$$
+BEGIN
+  DELETE FROM users WHERE id = entity_id;
+END;
+$$
+LANGUAGE plpgsql;
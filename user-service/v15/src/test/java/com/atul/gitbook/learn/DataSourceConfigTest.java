@@ -0,0 +1,15 @@
+package com.atul.gitbook.learn;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DataSourceConfigTest {
+
+    @Test
+    void testReplicaUrlKeepsTheDatabaseAndParameters() {
+        Assertions.assertEquals("jdbc:postgresql://replica-1:5434/learn_spring?stringtype=unspecified&prepareThreshold=1",
+                DataSourceConfig.replicaUrl("jdbc:postgresql://localhost:5433/learn_spring?stringtype=unspecified&prepareThreshold=1", "replica-1:5434"));
+        Assertions.assertEquals("jdbc:postgresql://replica-1:5434/learn_spring",
+                DataSourceConfig.replicaUrl("jdbc:postgresql://localhost:5433/learn_spring", "replica-1:5434"));
+    }
+}
@@ -14,9 +14,12 @@ import org.springframework.context.annotation.FilterType;
 import org.springframework.lang.Nullable;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
@@ -34,6 +37,7 @@ import static org.springframework.http.MediaType.APPLICATION_JSON;
 public class TestBase {
 
     protected static final Serializer<User> USER_SERIALIZER = Serializers.newJsonSerializer(User.class);
+    protected static final Serializer<User[]> USERS_SERIALIZER = Serializers.newJsonSerializer(User[].class);
 
     private static final String CREATE_USER = "/v1/%s/user";
 
@@ -46,6 +50,33 @@ public class TestBase {
         return requestBuilder;
     }
 
+    private static final String CREATE_USERS = "/v1/%s/users";
+
+    protected static RequestBuilder createUsersRequest(@Nullable UUID requesterId, @Nullable List<UserDto> userDtos) {
+        final var requestBuilder = MockMvcRequestBuilders
+                .post(String.format(CREATE_USERS, requesterId))
+                .contentType(APPLICATION_JSON);
+        if (userDtos != null)
+            requestBuilder.content(userDtos.stream().map(UserDto::toString).collect(Collectors.joining(",", "[", "]")));
+        return requestBuilder;
+    }
+
+    private static final String IMPORT_USERS = "/v1/%s/users/import";
+
+    protected static RequestBuilder importUsersRequest(@Nullable UUID requesterId, String contentType, String body) {
+        return MockMvcRequestBuilders
+                .post(String.format(IMPORT_USERS, requesterId))
+                .contentType(contentType)
+                .content(body);
+    }
+
+    private static final String EXPORT_USERS = "/v1/%s/users/export";
+
+    protected static RequestBuilder exportUsersRequest(@Nullable UUID requesterId) {
+        return MockMvcRequestBuilders
+                .get(String.format(EXPORT_USERS, requesterId));
+    }
+
     private static final String GET_USER = "/v1/%s/user/%s";
 
     protected static RequestBuilder getUserRequest(@Nullable UUID requesterId, @Nullable UUID userId) {
@@ -54,9 +85,54 @@ public class TestBase {
                 .contentType(APPLICATION_JSON);
     }
 
+    private static final String LIST_USERS = "/v1/%s/users";
+
+    protected static MockHttpServletRequestBuilder listUsersRequest(@Nullable UUID requesterId, @Nullable UUID after, int limit) {
+        final var requestBuilder = MockMvcRequestBuilders
+                .get(String.format(LIST_USERS, requesterId))
+                .param("limit", String.valueOf(limit));
+        if (after != null)
+            requestBuilder.param("after", after.toString());
+        return requestBuilder;
+    }
+
+    private static final String LOOKUP_USERS = "/v1/%s/users:lookup";
+
+    protected static RequestBuilder lookupUsersRequest(@Nullable UUID requesterId, List<UUID> userIds) {
+        return MockMvcRequestBuilders
+                .post(String.format(LOOKUP_USERS, requesterId))
+                .contentType(APPLICATION_JSON)
+                .content(userIds.stream().map(id -> "\"" + id + "\"").collect(Collectors.joining(",", "[", "]")));
+    }
+
+    private static final String FIND_USERS_BY_EMAIL = "/v1/%s/users/by-email";
+
+    protected static RequestBuilder findUsersByEmailRequest(@Nullable UUID requesterId, String email) {
+        return MockMvcRequestBuilders
+                .get(String.format(FIND_USERS_BY_EMAIL, requesterId))
+                .param("email", email);
+    }
+
+    private static final String FIND_USERS_BY_PHONE = "/v1/%s/users/by-phone";
+
+    protected static RequestBuilder findUsersByPhoneRequest(@Nullable UUID requesterId, String phone) {
+        return MockMvcRequestBuilders
+                .get(String.format(FIND_USERS_BY_PHONE, requesterId))
+                .param("phone", phone);
+    }
+
+    private static final String SEARCH_USERS = "/v1/%s/users/search";
+
+    protected static RequestBuilder searchUsersRequest(@Nullable UUID requesterId, String query, int limit) {
+        return MockMvcRequestBuilders
+                .get(String.format(SEARCH_USERS, requesterId))
+                .param("q", query)
+                .param("limit", String.valueOf(limit));
+    }
+
     private static final String UPDATE_USER = "/v1/%s/user/%s";
 
-    protected static RequestBuilder updateUserRequest(@Nullable UUID requesterId, @Nullable UUID userId, @Nullable UpdateUserDto updateUserDto) {
+    protected static MockHttpServletRequestBuilder updateUserRequest(@Nullable UUID requesterId, @Nullable UUID userId, @Nullable UpdateUserDto updateUserDto) {
         final var requestBuilder = MockMvcRequestBuilders
                 .put(String.format(UPDATE_USER, requesterId, userId))
                 .contentType(APPLICATION_JSON);
@@ -1,9 +1,10 @@
 package com.atul.gitbook.learn;
 
+import com.atul.gitbook.learn.postgres.PoolConfig;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.flywaydb.core.Flyway;
 import org.flywaydb.core.api.MigrationVersion;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -11,6 +12,7 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 
 import javax.sql.DataSource;
 import java.net.URI;
+import java.util.Map;
 import java.util.Set;
 
 @Testcontainers
@@ -25,7 +27,10 @@ public class TestContainerConfig {
             @Value("${database.username}") final String username,
             @Value("${database.password}") final String password,
             @Value("${test.container.postgres}") final String postgresContainer,
-            @Value("${flyway.default.locations}") final Set<String> flywayLocations) {
+            @Value("${flyway.default.locations}") final Set<String> flywayLocations,
+            @Value("${flyway.users.partition.count}") final int usersPartitionCount,
+            final PoolConfig poolConfig,
+            final MeterRegistry meterRegistry) {
         if (fSqlContainer == null) {
             fSqlContainer = new PostgreSQLContainer(postgresContainer);
             final var createScript = this.getClass().getClassLoader().getResource("test-db-creation.sql");
@@ -37,20 +42,21 @@ public class TestContainerConfig {
         // substring(5) strips the "jdbc:" from the front of the URI, otherwise .create() fails.
         final var queryParams = URI.create(jdbcUrl.substring(5));
         final var url = fSqlContainer.getJdbcUrl() + "&" + queryParams.getRawQuery();
-        final var dataSource = DataSourceBuilder.create()
-                .url(url).username(username).password(password).build();
-        configureFlyway(dataSource, flywayLocations);
+        final var dataSource = DataSourceConfig.buildDataSource(url, username, password, poolConfig, meterRegistry);
+        configureFlyway(dataSource, flywayLocations, usersPartitionCount);
         return dataSource;
     }
 
     private static void configureFlyway(
             final DataSource dataSource,
-            final Set<String> flywayLocations) {
+            final Set<String> flywayLocations,
+            final int usersPartitionCount) {
         Flyway.configure()
                 .dataSource(dataSource)
                 .baselineOnMigrate(true)
                 .baselineVersion("0")
                 .locations(flywayLocations.toArray(new String[]{}))
+                .placeholders(Map.of(DataSourceConfig.USERS_PARTITION_COUNT, String.valueOf(usersPartitionCount)))
                 .target(MigrationVersion.LATEST)
                 .validateOnMigrate(true)
                 .load()
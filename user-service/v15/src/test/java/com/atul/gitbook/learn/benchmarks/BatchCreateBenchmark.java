@@ -0,0 +1,71 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second inserted by {@link PostgresRepository#createUsers(List)} for batches of 1, 100
+ * and 10,000 users, against a Postgres test container. The {@code rows} counter in the results is
+ * the rate to compare; the primary score counts batches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BatchCreateBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int batchSize;
+
+    private BenchmarkDatabase fDatabase;
+    private PostgresRepository fRepository;
+    private List<UserDto> fBatch;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fDatabase = new BenchmarkDatabase("prepareThreshold=1");
+        fRepository = fDatabase.newRepository();
+        fBatch = new ArrayList<>(batchSize);
+        for (var i = 0; i < batchSize; i++) {
+            fBatch.add(new UserDto("Mike Selby " + i, String.format("%010d", i), "selby" + i + "@mark.com"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fDatabase.close();
+    }
+
+    @Benchmark
+    public List<User> createUsers(Rows rows) {
+        final var users = fRepository.createUsers(fBatch);
+        rows.rows += users.size();
+        return users;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(BatchCreateBenchmark.class, 1);
+    }
+}
@@ -0,0 +1,129 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.DataSourceConfig;
+import com.atul.gitbook.learn.postgres.RepoConfig;
+import com.atul.gitbook.learn.postgres.RepositoryJdbcDaoSupport;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A migrated Postgres test container and a connection pool to it, for the benchmarks that need
+ * a real database. The server tracks the calls and time of every PL/pgSQL function, in
+ * {@code pg_stat_user_functions}. Requires Docker.
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+
+    // The default of the application.
+    private static final int USERS_PARTITION_COUNT = 16;
+    private static final RowMapper<User> USER_ROW_MAPPER = (rs, rowCount) -> new User(rs.getObject("id", UUID.class),
+            rs.getString("name"), rs.getString("phone"), rs.getString("email"), rs.getBoolean("administrator"));
+
+    private final PostgreSQLContainer<?> fContainer;
+    private final HikariDataSource fDataSource;
+
+    /**
+     * @param urlParameters extra parameters of the jdbc url, e.g. {@code prepareThreshold=1}.
+     */
+    BenchmarkDatabase(String urlParameters) {
+        this(urlParameters, USERS_PARTITION_COUNT);
+    }
+
+    /**
+     * @param urlParameters       extra parameters of the jdbc url, e.g. {@code prepareThreshold=1}.
+     * @param usersPartitionCount the number of hash partitions of the users table.
+     */
+    BenchmarkDatabase(String urlParameters, int usersPartitionCount) {
+        fContainer = new PostgreSQLContainer<>("postgres:13.1");
+        fContainer.withCommand("postgres", "-c", "track_functions=pl");
+        fContainer.start();
+        fDataSource = new HikariDataSource();
+        fDataSource.setJdbcUrl(fContainer.getJdbcUrl() + "&stringtype=unspecified&" + urlParameters);
+        fDataSource.setUsername(fContainer.getUsername());
+        fDataSource.setPassword(fContainer.getPassword());
+        Flyway.configure().dataSource(fDataSource).locations("db/migration")
+                .placeholders(Map.of(DataSourceConfig.USERS_PARTITION_COUNT, String.valueOf(usersPartitionCount)))
+                .load().migrate();
+    }
+
+    HikariDataSource getDataSource() {
+        return fDataSource;
+    }
+
+    /**
+     * @return a repository calling the default stored procedures of the application.
+     */
+    PostgresRepository newRepository() {
+        return newRepository(RepoConfig.builder().build());
+    }
+
+    PostgresRepository newRepository(RepoConfig repoConfig) {
+        return newRepository(repoConfig, true);
+    }
+
+    PostgresRepository newRepository(RepoConfig repoConfig, boolean typedWrites) {
+        return new PostgresRepository(new RepositoryJdbcDaoSupport(fDataSource, repoConfig), USER_ROW_MAPPER, typedWrites);
+    }
+
+    /**
+     * Clears the statistics of the server, e.g. once the benchmark data is loaded.
+     */
+    void resetStatistics() {
+        new JdbcTemplate(fDataSource).execute("SELECT pg_stat_reset()");
+    }
+
+    /**
+     * Prints the calls of each function whose name is like the pattern and the server time spent
+     * in it per call, since the last {@link #resetStatistics()}. That is the database CPU the
+     * function costs, without the network and driver time a benchmark itself includes.
+     */
+    void printFunctionStatistics(String namePattern) {
+        if (!awaitStatistics())
+            return;
+        new JdbcTemplate(fDataSource).query(
+                "SELECT funcname, calls, self_time FROM pg_stat_user_functions WHERE funcname LIKE ? ORDER BY funcname",
+                (RowCallbackHandler) resultSet -> {
+                    final var calls = resultSet.getLong("calls");
+                    System.out.printf("%n%s: %d calls, %.1f us of server time per call%n", resultSet.getString("funcname"), calls,
+                            calls == 0 ? 0 : resultSet.getDouble("self_time") * 1_000 / calls);
+                },
+                namePattern);
+    }
+
+    /**
+     * @return the transactions committed in the database so far, as reported by the backends.
+     */
+    long getCommitCount() {
+        awaitStatistics();
+        return new JdbcTemplate(fDataSource).queryForObject(
+                "SELECT xact_commit FROM pg_stat_database WHERE datname = current_database()", Long.class);
+    }
+
+    @Override
+    public void close() {
+        fDataSource.close();
+        fContainer.stop();
+    }
+
+    /**
+     * @return false if interrupted while waiting for the backends to report.
+     */
+    private static boolean awaitStatistics() {
+        try {
+            // Backends report their statistics at most every 500 ms, once idle.
+            Thread.sleep(1_000);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a JMH benchmark class once per thread count, doubling from 1 up to the number of
+ * available processors. The upper bound can be overridden with {@code -Dbenchmark.threads=N}, and
+ * JMH profilers can be added with {@code -Dbenchmark.profilers}, e.g. {@code gc} for the bytes
+ * allocated per operation.
+ * <p>
+ * The benchmarks live in the test sources so they never run as part of {@code mvn test}; run the
+ * {@code main} method of a benchmark class from the IDE or with {@code mvn exec:java}.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void runThreadSweep(Class<?> benchmark) throws RunnerException {
+        runThreadSweep(benchmark, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Same as {@link #runThreadSweep(Class)}, but sweeps up to {@code maxThreads} unless
+     * {@code -Dbenchmark.threads} says otherwise.
+     */
+    public static void runThreadSweep(Class<?> benchmark, int maxThreads) throws RunnerException {
+        for (var threads : threadCounts(maxThreads)) {
+            final var options = new OptionsBuilder()
+                    .include(benchmark.getName())
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .measurementIterations(5)
+                    .jvmArgsAppend("-Xmx" + System.getProperty("benchmark.heap", "8g"));
+            for (var profiler : System.getProperty("benchmark.profilers", "").split(",")) {
+                if (!profiler.trim().isEmpty())
+                    options.addProfiler(profiler.trim());
+            }
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static List<Integer> threadCounts(int defaultMaxThreads) {
+        final var maxThreads = Integer.getInteger("benchmark.threads", defaultMaxThreads);
+        final var threadCounts = new ArrayList<Integer>();
+        for (var threads = 1; threads < maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(maxThreads);
+        return threadCounts;
+    }
+}
@@ -0,0 +1,86 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.journal.JournalConfig;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.DurableInMemoryRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long a {@link DurableInMemoryRepository} takes to start from a snapshot plus the
+ * tail of the write-ahead log.
+ * <p>
+ * {@code -Dusers=N} users (10,000,000 by default) are written by {@code -Dthreads=T} writers; a
+ * snapshot is taken after the first 90% of them, so the remaining 10% have to be replayed from
+ * the log. The first repository is then abandoned without being closed, as a crash would, and a
+ * second one is opened on the same directory. Use a heap large enough to hold the users twice,
+ * e.g. {@code -Xmx12g} for 10M users.
+ */
+public final class DurableRepositoryRestartBenchmark {
+
+    private DurableRepositoryRestartBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final var users = Integer.getInteger("users", 10_000_000);
+        final var threads = Integer.getInteger("threads", 64);
+        final var directory = Files.createTempDirectory("user-journal");
+        final var config = new JournalConfig(directory, 64 * 1024 * 1024, 256, 2, 0);
+
+        final var repository = new DurableInMemoryRepository(config);
+        var startTime = System.nanoTime();
+        createUsers(repository, users * 9 / 10, threads);
+        repository.snapshot();
+        createUsers(repository, users - users * 9 / 10, threads);
+        System.out.printf("Wrote %d users in %d ms (%d threads).%n", users, elapsedMillis(startTime), threads);
+        System.out.printf("Journal directory holds %.1f MB.%n", directorySize(directory) / 1048576.0);
+
+        startTime = System.nanoTime();
+        try (var recovered = new DurableInMemoryRepository(config)) {
+            final var elapsedMillis = elapsedMillis(startTime);
+            System.out.printf("Restarted with %d users in %d ms.%n", recovered.size(), elapsedMillis);
+            recovered.getUser(recovered.getDefaultAdministrator().getId());
+        }
+    }
+
+    private static void createUsers(DurableInMemoryRepository repository, int count, int threads)
+            throws InterruptedException, ExecutionException {
+        final var executor = Executors.newFixedThreadPool(threads);
+        try {
+            final var tasks = new ArrayList<Callable<Void>>();
+            for (var t = 0; t < threads; t++) {
+                final var first = (int) ((long) count * t / threads);
+                final var last = (int) ((long) count * (t + 1) / threads);
+                tasks.add(() -> {
+                    for (var i = first; i < last; i++) {
+                        repository.createUser(new UserDto("Mike Selby " + i, String.format("%010d", i), "selby" + i + "@mark.com"));
+                    }
+                    return null;
+                });
+            }
+            for (var future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    private static long elapsedMillis(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+}
@@ -0,0 +1,76 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+import com.atul.gitbook.learn.users.service.impl.GroupCommitRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of creating users with a commit per create, and with the concurrent creates grouped
+ * into shared commits by {@link GroupCommitRepository}, on 1 to 64 threads against a Postgres test
+ * container. The sampled latencies give the p99 of a create; after each trial the creates and the
+ * commits per second, from the commit count of {@code pg_stat_database}, are printed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GroupCommitBenchmark {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+
+    @Param({"per_request", "group_commit"})
+    public String commits;
+
+    @Param({"200"})
+    public long groupCommitDelayMicros;
+
+    private BenchmarkDatabase fDatabase;
+    private IUserRepository fRepository;
+    private final LongAdder fCreates = new LongAdder();
+    private long fStartCommits;
+    private long fStartNanos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // One connection per benchmark thread, so the creates only wait for the database.
+        fDatabase = new BenchmarkDatabase("prepareThreshold=1");
+        fDatabase.getDataSource().setMaximumPoolSize(64);
+        final var repository = fDatabase.newRepository();
+        fRepository = commits.equals("group_commit") ? new GroupCommitRepository(repository, groupCommitDelayMicros, 500) : repository;
+        fStartCommits = fDatabase.getCommitCount();
+        fStartNanos = System.nanoTime();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        final var seconds = (System.nanoTime() - fStartNanos) / 1e9;
+        final var commitCount = fDatabase.getCommitCount() - fStartCommits;
+        System.out.printf("%n%.0f creates/s, %.0f commits/s%n", fCreates.sum() / seconds, commitCount / seconds);
+        fRepository.close();
+        fDatabase.close();
+    }
+
+    @Benchmark
+    public User createUser() {
+        fCreates.increment();
+        return fRepository.createUser(USER_DTO);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(GroupCommitBenchmark.class, 64);
+    }
+}
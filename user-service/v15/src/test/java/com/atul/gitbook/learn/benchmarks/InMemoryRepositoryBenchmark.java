@@ -0,0 +1,65 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.InMemoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link InMemoryRepository} reads and updates on uniformly random users.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InMemoryRepositoryBenchmark {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+    private static final UpdateUserDto UPDATE_USER_DTO = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+
+    @Param({"10000", "1000000", "10000000"})
+    public int userCount;
+
+    private InMemoryRepository fRepository;
+    private UUID[] fIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fRepository = new InMemoryRepository();
+        fIds = new UUID[userCount];
+        for (var i = 0; i < userCount; i++) {
+            fIds[i] = fRepository.createUser(USER_DTO).getId();
+        }
+    }
+
+    @Benchmark
+    public User getUser() {
+        return fRepository.getUser(randomId());
+    }
+
+    @Benchmark
+    public void updateUser() {
+        fRepository.updateUser(randomId(), UPDATE_USER_DTO);
+    }
+
+    private UUID randomId() {
+        return fIds[ThreadLocalRandom.current().nextInt(fIds.length)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(InMemoryRepositoryBenchmark.class);
+    }
+}
@@ -0,0 +1,128 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+import com.atul.gitbook.learn.users.service.impl.InMemoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of searching the names of 10M users for part of a last name, through the trigram index
+ * of the postgres repository and of the in-memory repository. The sampled latencies give the p99
+ * of a search, which should stay under 20 ms.
+ * <p>
+ * The names are a first name and a last name of three syllables, some 32K last names shared by
+ * about 300 users each. A query is the first five letters of the last name of a random user. The
+ * in-memory repository needs a heap of about 32 GB at 10M users, {@code -Dbenchmark.heap=32g}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NameSearchBenchmark {
+
+    private static final List<String> FIRST_NAMES = List.of("Mike", "Anna", "John", "Maria", "David", "Sara", "James",
+            "Linda", "Robert", "Emma", "Ahmed", "Priya", "Chen", "Yuki", "Olga", "Pedro", "Fatima", "Ivan", "Aisha", "Lars",
+            "Nina", "Omar", "Rosa", "Tariq", "Ines", "Kofi", "Mei", "Raj", "Zoe", "Hugo", "Lena", "Kai");
+    private static final List<String> SYLLABLES = List.of("sel", "by", "mar", "shal", "an", "dor", "ve", "lin", "ko",
+            "ra", "tes", "mu", "ber", "gan", "ti", "wol", "fen", "ha", "qui", "zo", "pel", "ric", "son", "da", "lo",
+            "mer", "nu", "sta", "vik", "el", "gor", "tan");
+    private static final int QUERY_COUNT = 10_000;
+
+    @Param({"postgres", "in_memory"})
+    public String repository;
+
+    @Param({"10000000"})
+    public int userCount;
+
+    @Param({"20"})
+    public int limit;
+
+    private BenchmarkDatabase fDatabase;
+    private IUserRepository fRepository;
+    private String[] fQueries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (repository.equals("postgres")) {
+            fDatabase = new BenchmarkDatabase("prepareThreshold=1");
+            fRepository = fDatabase.newRepository();
+            fRepository.importUsers(new GeneratedUsers(userCount));
+        } else {
+            final var inMemoryRepository = new InMemoryRepository();
+            new GeneratedUsers(userCount).forEachRemaining(inMemoryRepository::putUser);
+            fRepository = inMemoryRepository;
+        }
+        final var random = new Random(42);
+        fQueries = new String[QUERY_COUNT];
+        for (var i = 0; i < QUERY_COUNT; i++) {
+            final var lastName = lastName(random.nextInt(userCount));
+            fQueries[i] = lastName.substring(0, Math.min(5, lastName.length()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (fDatabase != null)
+            fDatabase.close();
+    }
+
+    @Benchmark
+    public List<User> searchByName() {
+        return fRepository.searchByName(fQueries[ThreadLocalRandom.current().nextInt(fQueries.length)], limit);
+    }
+
+    private static String lastName(int user) {
+        // Scrambled, so neighbouring users don't share a last name.
+        final var scrambled = (user * 0x9E3779B1) >>> 17;
+        final var lastName = SYLLABLES.get(scrambled & 31) + SYLLABLES.get((scrambled >>> 5) & 31) + SYLLABLES.get((scrambled >>> 10) & 31);
+        return Character.toUpperCase(lastName.charAt(0)) + lastName.substring(1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(NameSearchBenchmark.class, 16);
+    }
+
+    /**
+     * The users of the benchmark, made as they are read so they are never all held at once.
+     */
+    private static final class GeneratedUsers implements Iterator<User> {
+
+        private final int fCount;
+        private int fNext;
+
+        private GeneratedUsers(int count) {
+            fCount = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return fNext < fCount;
+        }
+
+        @Override
+        public User next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            final var user = fNext++;
+            final var name = FIRST_NAMES.get(user & 31) + " " + lastName(user);
+            return new User(UUID.randomUUID(), name, String.format("%010d", user), "user" + user + "@mark.com", false);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.collections.UuidOrder;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one page of {@link PostgresRepository#getUsersAfter(UUID, int)} at the start, the
+ * middle and the end of a table of {@value #USER_COUNT} users. With keyset pagination the three
+ * should be the same; an OFFSET based listing would grow with the depth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PagingBenchmark {
+
+    private static final int USER_COUNT = 1_000_000;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"0.0", "0.5", "0.99"})
+    public double depth;
+
+    private BenchmarkDatabase fDatabase;
+    private PostgresRepository fRepository;
+    private UUID fAfter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fDatabase = new BenchmarkDatabase("prepareThreshold=1");
+        fRepository = fDatabase.newRepository();
+        final var batch = new ArrayList<UserDto>(10_000);
+        for (var i = 0; i < 10_000; i++) {
+            batch.add(new UserDto("Mike Selby " + i, String.format("%010d", i), "selby" + i + "@mark.com"));
+        }
+        final var ids = new ArrayList<UUID>(USER_COUNT);
+        while (ids.size() < USER_COUNT) {
+            fRepository.createUsers(batch).forEach(user -> ids.add(user.getId()));
+        }
+        ids.sort(UuidOrder.COMPARATOR);
+        fAfter = depth == 0 ? null : ids.get((int) (depth * ids.size()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fDatabase.close();
+    }
+
+    @Benchmark
+    public List<User> getPage() {
+        return fRepository.getUsersAfter(fAfter, PAGE_SIZE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(PagingBenchmark.class, 1);
+    }
+}
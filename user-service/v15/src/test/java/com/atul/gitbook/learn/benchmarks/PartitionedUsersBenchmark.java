@@ -0,0 +1,87 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of creating a user and of looking one up by id in a users table of 10M and 100M rows,
+ * split into a single hash partition, which stands in for the unpartitioned table, and into 16.
+ * The rows are generated by the server in batches of {@value #LOAD_BATCH_SIZE}, then the table is
+ * vacuumed and analyzed. The lookups pick among {@value #SAMPLE_SIZE} ids sampled from the table.
+ * <p>
+ * Each trial loads its own table, which takes tens of minutes and some 15 GB of disk at 100M rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PartitionedUsersBenchmark {
+
+    private static final int LOAD_BATCH_SIZE = 1_000_000;
+    private static final int SAMPLE_SIZE = 100_000;
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+
+    @Param({"10000000", "100000000"})
+    public long rows;
+
+    @Param({"1", "16"})
+    public int partitions;
+
+    private BenchmarkDatabase fDatabase;
+    private PostgresRepository fRepository;
+    private UUID[] fIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fDatabase = new BenchmarkDatabase("prepareThreshold=1", partitions);
+        fDatabase.getDataSource().setMaximumPoolSize(16);
+        final var jdbcTemplate = new JdbcTemplate(fDatabase.getDataSource());
+        for (var loaded = 0L; loaded < rows; loaded += LOAD_BATCH_SIZE) {
+            jdbcTemplate.update("INSERT INTO users (id, name, phone, email, administrator) "
+                            + "SELECT gen_random_uuid(), 'Mike Selby ' || i, lpad(i::text, 10, '0'), 'selby' || i || '@mark.com', false "
+                            + "FROM generate_series(?::bigint, ?::bigint) AS i",
+                    loaded, Math.min(rows, loaded + LOAD_BATCH_SIZE) - 1);
+        }
+        jdbcTemplate.execute("VACUUM ANALYZE users");
+        final List<UUID> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM users TABLESAMPLE SYSTEM (1) LIMIT " + SAMPLE_SIZE, UUID.class);
+        fIds = ids.toArray(new UUID[0]);
+        fRepository = fDatabase.newRepository();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fDatabase.close();
+    }
+
+    @Benchmark
+    public User createUser() {
+        return fRepository.createUser(USER_DTO);
+    }
+
+    @Benchmark
+    public User getUser() {
+        return fRepository.getUser(fIds[ThreadLocalRandom.current().nextInt(fIds.length)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(PartitionedUsersBenchmark.class, 16);
+    }
+}
@@ -0,0 +1,76 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link PostgresRepository} calls against a Postgres test container, with server-side
+ * prepared statements off ({@code prepareThreshold=0}), on after the driver's default five
+ * executions, and on from the first execution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostgresRepositoryBenchmark {
+
+    private static final UpdateUserDto UPDATE_USER_DTO = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+    private static final int USER_COUNT = 10_000;
+
+    @Param({"0", "5", "1"})
+    public int prepareThreshold;
+
+    private BenchmarkDatabase fDatabase;
+    private PostgresRepository fRepository;
+    private UUID[] fIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fDatabase = new BenchmarkDatabase("prepareThreshold=" + prepareThreshold);
+        fRepository = fDatabase.newRepository();
+        fIds = new UUID[USER_COUNT];
+        final var userDto = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+        for (var i = 0; i < USER_COUNT; i++) {
+            fIds[i] = fRepository.createUser(userDto).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fDatabase.close();
+    }
+
+    @Benchmark
+    public User getUser() {
+        return fRepository.getUser(randomId());
+    }
+
+    @Benchmark
+    public void updateUser() {
+        fRepository.updateUser(randomId(), UPDATE_USER_DTO);
+    }
+
+    private UUID randomId() {
+        return fIds[ThreadLocalRandom.current().nextInt(fIds.length)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(PostgresRepositoryBenchmark.class, 1);
+    }
+}
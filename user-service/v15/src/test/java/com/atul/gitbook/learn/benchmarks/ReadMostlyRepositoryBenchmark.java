@@ -0,0 +1,67 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.InMemoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link InMemoryRepository} under the production mix: 95% of the operations are a
+ * {@code GET /v1/{requesterId}/user/{userId}}, i.e. a lookup of the requester followed by a lookup
+ * of the target, and 5% are updates. Sweeps 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadMostlyRepositoryBenchmark {
+
+    private static final UpdateUserDto UPDATE_USER_DTO = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+
+    @Param({"10000", "1000000"})
+    public int userCount;
+
+    @Param({"95"})
+    public int readPercentage;
+
+    private InMemoryRepository fRepository;
+    private UUID[] fIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fRepository = new InMemoryRepository();
+        fIds = new UUID[userCount];
+        final var userDto = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+        for (var i = 0; i < userCount; i++) {
+            fIds[i] = fRepository.createUser(userDto).getId();
+        }
+    }
+
+    @Benchmark
+    public User readMostly() {
+        final var random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < readPercentage) {
+            fRepository.getUser(fIds[random.nextInt(fIds.length)]);
+            return fRepository.getUser(fIds[random.nextInt(fIds.length)]);
+        }
+        fRepository.updateUser(fIds[random.nextInt(fIds.length)], UPDATE_USER_DTO);
+        return null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(ReadMostlyRepositoryBenchmark.class, 64);
+    }
+}
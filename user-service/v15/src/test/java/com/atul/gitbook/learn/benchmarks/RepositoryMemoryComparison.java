@@ -0,0 +1,93 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.offheap.UserSlabStore;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+import com.atul.gitbook.learn.users.service.impl.InMemoryRepository;
+import com.atul.gitbook.learn.users.service.impl.OffHeapRepository;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Compares the retained heap and the garbage collection work of the heap based
+ * {@link InMemoryRepository} with the {@link OffHeapRepository}.
+ * <p>
+ * Each repository is filled with {@code -Dusers=N} users (1,000,000 by default), after which
+ * the retained heap is measured and a get/update workload runs while the collector counts and
+ * pause times are recorded. Run it with a fixed heap, for example {@code -Xms4g -Xmx4g}, so both
+ * repositories see the same collector configuration.
+ */
+public final class RepositoryMemoryComparison {
+
+    private static final UpdateUserDto UPDATE_USER_DTO = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+
+    private RepositoryMemoryComparison() {
+    }
+
+    public static void main(String[] args) {
+        final var users = Integer.getInteger("users", 1_000_000);
+        final var operations = Integer.getInteger("operations", 10_000_000);
+        System.out.printf("%-12s %12s %14s %14s %10s %12s%n",
+                "repository", "users", "heap (MB)", "off-heap (MB)", "gc count", "gc time (ms)");
+        measure("in_memory", InMemoryRepository::new, users, operations);
+        measure("off_heap", () -> new OffHeapRepository(UserSlabStore.DEFAULT_SLAB_SIZE), users, operations);
+    }
+
+    private static void measure(String name,
+                                Supplier<IUserRepository> repositorySupplier,
+                                int users,
+                                int operations) {
+        final var heapBefore = usedHeapAfterGc();
+        final var repository = repositorySupplier.get();
+        // Keep the ids as primitives so the workload doesn't retain any UUID objects of its own.
+        final var mostSigBits = new long[users];
+        final var leastSigBits = new long[users];
+        for (var i = 0; i < users; i++) {
+            // Distinct strings per user, as they would be when read from a request or the database.
+            final var userDto = new UserDto("Mike Selby " + i, String.format("%010d", i), "selby" + i + "@mark.com");
+            final var id = repository.createUser(userDto).getId();
+            mostSigBits[i] = id.getMostSignificantBits();
+            leastSigBits[i] = id.getLeastSignificantBits();
+        }
+        final var heapAfter = usedHeapAfterGc() - 2L * Long.BYTES * users;
+        final var offHeap = repository instanceof OffHeapRepository ? ((OffHeapRepository) repository).getOffHeapBytes() : 0;
+
+        final var gcCountBefore = gcCount();
+        final var gcTimeBefore = gcTime();
+        final var random = ThreadLocalRandom.current();
+        for (var i = 0; i < operations; i++) {
+            final var index = random.nextInt(users);
+            final var id = new UUID(mostSigBits[index], leastSigBits[index]);
+            if (i % 20 == 0)
+                repository.updateUser(id, UPDATE_USER_DTO);
+            else
+                repository.getUser(id);
+        }
+        System.out.printf("%-12s %12d %14.1f %14.1f %10d %12d%n",
+                name, users, (heapAfter - heapBefore) / 1048576.0, offHeap / 1048576.0,
+                gcCount() - gcCountBefore, gcTime() - gcTimeBefore);
+    }
+
+    private static long usedHeapAfterGc() {
+        for (var i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
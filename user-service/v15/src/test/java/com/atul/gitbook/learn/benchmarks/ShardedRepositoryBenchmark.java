@@ -0,0 +1,75 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.ShardedRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ShardedRepository} reads and updates for 1 to 32 shards, each run on 1 to
+ * 32 threads, to show how writes scale with the number of single-writer shards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ShardedRepositoryBenchmark {
+
+    private static final UpdateUserDto UPDATE_USER_DTO = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int shardCount;
+
+    @Param({"1000000"})
+    public int userCount;
+
+    private ShardedRepository fRepository;
+    private UUID[] fIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fRepository = new ShardedRepository(shardCount);
+        fIds = new UUID[userCount];
+        final var userDto = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+        for (var i = 0; i < userCount; i++) {
+            fIds[i] = fRepository.createUser(userDto).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fRepository.close();
+    }
+
+    @Benchmark
+    public User getUser() {
+        return fRepository.getUser(randomId());
+    }
+
+    @Benchmark
+    public void updateUser() {
+        fRepository.updateUser(randomId(), UPDATE_USER_DTO);
+    }
+
+    private UUID randomId() {
+        return fIds[ThreadLocalRandom.current().nextInt(fIds.length)];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(ShardedRepositoryBenchmark.class, 32);
+    }
+}
@@ -0,0 +1,80 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.postgres.RepoConfig;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the get and delete stored procedures that build their SQL with {@code EXECUTE FORMAT}
+ * against their static SQL versions, whose plans PL/pgSQL caches. The delete is of absent users,
+ * so the table doesn't change during the run.
+ * <p>
+ * At the end of each trial the server time spent in each procedure, from
+ * {@code pg_stat_user_functions}, is printed per call; it is the database CPU the procedure costs,
+ * without the network and driver time the benchmark itself includes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StoredProcedureBenchmark {
+
+    private static final int USER_COUNT = 10_000;
+
+    @Param({"dynamic", "static"})
+    public String sql;
+
+    private BenchmarkDatabase fDatabase;
+    private PostgresRepository fRepository;
+    private UUID[] fIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fDatabase = new BenchmarkDatabase("prepareThreshold=1");
+        fRepository = fDatabase.newRepository(sql.equals("static")
+                ? RepoConfig.builder().build()
+                : RepoConfig.builder().getSproc("fn_user_by_id").deleteSproc("fn_user_delete").build());
+        fIds = new UUID[USER_COUNT];
+        final var userDto = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+        for (var i = 0; i < USER_COUNT; i++) {
+            fIds[i] = fRepository.createUser(userDto).getId();
+        }
+        fDatabase.resetStatistics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fDatabase.printFunctionStatistics("fn_user_by_id%");
+        fDatabase.printFunctionStatistics("fn_user_delete%");
+        fDatabase.close();
+    }
+
+    @Benchmark
+    public User getUser() {
+        return fRepository.getUser(fIds[ThreadLocalRandom.current().nextInt(fIds.length)]);
+    }
+
+    @Benchmark
+    public void deleteAbsentUser() {
+        fRepository.deleteUser(UUID.randomUUID());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(StoredProcedureBenchmark.class, 1);
+    }
+}
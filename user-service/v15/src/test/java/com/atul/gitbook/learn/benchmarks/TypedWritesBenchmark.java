@@ -0,0 +1,79 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.postgres.RepoConfig;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates and updates users with the JSON body procedures and with the typed parameter ones,
+ * against a Postgres test container. Run with {@code -Dbenchmark.profilers=gc} for the bytes
+ * allocated per write ({@code gc.alloc.rate.norm}), and add {@code perfnorm} on Linux for the
+ * client CPU cycles per write. The server time per call of each procedure is printed after
+ * each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TypedWritesBenchmark {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+    private static final UpdateUserDto UPDATE_USER_DTO = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+    private static final int USER_COUNT = 10_000;
+
+    @Param({"json", "typed"})
+    public String writes;
+
+    private BenchmarkDatabase fDatabase;
+    private PostgresRepository fRepository;
+    private UUID[] fIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fDatabase = new BenchmarkDatabase("prepareThreshold=1");
+        final var typedWrites = writes.equals("typed");
+        fRepository = fDatabase.newRepository(RepoConfig.builder().build(), typedWrites);
+        fIds = new UUID[USER_COUNT];
+        for (var i = 0; i < USER_COUNT; i++) {
+            fIds[i] = fRepository.createUser(USER_DTO).getId();
+        }
+        fDatabase.resetStatistics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fDatabase.printFunctionStatistics("fn_user_create%");
+        fDatabase.printFunctionStatistics("fn_user_update%");
+        fDatabase.close();
+    }
+
+    @Benchmark
+    public User createUser() {
+        return fRepository.createUser(USER_DTO);
+    }
+
+    @Benchmark
+    public User updateUser() {
+        return fRepository.updateUser(fIds[ThreadLocalRandom.current().nextInt(fIds.length)], UPDATE_USER_DTO);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.runThreadSweep(TypedWritesBenchmark.class, 1);
+    }
+}
@@ -0,0 +1,42 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.users.models.CompactUser;
+import com.atul.gitbook.learn.users.models.User;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.UUID;
+
+/**
+ * Prints the retained size per user of {@link User} and of {@link CompactUser}, measured with JOL
+ * over {@code -Dusers=N} users (100,000 by default) spread over a handful of email domains, so
+ * the domains shared by {@link CompactUser} are amortized the way they would be in production.
+ */
+public final class UserFootprintReport {
+
+    private static final String[] DOMAINS = {"gmail.com", "yahoo.com", "outlook.com", "mark.com"};
+
+    private UserFootprintReport() {
+    }
+
+    public static void main(String[] args) {
+        final var count = Integer.getInteger("users", 100_000);
+        final var users = new User[count];
+        final var compactUsers = new CompactUser[count];
+        for (var i = 0; i < count; i++) {
+            // Distinct strings per user, as they would be when read from a request or the database.
+            users[i] = new User(UUID.randomUUID(), "Mike Selby " + i, String.format("%010d", i), "selby" + i + "@" + DOMAINS[i % DOMAINS.length], false);
+            compactUsers[i] = CompactUser.from(users[i]);
+        }
+        System.out.println(ClassLayout.parseClass(User.class).toPrintable());
+        System.out.println(ClassLayout.parseClass(CompactUser.class).toPrintable());
+        System.out.println(GraphLayout.parseInstance(users[0]).toFootprint());
+        System.out.println(GraphLayout.parseInstance(compactUsers[0]).toFootprint());
+        // Every user is a root of its own, so the arrays holding them are not counted.
+        final var userBytes = GraphLayout.parseInstance((Object[]) users).totalSize();
+        final var compactUserBytes = GraphLayout.parseInstance((Object[]) compactUsers).totalSize();
+        System.out.printf("%-12s %10s %16s%n", "encoding", "users", "bytes per user");
+        System.out.printf("%-12s %10d %16.1f%n", "User", count, (double) userBytes / count);
+        System.out.printf("%-12s %10d %16.1f%n", "CompactUser", count, (double) compactUserBytes / count);
+    }
+}
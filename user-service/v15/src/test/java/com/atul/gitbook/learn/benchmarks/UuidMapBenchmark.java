@@ -0,0 +1,127 @@
+package com.atul.gitbook.learn.benchmarks;
+
+import com.atul.gitbook.learn.collections.UuidMap;
+import com.atul.gitbook.learn.users.models.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded get, put and remove latency of {@link UuidMap} against {@link HashMap} and
+ * {@link ConcurrentHashMap}, all keyed by user id. Lookups use ids equal to, but not the same
+ * objects as, the stored keys, as they would be when parsed from a request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UuidMapBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"UuidMap", "HashMap", "ConcurrentHashMap"})
+    public String implementation;
+
+    private MapAdapter fMap;
+    private UUID[] fLookupIds;
+    private User fUser;
+    private int fNext;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fMap = MapAdapter.create(implementation, size);
+        fUser = new User(UUID.randomUUID(), "Mike Selby", "8765436548", "selby@mark.com", false);
+        fLookupIds = new UUID[size];
+        for (var i = 0; i < size; i++) {
+            final var id = UUID.randomUUID();
+            fMap.put(id, fUser);
+            fLookupIds[i] = new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        }
+    }
+
+    @Benchmark
+    public User get() {
+        return fMap.get(nextId());
+    }
+
+    @Benchmark
+    public User put() {
+        return fMap.put(nextId(), fUser);
+    }
+
+    /**
+     * Removes and re-inserts the same id, so the map keeps its size across iterations.
+     */
+    @Benchmark
+    public User removeAndPut() {
+        final var id = nextId();
+        final var user = fMap.remove(id);
+        fMap.put(id, user);
+        return user;
+    }
+
+    private UUID nextId() {
+        // Walk the ids with a large odd stride so consecutive operations hit unrelated slots.
+        fNext = (fNext + 7919) % fLookupIds.length;
+        return fLookupIds[fNext];
+    }
+
+    private interface MapAdapter {
+
+        User get(UUID id);
+
+        User put(UUID id, User user);
+
+        User remove(UUID id);
+
+        static MapAdapter create(String implementation, int size) {
+            switch (implementation) {
+                case "UuidMap":
+                    final var uuidMap = new UuidMap<User>(size);
+                    return new MapAdapter() {
+                        public User get(UUID id) { return uuidMap.get(id); }
+                        public User put(UUID id, User user) { return uuidMap.put(id, user); }
+                        public User remove(UUID id) { return uuidMap.remove(id); }
+                    };
+                case "HashMap":
+                    return wrap(new HashMap<>(size * 2));
+                case "ConcurrentHashMap":
+                    return wrap(new ConcurrentHashMap<>(size * 2));
+                default:
+                    throw new IllegalArgumentException(implementation);
+            }
+        }
+
+        static MapAdapter wrap(Map<UUID, User> map) {
+            return new MapAdapter() {
+                public User get(UUID id) { return map.get(id); }
+                public User put(UUID id, User user) { return map.put(id, user); }
+                public User remove(UUID id) { return map.remove(id); }
+            };
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UuidMapBenchmark.class.getName())
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package com.atul.gitbook.learn.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+class PersistentUuidMapTest {
+
+    @Test
+    void testUpdatesLeaveEarlierVersionsUntouched() {
+        final var key = UUID.randomUUID();
+        final var empty = PersistentUuidMap.<String>empty();
+        final var first = empty.put(key, "a");
+        final var second = first.put(key, "b");
+        final var third = second.remove(key);
+
+        Assertions.assertNull(empty.get(key));
+        Assertions.assertEquals("a", first.get(key));
+        Assertions.assertEquals("b", second.get(key));
+        Assertions.assertNull(third.get(key));
+        Assertions.assertEquals(1, second.size());
+        Assertions.assertTrue(third.isEmpty());
+        Assertions.assertSame(third, third.remove(key));
+    }
+
+    @Test
+    void testRandomOperationsMatchHashMap() {
+        final var random = new Random(7);
+        final var keys = new ArrayList<UUID>();
+        for (var i = 0; i < 3_000; i++) {
+            keys.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        keys.addAll(keysWithEqualHashes(random, 20));
+        var map = PersistentUuidMap.<Integer>empty();
+        final var expected = new HashMap<UUID, Integer>();
+        final var versions = new ArrayList<PersistentUuidMap<Integer>>();
+        final var expectedVersions = new ArrayList<Map<UUID, Integer>>();
+        for (var i = 0; i < 100_000; i++) {
+            final var key = keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                expected.remove(key);
+            } else {
+                map = map.put(key, i);
+                expected.put(key, i);
+            }
+            Assertions.assertEquals(expected.get(key), map.get(key));
+            Assertions.assertEquals(expected.size(), map.size());
+            if (i % 10_000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<>(expected));
+            }
+        }
+        versions.add(map);
+        expectedVersions.add(expected);
+        for (var i = 0; i < versions.size(); i++) {
+            final var actual = new HashMap<UUID, Integer>();
+            versions.get(i).forEach(actual::put);
+            Assertions.assertEquals(expectedVersions.get(i), actual);
+        }
+    }
+
+    /**
+     * @return pairs of distinct keys whose 32-bit hashes are equal, which only collision nodes can hold.
+     */
+    private static ArrayList<UUID> keysWithEqualHashes(Random random, int pairs) {
+        final var byHash = new HashMap<Integer, UUID>();
+        final var keys = new ArrayList<UUID>();
+        while (keys.size() < pairs * 2) {
+            final var key = new UUID(random.nextLong(), random.nextLong());
+            final var other = byHash.put(UuidHashing.hash(key), key);
+            if (other != null) {
+                keys.add(other);
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
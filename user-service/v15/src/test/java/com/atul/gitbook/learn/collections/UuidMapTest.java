@@ -0,0 +1,65 @@
+package com.atul.gitbook.learn.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.UUID;
+
+class UuidMapTest {
+
+    @Test
+    void testPutGetAndRemove() {
+        final var map = new UuidMap<String>();
+        final var key = UUID.randomUUID();
+        Assertions.assertNull(map.put(key, "a"));
+        Assertions.assertEquals("a", map.put(key, "b"));
+        Assertions.assertEquals("b", map.get(key));
+        Assertions.assertEquals(1, map.size());
+        Assertions.assertEquals("b", map.remove(key));
+        Assertions.assertNull(map.get(key));
+        Assertions.assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void testComputeIfPresentRemovesWhenFunctionReturnsNull() {
+        final var map = new UuidMap<String>();
+        final var key = UUID.randomUUID();
+        Assertions.assertNull(map.computeIfPresent(key, (k, v) -> "never"));
+        map.put(key, "a");
+        Assertions.assertEquals("ab", map.computeIfPresent(key, (k, v) -> v + "b"));
+        Assertions.assertNull(map.computeIfPresent(key, (k, v) -> null));
+        Assertions.assertFalse(map.containsKey(key));
+    }
+
+    @Test
+    void testRandomOperationsMatchHashMap() {
+        // Few distinct halves force long probe runs, which exercises the backward-shift deletion.
+        final var random = new Random(42);
+        final var keys = new ArrayList<UUID>();
+        for (var i = 0; i < 2_000; i++) {
+            keys.add(new UUID(random.nextInt(64), random.nextInt(64)));
+        }
+        final var map = new UuidMap<Integer>();
+        final var expected = new HashMap<UUID, Integer>();
+        for (var i = 0; i < 200_000; i++) {
+            final var key = keys.get(random.nextInt(keys.size()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assertions.assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    Assertions.assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    Assertions.assertEquals(expected.get(key), map.get(key));
+            }
+            Assertions.assertEquals(expected.size(), map.size());
+        }
+        final var actual = new HashMap<UUID, Integer>();
+        map.forEach(actual::put);
+        Assertions.assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,40 @@
+package com.atul.gitbook.learn.collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+class UuidOrderTest {
+
+    @Test
+    void testIdsWithTheTopBitSetComeLast() {
+        final var low = UUID.fromString("7fffffff-ffff-ffff-ffff-ffffffffffff");
+        final var high = UUID.fromString("80000000-0000-0000-0000-000000000000");
+        Assertions.assertTrue(UuidOrder.compare(low, high) < 0);
+        Assertions.assertTrue(UuidOrder.compare(UUID.fromString("00000000-0000-0000-7fff-ffffffffffff"),
+                UUID.fromString("00000000-0000-0000-8000-000000000000")) < 0);
+        Assertions.assertEquals(0, UuidOrder.compare(high, UUID.fromString(high.toString())));
+    }
+
+    @Test
+    void testOrderMatchesUnsignedBytes() {
+        for (var i = 0; i < 10_000; i++) {
+            final var a = UUID.randomUUID();
+            final var b = UUID.randomUUID();
+            Assertions.assertEquals(Integer.signum(compareBytes(a, b)), Integer.signum(UuidOrder.compare(a, b)));
+        }
+    }
+
+    private static int compareBytes(UUID a, UUID b) {
+        final var aBytes = ByteBuffer.allocate(16).putLong(a.getMostSignificantBits()).putLong(a.getLeastSignificantBits()).array();
+        final var bBytes = ByteBuffer.allocate(16).putLong(b.getMostSignificantBits()).putLong(b.getLeastSignificantBits()).array();
+        for (var i = 0; i < aBytes.length; i++) {
+            final var compared = Integer.compare(Byte.toUnsignedInt(aBytes[i]), Byte.toUnsignedInt(bBytes[i]));
+            if (compared != 0)
+                return compared;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,61 @@
+package com.atul.gitbook.learn.exports;
+
+import com.atul.gitbook.learn.imports.ImportFormat;
+import com.atul.gitbook.learn.imports.UserRecordReader;
+import com.atul.gitbook.learn.users.models.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.UUID;
+
+class NdjsonUserWriterTest {
+
+    @Test
+    void testLinesReadBackAsTheSameUsers() throws IOException {
+        final var users = new ArrayList<User>();
+        for (var i = 0; i < 100; i++) {
+            users.add(new User(UUID.randomUUID(), "Zoë \"" + i + "\"", String.format("%010d", i), "user" + i + "@mark.com", i % 2 == 0));
+        }
+        final var out = new ByteArrayOutputStream();
+        final var writer = new NdjsonUserWriter(out);
+        users.forEach(writer);
+        writer.flush();
+        Assertions.assertEquals(users.size(), writer.getUsers());
+
+        // The export is in the format the import reads.
+        final var reader = new UserRecordReader(new StringReader(out.toString(StandardCharsets.UTF_8.name())), ImportFormat.NDJSON);
+        for (var user : users) {
+            final var read = reader.next();
+            Assertions.assertEquals(user.getId(), read.getId());
+            Assertions.assertEquals(user.getName(), read.getName());
+            Assertions.assertEquals(user.getPhone(), read.getPhone());
+            Assertions.assertEquals(user.getEmail(), read.getEmail());
+            Assertions.assertEquals(user.isAdministrator(), read.isAdministrator());
+        }
+        Assertions.assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void testWriteFailureIsUnchecked() {
+        final var writer = new NdjsonUserWriter(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        });
+        final var user = new User(UUID.randomUUID(), "Mike Selby", "8765436548", "selby@mark.com", false);
+        // The buffer only writes through once it is full.
+        Assertions.assertThrows(UncheckedIOException.class, () -> {
+            for (var i = 0; i < 10_000; i++) {
+                writer.accept(user);
+            }
+        });
+    }
+}
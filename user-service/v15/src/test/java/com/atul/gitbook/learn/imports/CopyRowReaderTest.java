@@ -0,0 +1,51 @@
+package com.atul.gitbook.learn.imports;
+
+import com.atul.gitbook.learn.users.models.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+class CopyRowReaderTest {
+
+    private static String readAll(CopyRowReader reader, int bufferSize) {
+        final var rows = new StringBuilder();
+        final var buffer = new char[bufferSize];
+        int read;
+        while ((read = reader.read(buffer, 0, buffer.length)) != -1) {
+            rows.append(buffer, 0, read);
+        }
+        return rows.toString();
+    }
+
+    @Test
+    void testRowsAreQuotedCsv() {
+        final var id = UUID.randomUUID();
+        final var reader = new CopyRowReader(List.of(new User(id, "Selby, \"Mike\"", "8765436548", "selby@mark.com", true)).iterator());
+        Assertions.assertEquals(id + ",\"Selby, \"\"Mike\"\"\",8765436548,\"selby@mark.com\",true\n", readAll(reader, 8192));
+        Assertions.assertEquals(1, reader.getRows());
+    }
+
+    @Test
+    void testRowsReadBackAsTheSameUsers() {
+        final var users = new ArrayList<User>();
+        for (var i = 0; i < 100; i++) {
+            users.add(new User(UUID.randomUUID(), "User, " + i, String.format("%010d", i), "user" + i + "@mark.com", i % 2 == 0));
+        }
+        // A buffer smaller than a row makes the rows span reads.
+        final var rows = readAll(new CopyRowReader(users.iterator()), 7);
+        final var reader = new UserRecordReader(new StringReader("id,name,phone,email,administrator\n" + rows), ImportFormat.CSV);
+        for (var user : users) {
+            final var read = reader.next();
+            Assertions.assertEquals(user.getId(), read.getId());
+            Assertions.assertEquals(user.getName(), read.getName());
+            Assertions.assertEquals(user.getPhone(), read.getPhone());
+            Assertions.assertEquals(user.getEmail(), read.getEmail());
+            Assertions.assertEquals(user.isAdministrator(), read.isAdministrator());
+        }
+        Assertions.assertFalse(reader.hasNext());
+    }
+}
@@ -0,0 +1,131 @@
+package com.atul.gitbook.learn.imports;
+
+import com.atul.gitbook.learn.users.models.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+class UserRecordReaderTest {
+
+    private static List<User> readAll(UserRecordReader reader) {
+        final var users = new ArrayList<User>();
+        reader.forEachRemaining(users::add);
+        return users;
+    }
+
+    @Test
+    void testReadNdjson() {
+        final var id = UUID.randomUUID();
+        final var reader = new UserRecordReader(new StringReader(
+                "{\"id\":\"" + id + "\",\"name\":\"Mike Selby\",\"phone\":\"8765436548\",\"email\":\"selby@mark.com\",\"administrator\":true}\n"
+                        + "\n"
+                        + "{\"name\":\"Julie\",\"phone\":\"7897897280\",\"email\":\"abc@de.com\"}\n"), ImportFormat.NDJSON);
+        final var users = readAll(reader);
+        Assertions.assertEquals(2, users.size());
+        Assertions.assertEquals(id, users.get(0).getId());
+        Assertions.assertTrue(users.get(0).isAdministrator());
+        Assertions.assertEquals("Julie", users.get(1).getName());
+        Assertions.assertFalse(users.get(1).isAdministrator());
+        Assertions.assertEquals(2, reader.getRowsRead());
+        Assertions.assertEquals(0, reader.getRowsRejected());
+    }
+
+    @ParameterizedTest
+    @MethodSource("streamForRejectedNdjsonLine")
+    void testRejectedNdjsonLine(String line) {
+        final var reader = new UserRecordReader(new StringReader(
+                "{\"name\":\"Julie\",\"phone\":\"7897897280\",\"email\":\"abc@de.com\"}\n" + line + "\n"), ImportFormat.NDJSON);
+        Assertions.assertEquals(1, readAll(reader).size());
+        Assertions.assertEquals(2, reader.getRowsRead());
+        Assertions.assertEquals(1, reader.getRowsRejected());
+        Assertions.assertEquals(List.of(2L), reader.getRejectedLines());
+    }
+
+    private static Stream<Arguments> streamForRejectedNdjsonLine() {
+        return Stream.of(
+                Arguments.of("{\"name\":\"Julie\",\"phone\":\"78978297a4\",\"email\":\"abc@de.com\"}"),
+                Arguments.of("{\"name\":\"Julie\",\"phone\":\"7897897280\",\"email\":\"abc@\"}"),
+                Arguments.of("{\"phone\":\"7897897280\",\"email\":\"abc@de.com\"}"),
+                Arguments.of("{\"name\":\"Julie\",\"phone\":7897897280,\"email\":\"abc@de.com\"}"),
+                Arguments.of("{\"name\":\"Julie\",\"phone\":\"7897897280\",\"email\":\"abc@de.com\",\"administrator\":\"yes\"}"),
+                Arguments.of("{\"id\":\"not-a-uuid\",\"name\":\"Julie\",\"phone\":\"7897897280\",\"email\":\"abc@de.com\"}"),
+                Arguments.of("{\"name\":\"" + String.join("", Collections.nCopies(UserRecordReader.MAX_NAME_LENGTH + 1, "J")) + "\",\"phone\":\"7897897280\",\"email\":\"abc@de.com\"}"),
+                Arguments.of("{\"name\":\"Julie\""),
+                Arguments.of("[]")
+        );
+    }
+
+    @Test
+    void testReadCsv() {
+        final var reader = new UserRecordReader(new StringReader(
+                "email,name,phone,administrator\r\n"
+                        + "abc@de.com,\"Selby, \"\"Mike\"\"\",8765436548,true\r\n"
+                        + "abc@de.com,Julie,7897897280,\r\n"), ImportFormat.CSV);
+        final var users = readAll(reader);
+        Assertions.assertEquals(2, users.size());
+        Assertions.assertEquals("Selby, \"Mike\"", users.get(0).getName());
+        Assertions.assertTrue(users.get(0).isAdministrator());
+        Assertions.assertEquals("Julie", users.get(1).getName());
+        Assertions.assertFalse(users.get(1).isAdministrator());
+        Assertions.assertEquals(0, reader.getRowsRejected());
+    }
+
+    @Test
+    void testRejectedCsvLines() {
+        final var reader = new UserRecordReader(new StringReader(
+                "name,phone,email\n"
+                        + "Julie,7897897280\n"
+                        + "\"Julie,7897897280,abc@de.com\n"
+                        + "Julie,789789728,abc@de.com\n"
+                        + "Julie,7897897280,abc@de.com\n"), ImportFormat.CSV);
+        Assertions.assertEquals(1, readAll(reader).size());
+        Assertions.assertEquals(4, reader.getRowsRead());
+        Assertions.assertEquals(3, reader.getRowsRejected());
+        Assertions.assertEquals(List.of(2L, 3L, 4L), reader.getRejectedLines());
+    }
+
+    @ParameterizedTest
+    @MethodSource("streamForInvalidCsvHeader")
+    void testInvalidCsvHeader(String header) {
+        final var reader = new UserRecordReader(new StringReader(header + "\nJulie,7897897280,abc@de.com\n"), ImportFormat.CSV);
+        Assertions.assertThrows(IllegalArgumentException.class, reader::hasNext);
+    }
+
+    private static Stream<Arguments> streamForInvalidCsvHeader() {
+        return Stream.of(
+                Arguments.of("name,phone"),
+                Arguments.of("name,phone,email,age"),
+                Arguments.of("name,phone,email,name")
+        );
+    }
+
+    @Test
+    void testRejectedLinesKeptAreBounded() {
+        final var lines = new StringBuilder();
+        for (var i = 0; i < 1_000; i++) {
+            lines.append("{}\n");
+        }
+        final Reader input = new StringReader(lines.toString());
+        final var reader = new UserRecordReader(input, ImportFormat.NDJSON);
+        Assertions.assertFalse(reader.hasNext());
+        Assertions.assertEquals(1_000, reader.getRowsRejected());
+        Assertions.assertEquals(UserRecordReader.MAX_REJECTED_LINES_KEPT, reader.getRejectedLines().size());
+    }
+
+    @Test
+    void testFromContentType() {
+        Assertions.assertEquals(ImportFormat.CSV, ImportFormat.fromContentType("text/csv;charset=UTF-8"));
+        Assertions.assertEquals(ImportFormat.NDJSON, ImportFormat.fromContentType("application/x-ndjson"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ImportFormat.fromContentType("application/json"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.atul.gitbook.learn.offheap;
+
+import com.atul.gitbook.learn.users.models.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+class UserSlabStoreTest {
+
+    private static final int SLAB_SIZE = 4096;
+
+    @Test
+    void testPutAndGetUser() {
+        final var store = new UserSlabStore(SLAB_SIZE);
+        final var expected = new User(UUID.randomUUID(), "Zoë Saldaña", "8765436548", "zoe@mark.com", true, 42);
+        store.put(expected);
+        final var actual = store.get(expected.getId());
+        Assertions.assertEquals(expected.getId(), actual.getId());
+        Assertions.assertEquals(expected.getName(), actual.getName());
+        Assertions.assertEquals(expected.getPhone(), actual.getPhone());
+        Assertions.assertEquals(expected.getEmail(), actual.getEmail());
+        Assertions.assertTrue(actual.isAdministrator());
+        Assertions.assertEquals(42, actual.getVersion());
+    }
+
+    @Test
+    void testGetUserWhenUserIsNotPresent() {
+        final var store = new UserSlabStore(SLAB_SIZE);
+        Assertions.assertNull(store.get(UUID.randomUUID()));
+        Assertions.assertFalse(store.remove(UUID.randomUUID()));
+    }
+
+    @Test
+    void testReplaceUserWithLargerRecord() {
+        final var store = new UserSlabStore(SLAB_SIZE);
+        final var user = new User(UUID.randomUUID(), "Mike", "8765436548", "mike@mark.com", false);
+        store.put(user);
+        final var longName = "Mike Selby of a rather long and distinguished family name line";
+        store.replace(user.getId(), current -> new User(current.getId(), longName, current.getPhone(), current.getEmail(), false));
+        Assertions.assertEquals(longName, store.get(user.getId()).getName());
+        Assertions.assertEquals(1, store.size());
+    }
+
+    @Test
+    void testDeletedSlotsAreReused() {
+        final var store = new UserSlabStore(SLAB_SIZE);
+        for (var round = 0; round < 100; round++) {
+            final var ids = new UUID[32];
+            for (var i = 0; i < ids.length; i++) {
+                ids[i] = UUID.randomUUID();
+                store.put(new User(ids[i], "Mike Selby", "8765436548", "selby@mark.com", false));
+            }
+            for (var id : ids) {
+                Assertions.assertTrue(store.remove(id));
+            }
+        }
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertEquals(SLAB_SIZE, store.getOffHeapBytes());
+    }
+
+    @Test
+    void testForEachVisitsEveryUser() {
+        final var store = new UserSlabStore(SLAB_SIZE);
+        final var ids = new HashSet<UUID>();
+        for (var i = 0; i < 200; i++) {
+            final var user = new User(UUID.randomUUID(), "User " + i, "8765436548", "selby@mark.com", false);
+            store.put(user);
+            ids.add(user.getId());
+        }
+        final var removed = ids.iterator().next();
+        store.remove(removed);
+        ids.remove(removed);
+        final var visited = new HashSet<UUID>();
+        store.forEach(user -> visited.add(user.getId()));
+        Assertions.assertEquals(ids, visited);
+    }
+}
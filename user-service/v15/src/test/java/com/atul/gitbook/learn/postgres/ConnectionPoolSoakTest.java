@@ -0,0 +1,101 @@
+package com.atul.gitbook.learn.postgres;
+
+import com.atul.gitbook.learn.TestBase;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs 100,000 writes against the database and checks that every connection goes back to the
+ * pool: with fewer writing threads than pooled connections, no thread ever waits for a connection
+ * ({@code hikaricp.connections.pending} stays 0), the total connection count stays flat and no
+ * connection is left active once the writes are done. A leaked connection would instead leave
+ * threads waiting for the pool, and the writes would start to fail once the connection timeout
+ * passes.
+ */
+class ConnectionPoolSoakTest extends TestBase {
+
+    private static final int WRITES = 100_000;
+    private static final int THREADS = 8;
+
+    @Autowired
+    private IUserRepository fUserRepository;
+
+    @Autowired
+    private MeterRegistry fMeterRegistry;
+
+    @Autowired
+    private PoolConfig fPoolConfig;
+
+    @Test
+    void testWritesKeepAFlatConnectionCount() throws Exception {
+        Assertions.assertTrue(THREADS < fPoolConfig.getMinimumIdle(), "With a connection for every thread, none should wait for one.");
+        final IntSupplier pending = () -> (int) fMeterRegistry.get("hikaricp.connections.pending").gauge().value();
+        final IntSupplier total = () -> (int) fMeterRegistry.get("hikaricp.connections").gauge().value();
+        // The pool fills up to its minimum idle in the background after startup.
+        final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (total.getAsInt() < fPoolConfig.getMinimumIdle() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        final var startConnections = total.getAsInt();
+        final var maxPending = new AtomicInteger();
+        final var minConnections = new AtomicInteger(startConnections);
+        final var maxConnections = new AtomicInteger(startConnections);
+        final var writing = new AtomicBoolean(true);
+        final var sampler = new Thread(() -> {
+            while (writing.get()) {
+                maxPending.accumulateAndGet(pending.getAsInt(), Math::max);
+                minConnections.accumulateAndGet(total.getAsInt(), Math::min);
+                maxConnections.accumulateAndGet(total.getAsInt(), Math::max);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final var tasks = new ArrayList<Callable<Void>>();
+            for (var i = 0; i < THREADS; i++) {
+                tasks.add(() -> {
+                    // Each round is three writes: a create, an update and a delete.
+                    for (var j = 0; j < WRITES / THREADS / 3 + 1; j++) {
+                        final var user = fUserRepository.createUser(new UserDto("Mike Selby", "8765436548", "selby@mark.com"));
+                        fUserRepository.updateUser(user.getId(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+                        fUserRepository.deleteUser(user.getId());
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            writing.set(false);
+            sampler.join();
+        }
+
+        Assertions.assertEquals(0, maxPending.get(), "A thread waited for a connection.");
+        Assertions.assertEquals(startConnections, minConnections.get(), "The connection count dropped.");
+        Assertions.assertEquals(startConnections, maxConnections.get(), "The connection count grew.");
+        Assertions.assertEquals(0, (int) fMeterRegistry.get("hikaricp.connections.active").gauge().value());
+    }
+}
@@ -0,0 +1,119 @@
+package com.atul.gitbook.learn.postgres;
+
+import com.atul.gitbook.learn.DataSourceConfig;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.RowMapper;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Exports the users of a Postgres container through {@link PostgresRepository#forEachUser}, which
+ * reads them through a cursor, and checks the heap stays bounded whatever the number of users.
+ * Requires Docker.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PostgresExportTest {
+
+    private static final int USER_COUNT = 500_000;
+    private static final int SAMPLE_EVERY = 50_000;
+    // A List<User> of the exported users would take several times this.
+    private static final long MAX_HEAP_GROWTH = 32 * 1024 * 1024;
+    private static final RowMapper<User> USER_ROW_MAPPER = (rs, rowCount) -> new User(rs.getObject("id", UUID.class),
+            rs.getString("name"), rs.getString("phone"), rs.getString("email"), rs.getBoolean("administrator"),
+            rs.getLong("version"));
+
+    private PostgreSQLContainer<?> fContainer;
+    private HikariDataSource fDataSource;
+    private PostgresRepository fRepository;
+
+    @BeforeAll
+    void setUp() {
+        fContainer = new PostgreSQLContainer<>("postgres:13.1");
+        fContainer.start();
+        fDataSource = new HikariDataSource();
+        fDataSource.setJdbcUrl(fContainer.getJdbcUrl() + "&stringtype=unspecified");
+        fDataSource.setUsername(fContainer.getUsername());
+        fDataSource.setPassword(fContainer.getPassword());
+        Flyway.configure().dataSource(fDataSource).locations("db/migration")
+                .placeholders(Map.of(DataSourceConfig.USERS_PARTITION_COUNT, "4")).load().migrate();
+        fRepository = new PostgresRepository(new RepositoryJdbcDaoSupport(fDataSource, RepoConfig.builder().build()),
+                USER_ROW_MAPPER, false);
+        Assertions.assertEquals(USER_COUNT, fRepository.importUsers(new GeneratedUsers(USER_COUNT)));
+    }
+
+    @AfterAll
+    void tearDown() {
+        fDataSource.close();
+        fContainer.stop();
+    }
+
+    @Test
+    void testExportHeapStaysBoundedWhateverTheNumberOfUsers() {
+        final var baseline = usedHeapAfterGc();
+        final var exported = new long[1];
+        final var maxUsedHeap = new long[1];
+
+        fRepository.forEachUser(user -> {
+            if (++exported[0] % SAMPLE_EVERY == 0)
+                maxUsedHeap[0] = Math.max(maxUsedHeap[0], usedHeapAfterGc());
+        });
+
+        // The imported users and the default administrator and user.
+        Assertions.assertEquals(USER_COUNT + 2, exported[0]);
+        final var growth = maxUsedHeap[0] - baseline;
+        Assertions.assertTrue(growth < MAX_HEAP_GROWTH, "Heap grew by " + growth + " bytes during the export.");
+    }
+
+    @Test
+    void testExportHasEveryUserOnce() {
+        final var ids = new HashSet<UUID>();
+        fRepository.forEachUser(user -> Assertions.assertTrue(ids.add(user.getId()), "Exported twice: " + user.getId()));
+        Assertions.assertEquals(USER_COUNT + 2, ids.size());
+        Assertions.assertTrue(ids.contains(new UUID(0, USER_COUNT - 1)));
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        final var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Makes up the users as they are iterated over, so the import doesn't hold them all either.
+     */
+    private static final class GeneratedUsers implements Iterator<User> {
+
+        private final int fUserCount;
+        private int fNext;
+
+        private GeneratedUsers(int userCount) {
+            fUserCount = userCount;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return fNext < fUserCount;
+        }
+
+        @Override
+        public User next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            final var i = fNext++;
+            return new User(new UUID(0, i), "User " + i, "8765436548", "user" + i + "@mark.com", false);
+        }
+    }
+}
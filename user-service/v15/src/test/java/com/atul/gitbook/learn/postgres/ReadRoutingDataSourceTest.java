@@ -0,0 +1,166 @@
+package com.atul.gitbook.learn.postgres;
+
+import com.atul.gitbook.learn.DataSourceConfig;
+import com.atul.gitbook.learn.jackson.Serializer;
+import com.atul.gitbook.learn.jackson.Serializers;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.impl.PostgresRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.RowMapper;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Routes reads between two independent Postgres containers, standing in for a primary and its
+ * replica. Since nothing replicates between them, a user created on one is found only there,
+ * which tells where each read went. Requires Docker.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReadRoutingDataSourceTest {
+
+    private static final RepoConfig REPO_CONFIG = RepoConfig.builder().build();
+    private static final RowMapper<User> USER_ROW_MAPPER = (rs, rowCount) -> new User(rs.getObject("id", UUID.class),
+            rs.getString("name"), rs.getString("phone"), rs.getString("email"), rs.getBoolean("administrator"),
+            rs.getLong("version"));
+    private static final Serializer<UserDto> USER_DTO_SERIALIZER = Serializers.newJsonSerializer(UserDto.class);
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+
+    private PostgreSQLContainer<?> fPrimaryContainer;
+    private PostgreSQLContainer<?> fReplicaContainer;
+
+    @BeforeAll
+    void setUp() {
+        fPrimaryContainer = new PostgreSQLContainer<>("postgres:13.1");
+        fReplicaContainer = new PostgreSQLContainer<>("postgres:13.1");
+        fPrimaryContainer.start();
+        fReplicaContainer.start();
+        for (var container : List.of(fPrimaryContainer, fReplicaContainer)) {
+            try (var dataSource = newDataSource(container)) {
+                Flyway.configure().dataSource(dataSource).locations("db/migration")
+                        .placeholders(Map.of(DataSourceConfig.USERS_PARTITION_COUNT, "4")).load().migrate();
+            }
+        }
+    }
+
+    @AfterAll
+    void tearDown() {
+        fPrimaryContainer.stop();
+        fReplicaContainer.stop();
+    }
+
+    @Test
+    void testReadsGoToTheReplica() throws Exception {
+        try (var routing = newRoutingDataSource(newDataSource(fReplicaContainer), 0);
+             var replica = newDataSource(fReplicaContainer)) {
+            final var id = UUID.randomUUID().toString();
+            new RepositoryJdbcDaoSupport(replica, REPO_CONFIG).create(id, USER_DTO, USER_DTO_SERIALIZER, USER_ROW_MAPPER);
+            Assertions.assertEquals(USER_DTO.getName(), new RepositoryJdbcDaoSupport(routing, REPO_CONFIG).get(id, USER_ROW_MAPPER).getName());
+        }
+    }
+
+    @Test
+    void testWritesGoToThePrimary() throws Exception {
+        try (var routing = newRoutingDataSource(newDataSource(fReplicaContainer), 0);
+             var primary = newDataSource(fPrimaryContainer)) {
+            final var id = UUID.randomUUID().toString();
+            final var jdbcDaoSupport = new RepositoryJdbcDaoSupport(routing, REPO_CONFIG);
+            jdbcDaoSupport.create(id, USER_DTO, USER_DTO_SERIALIZER, USER_ROW_MAPPER);
+            Assertions.assertEquals(USER_DTO.getName(), new RepositoryJdbcDaoSupport(primary, REPO_CONFIG).get(id, USER_ROW_MAPPER).getName());
+            // Without a read-your-writes window the read goes to the replica, which hasn't got the user.
+            Assertions.assertThrows(NoSuchElementException.class, () -> jdbcDaoSupport.get(id, USER_ROW_MAPPER));
+        }
+    }
+
+    @Test
+    void testReadsOfRecentWritesGoToThePrimary() throws Exception {
+        try (var routing = newRoutingDataSource(newDataSource(fReplicaContainer), 60_000)) {
+            final var id = UUID.randomUUID().toString();
+            final var jdbcDaoSupport = new RepositoryJdbcDaoSupport(routing, REPO_CONFIG);
+            jdbcDaoSupport.create(id, USER_DTO, USER_DTO_SERIALIZER, USER_ROW_MAPPER);
+            Assertions.assertEquals(USER_DTO.getName(), jdbcDaoSupport.get(id, USER_ROW_MAPPER).getName());
+        }
+    }
+
+    @Test
+    void testReadsOfBatchCreatesGoToThePrimary() throws Exception {
+        try (var routing = newRoutingDataSource(newDataSource(fReplicaContainer), 60_000)) {
+            final var repository = new PostgresRepository(new RepositoryJdbcDaoSupport(routing, REPO_CONFIG), USER_ROW_MAPPER, true);
+            final var created = repository.createUsers(List.of(USER_DTO, USER_DTO));
+            for (var user : created) {
+                Assertions.assertEquals(USER_DTO.getName(), repository.getUser(user.getId()).getName());
+            }
+        }
+    }
+
+    @Test
+    void testReadsOfImportsGoToThePrimary() throws Exception {
+        try (var routing = newRoutingDataSource(newDataSource(fReplicaContainer), 60_000)) {
+            final var repository = new PostgresRepository(new RepositoryJdbcDaoSupport(routing, REPO_CONFIG), USER_ROW_MAPPER, true);
+            final var user = new User(UUID.randomUUID(), USER_DTO.getName(), USER_DTO.getPhone(), USER_DTO.getEmail(), false);
+            Assertions.assertEquals(1, repository.importUsers(List.of(user).iterator()));
+            Assertions.assertEquals(USER_DTO.getName(), repository.getUser(user.getId()).getName());
+        }
+    }
+
+    @Test
+    void testStaleConditionalUpdateIsCheckedAgainstThePrimary() throws Exception {
+        try (var routing = newRoutingDataSource(newDataSource(fReplicaContainer), 0);
+             var primary = newDataSource(fPrimaryContainer);
+             var replica = newDataSource(fReplicaContainer)) {
+            final var id = UUID.randomUUID();
+            new RepositoryJdbcDaoSupport(primary, REPO_CONFIG).create(id.toString(), USER_DTO, USER_DTO_SERIALIZER, USER_ROW_MAPPER);
+            new RepositoryJdbcDaoSupport(replica, REPO_CONFIG).create(id.toString(), USER_DTO, USER_DTO_SERIALIZER, USER_ROW_MAPPER);
+            final var update = new UpdateUserDto(USER_DTO.getName(), USER_DTO.getPhone(), "other@mark.com");
+            new PostgresRepository(new RepositoryJdbcDaoSupport(primary, REPO_CONFIG), USER_ROW_MAPPER, true).updateUser(id, update);
+            // The replica still has the user at the first version, which the update expects.
+            final var repository = new PostgresRepository(new RepositoryJdbcDaoSupport(routing, REPO_CONFIG), USER_ROW_MAPPER, true);
+            Assertions.assertThrows(ConcurrentModificationException.class,
+                    () -> repository.updateUser(id, User.INITIAL_VERSION, update));
+        }
+    }
+
+    @Test
+    void testReadsGoToThePrimaryWhenTheReplicaIsDown() throws Exception {
+        final var replica = newDataSource(fReplicaContainer);
+        try (var routing = newRoutingDataSource(replica, 0);
+             var primary = newDataSource(fPrimaryContainer)) {
+            final var id = UUID.randomUUID().toString();
+            new RepositoryJdbcDaoSupport(primary, REPO_CONFIG).create(id, USER_DTO, USER_DTO_SERIALIZER, USER_ROW_MAPPER);
+            replica.close();
+
+            // The first read fails on the replica and is retried on the primary.
+            final var jdbcDaoSupport = new RepositoryJdbcDaoSupport(routing, REPO_CONFIG);
+            Assertions.assertEquals(USER_DTO.getName(), jdbcDaoSupport.get(id, USER_ROW_MAPPER).getName());
+            Assertions.assertEquals(0, routing.getHealthyReplicaCount());
+            routing.checkHealth();
+            Assertions.assertEquals(0, routing.getHealthyReplicaCount());
+            Assertions.assertEquals(USER_DTO.getName(), jdbcDaoSupport.get(id, USER_ROW_MAPPER).getName());
+        }
+    }
+
+    private ReadRoutingDataSource newRoutingDataSource(HikariDataSource replica, long readYourWritesMillis) {
+        return new ReadRoutingDataSource(newDataSource(fPrimaryContainer), List.of(replica),
+                new ReplicaConfig(List.of("replica:5432"), 60_000, readYourWritesMillis));
+    }
+
+    private static HikariDataSource newDataSource(PostgreSQLContainer<?> container) {
+        final var dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(container.getJdbcUrl() + "&stringtype=unspecified");
+        dataSource.setUsername(container.getUsername());
+        dataSource.setPassword(container.getPassword());
+        return dataSource;
+    }
+}
@@ -0,0 +1,55 @@
+package com.atul.gitbook.learn.postgres;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+class RecentWritesTest {
+
+    private static final long MILLIS = 1_000_000;
+
+    @Test
+    void testKeysExpireAfterTheWindow() {
+        final var clock = new AtomicLong();
+        final var recentWrites = new RecentWrites(100, clock::get);
+        recentWrites.add("a");
+        clock.addAndGet(99 * MILLIS);
+        Assertions.assertTrue(recentWrites.contains("a"));
+        Assertions.assertFalse(recentWrites.contains("b"));
+        clock.addAndGet(MILLIS);
+        Assertions.assertFalse(recentWrites.contains("a"));
+        Assertions.assertEquals(0, recentWrites.size());
+    }
+
+    @Test
+    void testWritingAgainExtendsTheWindow() {
+        final var clock = new AtomicLong();
+        final var recentWrites = new RecentWrites(100, clock::get);
+        recentWrites.add("a");
+        clock.addAndGet(50 * MILLIS);
+        recentWrites.add("a");
+        clock.addAndGet(99 * MILLIS);
+        Assertions.assertTrue(recentWrites.contains("a"));
+    }
+
+    @Test
+    void testZeroWindowRemembersNothing() {
+        final var recentWrites = new RecentWrites(0, System::nanoTime);
+        recentWrites.add("a");
+        Assertions.assertFalse(recentWrites.contains("a"));
+        Assertions.assertEquals(0, recentWrites.size());
+    }
+
+    @Test
+    void testExpiredKeysAreSweptAsKeysAreAdded() {
+        final var clock = new AtomicLong();
+        final var recentWrites = new RecentWrites(1, clock::get);
+        for (var i = 0; i < 100_000; i++) {
+            recentWrites.add(i);
+            clock.addAndGet(MILLIS);
+        }
+        // Every key but the last has expired, and the sweeps keep the expired ones from piling up.
+        Assertions.assertTrue(recentWrites.size() < 2_048, "size " + recentWrites.size());
+    }
+}
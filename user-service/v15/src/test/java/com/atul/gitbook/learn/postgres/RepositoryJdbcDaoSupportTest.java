@@ -0,0 +1,37 @@
+package com.atul.gitbook.learn.postgres;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+class RepositoryJdbcDaoSupportTest {
+
+    @ParameterizedTest
+    @MethodSource("streamForInvalidStoredProcedures")
+    void testInvalidStoredProceduresAreRejectedAtConstruction(RepoConfig repoConfig) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RepositoryJdbcDaoSupport(null, repoConfig));
+    }
+
+    private static Stream<Arguments> streamForInvalidStoredProcedures() {
+        return Stream.of(
+                Arguments.of(RepoConfig.builder().createSproc("fn_user_create; DROP TABLE users").build()),
+                Arguments.of(RepoConfig.builder().getSproc("1fn_user_by_id").build()),
+                Arguments.of(RepoConfig.builder().updateSproc("fn_user_update(?)").build()),
+                Arguments.of(RepoConfig.builder().deleteSproc(null).build()),
+                Arguments.of(RepoConfig.builder().createAllSproc("fn users create").build()),
+                Arguments.of(RepoConfig.builder().createTypedSproc("").build()),
+                Arguments.of(RepoConfig.builder().updateTypedSproc("fn_user_update_typed()").build()),
+                Arguments.of(RepoConfig.builder().getAllSproc("fn_users_by_ids[]").build()),
+                Arguments.of(RepoConfig.builder().pageSproc("fn users page").build()),
+                Arguments.of(RepoConfig.builder().exportSproc("fn_users_export;").build()),
+                Arguments.of(RepoConfig.builder().updateIfVersionSproc("fn_user_update_if_version --").build()),
+                Arguments.of(RepoConfig.builder().updateToVersionSproc("fn_user_update_to_version()").build()),
+                Arguments.of(RepoConfig.builder().getByEmailSproc("fn_users_by_email(?)").build()),
+                Arguments.of(RepoConfig.builder().getByPhoneSproc(null).build()),
+                Arguments.of(RepoConfig.builder().searchSproc("fn_users_search % 'x'").build())
+        );
+    }
+}
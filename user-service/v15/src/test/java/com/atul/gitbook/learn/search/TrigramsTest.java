@@ -0,0 +1,56 @@
+package com.atul.gitbook.learn.search;
+
+import com.atul.gitbook.learn.users.models.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+class TrigramsTest {
+
+    @Test
+    void testTrigramsArePaddedPerWordAndLowerCased() {
+        Assertions.assertEquals(Set.of("  s", " se", "sel", "el "), Trigrams.of("Sel"));
+        Assertions.assertEquals(Set.of("  a", " ab", "ab ", "  c", " cd", "cd "), Trigrams.of("Ab, cd!"));
+        Assertions.assertTrue(Trigrams.of(" -. ").isEmpty());
+    }
+
+    @Test
+    void testRequiredMatchesRoundUp() {
+        Assertions.assertEquals(0, Trigrams.requiredMatches(0));
+        Assertions.assertEquals(1, Trigrams.requiredMatches(1));
+        Assertions.assertEquals(3, Trigrams.requiredMatches(5));
+        Assertions.assertEquals(4, Trigrams.requiredMatches(6));
+    }
+
+    @Test
+    void testMatchesTrigramsSpreadApartUnlikeTheDatabase() {
+        // All 8 of the query's trigrams are in the name, but word_similarity is 0.5 at best: the
+        // extent of "ann" has 4 of them, and any extent reaching "doe" also has Marie-Louise's.
+        final var query = Trigrams.of("ann doe");
+        final var name = Trigrams.of("Ann Marie-Louise Doe");
+        Assertions.assertEquals(8, query.size());
+        Assertions.assertEquals(8, Trigrams.countMatches(query, name));
+        Assertions.assertTrue(Trigrams.countMatches(query, name) >= Trigrams.requiredMatches(query.size()));
+    }
+
+    @Test
+    void testNameSearchRanksTheBestMatchesFirst() {
+        final var selby = new User(UUID.randomUUID(), "Mike Selby", "8765436548", "selby@mark.com", false);
+        final var selbourne = new User(UUID.randomUUID(), "Anna Selbourne", "8765436548", "anna@mark.com", false);
+        final var doe = new User(UUID.randomUUID(), "John Doe", "8765436548", "john@mark.com", false);
+        final var search = new NameSearch("selby", 10);
+        for (var user : List.of(doe, selbourne, selby)) {
+            search.offer(user);
+        }
+        Assertions.assertEquals(List.of(selby, selbourne), search.getUsers());
+
+        final var limited = new NameSearch("selby", 1);
+        for (var user : List.of(selbourne, doe, selby)) {
+            limited.offer(user);
+        }
+        Assertions.assertEquals(List.of(selby), limited.getUsers());
+    }
+}
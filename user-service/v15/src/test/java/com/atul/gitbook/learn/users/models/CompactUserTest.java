@@ -0,0 +1,45 @@
+package com.atul.gitbook.learn.users.models;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.UUID;
+import java.util.stream.Stream;
+
+class CompactUserTest {
+
+    @ParameterizedTest
+    @MethodSource("streamForRoundTrip")
+    void testRoundTrip(String name, String phone, String email, boolean administrator) {
+        final var user = new User(UUID.randomUUID(), name, phone, email, administrator, 3);
+        final var compactUser = CompactUser.from(user);
+        final var decoded = compactUser.toUser();
+        Assertions.assertEquals(user.getId(), decoded.getId());
+        Assertions.assertEquals(name, decoded.getName());
+        Assertions.assertEquals(phone, decoded.getPhone());
+        Assertions.assertEquals(email, decoded.getEmail());
+        Assertions.assertEquals(administrator, decoded.isAdministrator());
+        Assertions.assertEquals(3, decoded.getVersion());
+        Assertions.assertEquals(email, compactUser.getEmail());
+    }
+
+    private static Stream<Arguments> streamForRoundTrip() {
+        return Stream.of(
+                Arguments.of("Julie", "7897897280", "abc@de.com", false),
+                Arguments.of("José Müller", "0000000001", "jose.m-1@mail.org", true),
+                Arguments.of("Дмитрий 王", "0123456789", "dm@mail.org", false),
+                Arguments.of("", "9999999999", "x@yz€com", false)
+        );
+    }
+
+    @Test
+    void testUsersOfTheSameDomainKeepTheirOwnEmail() {
+        final var first = CompactUser.from(new User(UUID.randomUUID(), "Julie", "7897897280", "julie@mark.com", false));
+        final var second = CompactUser.from(new User(UUID.randomUUID(), "Mike", "7897897281", "mike@mark.com", false));
+        Assertions.assertEquals("julie@mark.com", first.getEmail());
+        Assertions.assertEquals("mike@mark.com", second.getEmail());
+    }
+}
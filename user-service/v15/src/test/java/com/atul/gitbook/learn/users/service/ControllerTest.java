@@ -1,22 +1,37 @@
 package com.atul.gitbook.learn.users.service;
 
 import com.atul.gitbook.learn.TestBase;
+import com.atul.gitbook.learn.collections.UuidOrder;
+import com.atul.gitbook.learn.jackson.Serializer;
+import com.atul.gitbook.learn.jackson.Serializers;
+import com.atul.gitbook.learn.users.models.ImportReport;
 import com.atul.gitbook.learn.users.models.UpdateUserDto;
 import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.models.UserPage;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 class ControllerTest extends TestBase {
 
+    private static final Serializer<ImportReport> IMPORT_REPORT_SERIALIZER = Serializers.newJsonSerializer(ImportReport.class);
+    private static final Serializer<UserPage> USER_PAGE_SERIALIZER = Serializers.newJsonSerializer(UserPage.class);
+
     @Autowired
     private IUserRepository fUserRepository;
 
@@ -60,6 +75,83 @@ class ControllerTest extends TestBase {
         Assertions.assertEquals(expected.getEmail(), actual.getEmail());
     }
 
+    @Test
+    void testCreateUsersWhenRequesterExistsButIsNotAdministrator() throws Exception {
+        fMockMvc.perform(createUsersRequest(fUserRepository.getDefaultUser().getId(), Collections.singletonList(new UserDto("Mike Selby", "8765436548", "selby@mark.com"))))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testCreateUsersWhenRequesterIsAdministrator() throws Exception {
+        final var expected = new ArrayList<UserDto>();
+        for (var i = 0; i < 250; i++) {
+            expected.add(new UserDto("Mike Selby " + i, String.format("%010d", i), "selby" + i + "@mark.com"));
+        }
+        final var contentAsString = fMockMvc.perform(createUsersRequest(fUserRepository.getDefaultAdministrator().getId(), expected))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        final var actual = USERS_SERIALIZER.deserialize(contentAsString);
+        Assertions.assertEquals(expected.size(), actual.length);
+        for (var i = 0; i < actual.length; i++) {
+            Assertions.assertEquals(expected.get(i).getName(), actual[i].getName());
+            Assertions.assertEquals(expected.get(i).getPhone(), actual[i].getPhone());
+            Assertions.assertEquals(expected.get(i).getEmail(), actual[i].getEmail());
+            Assertions.assertEquals(expected.get(i).getName(), fUserRepository.getUser(actual[i].getId()).getName());
+        }
+    }
+
+    @Test
+    void testImportUsersWhenRequesterExistsButIsNotAdministrator() throws Exception {
+        fMockMvc.perform(importUsersRequest(fUserRepository.getDefaultUser().getId(), "text/csv", "name,phone,email\nMike Selby,8765436548,selby@mark.com\n"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testImportUsersWhenContentTypeIsNotSupported() throws Exception {
+        fMockMvc.perform(importUsersRequest(fUserRepository.getDefaultAdministrator().getId(), "application/json", "[]"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    void testImportUsersWhenRequesterIsAdministrator() throws Exception {
+        final var id = UUID.randomUUID();
+        final var body = "{\"id\":\"" + id + "\",\"name\":\"Mike Selby\",\"phone\":\"8765436548\",\"email\":\"selby@mark.com\"}\n"
+                + "{\"name\":\"Mike Selby\",\"phone\":\"876543654\",\"email\":\"selby@mark.com\"}\n"
+                + "{\"name\":\"Julie\",\"phone\":\"7897897280\",\"email\":\"abc@de.com\"}\n";
+        final var contentAsString = fMockMvc.perform(importUsersRequest(fUserRepository.getDefaultAdministrator().getId(), "application/x-ndjson", body))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        final var report = IMPORT_REPORT_SERIALIZER.deserialize(contentAsString);
+        Assertions.assertEquals(3, report.getRowsRead());
+        Assertions.assertEquals(1, report.getRowsRejected());
+        Assertions.assertEquals(2, report.getRowsImported());
+        Assertions.assertEquals(List.of(2L), report.getRejectedLines());
+        Assertions.assertEquals("Mike Selby", fUserRepository.getUser(id).getName());
+    }
+
+    @Test
+    void testExportUsersWhenRequesterExistsButIsNotAdministrator() throws Exception {
+        fMockMvc.perform(exportUsersRequest(fUserRepository.getDefaultUser().getId()))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testExportUsersWhenRequesterIsAdministrator() throws Exception {
+        final var created = fUserRepository.createUser(new UserDto("Mike Selby", "8765436548", "selby@mark.com"));
+        final var started = fMockMvc.perform(exportUsersRequest(fUserRepository.getDefaultAdministrator().getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        final var contentAsString = fMockMvc.perform(asyncDispatch(started))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        final var ids = new ArrayList<UUID>();
+        for (var line : contentAsString.split("\n")) {
+            ids.add(USER_SERIALIZER.deserialize(line).getId());
+        }
+        Assertions.assertTrue(ids.contains(created.getId()));
+        Assertions.assertTrue(ids.contains(fUserRepository.getDefaultUser().getId()));
+    }
+
     @Test
     void testGetUserWhenRequesterIsNull() throws Exception {
         fMockMvc.perform(getUserRequest(null, null))
@@ -110,6 +202,143 @@ class ControllerTest extends TestBase {
         Assertions.assertEquals(expected.getEmail(), actual.getEmail());
     }
 
+    @Test
+    void testListUsersWhenRequesterExistsButIsNotAdministrator() throws Exception {
+        fMockMvc.perform(listUsersRequest(fUserRepository.getDefaultUser().getId(), null, 10))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testListUsersWhenLimitIsOutOfRange() throws Exception {
+        final var requesterId = fUserRepository.getDefaultAdministrator().getId();
+        fMockMvc.perform(listUsersRequest(requesterId, null, 0))
+                .andExpect(status().isBadRequest());
+        fMockMvc.perform(listUsersRequest(requesterId, null, IUserService.MAX_USERS_PER_PAGE + 1))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testListUsersWhenRequesterIsAdministrator() throws Exception {
+        for (var i = 0; i < 5; i++) {
+            fUserRepository.createUser(new UserDto("Mike Selby", "8765436548", "selby@mark.com"));
+        }
+        final var requesterId = fUserRepository.getDefaultAdministrator().getId();
+        final var first = USER_PAGE_SERIALIZER.deserialize(fMockMvc.perform(listUsersRequest(requesterId, null, 2))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString());
+        Assertions.assertEquals(2, first.getUsers().size());
+        Assertions.assertEquals(first.getUsers().get(1).getId(), first.getNext());
+        Assertions.assertTrue(UuidOrder.compare(first.getUsers().get(0).getId(), first.getUsers().get(1).getId()) < 0);
+
+        final var second = USER_PAGE_SERIALIZER.deserialize(fMockMvc.perform(listUsersRequest(requesterId, first.getNext(), 2))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString());
+        Assertions.assertEquals(2, second.getUsers().size());
+        Assertions.assertTrue(UuidOrder.compare(first.getNext(), second.getUsers().get(0).getId()) < 0);
+    }
+
+    @Test
+    void testLookupUsersWhenRequesterDoesNotExist() throws Exception {
+        fMockMvc.perform(lookupUsersRequest(UUID.randomUUID(), List.of(fUserRepository.getDefaultUser().getId())))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void testLookupUsersWhenRequesterIsNotAdministratorAndAsksForOthers() throws Exception {
+        final var requesterId = fUserRepository.getDefaultUser().getId();
+        fMockMvc.perform(lookupUsersRequest(requesterId, List.of(requesterId, fUserRepository.getDefaultAdministrator().getId())))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testLookupUsersWhenTooManyIds() throws Exception {
+        final var userIds = new ArrayList<UUID>();
+        for (var i = 0; i <= IUserService.MAX_USERS_PER_LOOKUP; i++) {
+            userIds.add(UUID.randomUUID());
+        }
+        fMockMvc.perform(lookupUsersRequest(fUserRepository.getDefaultAdministrator().getId(), userIds))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testLookupUsersWhenRequesterIsAdministrator() throws Exception {
+        final var created = fUserRepository.createUser(new UserDto("Mike Selby", "8765436548", "selby@mark.com"));
+        final var expected = fUserRepository.getDefaultUser();
+        final var contentAsString = fMockMvc.perform(lookupUsersRequest(fUserRepository.getDefaultAdministrator().getId(),
+                List.of(created.getId(), UUID.randomUUID(), expected.getId())))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        final var actual = USERS_SERIALIZER.deserialize(contentAsString);
+        Assertions.assertEquals(2, actual.length);
+        Assertions.assertEquals(created.getId(), actual[0].getId());
+        Assertions.assertEquals(expected.getId(), actual[1].getId());
+        Assertions.assertEquals(expected.getEmail(), actual[1].getEmail());
+    }
+
+    @Test
+    void testFindUsersByEmailWhenRequesterIsNotAdministrator() throws Exception {
+        fMockMvc.perform(findUsersByEmailRequest(fUserRepository.getDefaultUser().getId(), "king@kong.com"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testFindUsersByEmailWhenEmailIsEmpty() throws Exception {
+        fMockMvc.perform(findUsersByEmailRequest(fUserRepository.getDefaultAdministrator().getId(), " "))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testFindUsersByEmailWhenRequesterIsAdministrator() throws Exception {
+        final var email = UUID.randomUUID() + "@mark.com";
+        final var created = fUserRepository.createUser(new UserDto("Mike Selby", "8765436548", email));
+        final var contentAsString = fMockMvc.perform(findUsersByEmailRequest(fUserRepository.getDefaultAdministrator().getId(),
+                " " + email.toUpperCase() + " "))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        final var actual = USERS_SERIALIZER.deserialize(contentAsString);
+        Assertions.assertEquals(1, actual.length);
+        Assertions.assertEquals(created.getId(), actual[0].getId());
+    }
+
+    @Test
+    void testFindUsersByPhoneWhenRequesterIsAdministrator() throws Exception {
+        final var created = fUserRepository.createUser(new UserDto("Mike Selby", "8765436547", "selby@mark.com"));
+        final var contentAsString = fMockMvc.perform(findUsersByPhoneRequest(fUserRepository.getDefaultAdministrator().getId(),
+                "876-543-6547"))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        final var actual = USERS_SERIALIZER.deserialize(contentAsString);
+        Assertions.assertTrue(Arrays.stream(actual).anyMatch(user -> user.getId().equals(created.getId())));
+        Assertions.assertTrue(Arrays.stream(actual).allMatch(user -> user.getPhone().equals("8765436547")));
+    }
+
+    @Test
+    void testSearchUsersWhenRequesterIsNotAdministrator() throws Exception {
+        fMockMvc.perform(searchUsersRequest(fUserRepository.getDefaultUser().getId(), "selby", 10))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testSearchUsersWhenQueryOrLimitIsInvalid() throws Exception {
+        final var requesterId = fUserRepository.getDefaultAdministrator().getId();
+        fMockMvc.perform(searchUsersRequest(requesterId, " -", 10))
+                .andExpect(status().isBadRequest());
+        fMockMvc.perform(searchUsersRequest(requesterId, "selby", IUserService.MAX_USERS_PER_SEARCH + 1))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testSearchUsersWhenRequesterIsAdministrator() throws Exception {
+        final var created = fUserRepository.createUser(new UserDto("Quintessa Vandersloot", "8765436548", "selby@mark.com"));
+        final var contentAsString = fMockMvc.perform(searchUsersRequest(fUserRepository.getDefaultAdministrator().getId(),
+                "vandersl", 5))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        final var actual = USERS_SERIALIZER.deserialize(contentAsString);
+        Assertions.assertTrue(actual.length >= 1 && actual.length <= 5);
+        Assertions.assertEquals(created.getId(), actual[0].getId());
+    }
+
     @Test
     void testUpdateUserWhenRequesterIsNull() throws Exception {
         fMockMvc.perform(updateUserRequest(null, null, null))
@@ -147,6 +376,41 @@ class ControllerTest extends TestBase {
         Assertions.assertEquals(expected.getEmail(), actual.getEmail());
     }
 
+    @Test
+    void testUpdateUserWhenIfMatchIsTheCurrentEntityTag() throws Exception {
+        final var user = fUserRepository.createUser(new UserDto("Mike Selby", "8765436548", "selby@mark.com"));
+        final var entityTag = fMockMvc.perform(getUserRequest(user.getId(), user.getId()))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        Assertions.assertEquals("\"" + user.getVersion() + "\"", entityTag);
+
+        final var expected = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+        final var response = fMockMvc.perform(updateUserRequest(user.getId(), user.getId(), expected).header(HttpHeaders.IF_MATCH, entityTag))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse();
+        Assertions.assertEquals("\"" + (user.getVersion() + 1) + "\"", response.getHeader(HttpHeaders.ETAG));
+        Assertions.assertEquals(expected.getEmail(), USER_SERIALIZER.deserialize(response.getContentAsString()).getEmail());
+    }
+
+    @Test
+    void testUpdateUserWhenIfMatchIsStale() throws Exception {
+        final var user = fUserRepository.createUser(new UserDto("Mike Selby", "8765436548", "selby@mark.com"));
+        final var entityTag = "\"" + user.getVersion() + "\"";
+        fUserRepository.updateUser(user.getId(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        fMockMvc.perform(updateUserRequest(user.getId(), user.getId(), new UpdateUserDto("Mike Selby", "8765436548", "stale@mark.com"))
+                        .header(HttpHeaders.IF_MATCH, entityTag))
+                .andExpect(status().isPreconditionFailed());
+        Assertions.assertEquals("mike@mark.com", fUserRepository.getUser(user.getId()).getEmail());
+    }
+
+    @Test
+    void testUpdateUserWhenIfMatchIsWeak() throws Exception {
+        final var user = fUserRepository.getDefaultUser();
+        fMockMvc.perform(updateUserRequest(user.getId(), user.getId(), new UpdateUserDto("Mike Selby", "8765436548", "selby@mark.com"))
+                        .header(HttpHeaders.IF_MATCH, "W/\"" + user.getVersion() + "\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     void testDeleteUserWhenRequesterIsNull() throws Exception {
         fMockMvc.perform(deleteUserRequest(null, null))
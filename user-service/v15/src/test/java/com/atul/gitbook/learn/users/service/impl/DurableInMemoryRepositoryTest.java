@@ -0,0 +1,171 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.journal.JournalConfig;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.UserDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+class DurableInMemoryRepositoryTest {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+    private static final UpdateUserDto UPDATE_USER_DTO = new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com");
+
+    @TempDir
+    Path fDirectory;
+
+    private JournalConfig config(int segmentSize) {
+        return new JournalConfig(fDirectory, segmentSize, 16, 1, 0);
+    }
+
+    @Test
+    void testUsersSurviveRestartFromSnapshot() throws IOException {
+        final UUID created;
+        final UUID updated;
+        try (var repository = new DurableInMemoryRepository(config(1 << 20))) {
+            created = repository.createUser(USER_DTO).getId();
+            updated = repository.createUser(USER_DTO).getId();
+            repository.updateUser(updated, UPDATE_USER_DTO);
+            repository.deleteUser(repository.getDefaultUser().getId());
+        }
+        try (var repository = new DurableInMemoryRepository(config(1 << 20))) {
+            Assertions.assertEquals(USER_DTO.getEmail(), repository.getUser(created).getEmail());
+            Assertions.assertEquals(UPDATE_USER_DTO.getEmail(), repository.getUser(updated).getEmail());
+            Assertions.assertEquals(2, repository.getUser(updated).getVersion());
+            Assertions.assertThrows(NoSuchElementException.class, () -> repository.getUser(repository.getDefaultUser().getId()));
+        }
+    }
+
+    @Test
+    void testUsersSurviveRestartFromLogWithoutSnapshot() throws IOException {
+        // The first instance is never closed, as if the process had been killed after the writes.
+        final var repository = new DurableInMemoryRepository(config(4096));
+        final var ids = new UUID[200];
+        for (var i = 0; i < ids.length; i++) {
+            ids[i] = repository.createUser(USER_DTO).getId();
+        }
+        repository.updateUser(ids[0], UPDATE_USER_DTO);
+        repository.updateUser(ids[0], 2, UPDATE_USER_DTO);
+        repository.deleteUser(ids[1]);
+
+        try (var recovered = new DurableInMemoryRepository(config(4096))) {
+            Assertions.assertEquals(UPDATE_USER_DTO.getEmail(), recovered.getUser(ids[0]).getEmail());
+            Assertions.assertEquals(3, recovered.getUser(ids[0]).getVersion());
+            Assertions.assertThrows(NoSuchElementException.class, () -> recovered.getUser(ids[1]));
+            for (var i = 2; i < ids.length; i++) {
+                Assertions.assertEquals(USER_DTO.getEmail(), recovered.getUser(ids[i]).getEmail());
+            }
+        }
+    }
+
+    @Test
+    void testSnapshotDeletesCoveredSegmentsAndKeepsLogTail() throws IOException {
+        final var repository = new DurableInMemoryRepository(config(4096));
+        for (var i = 0; i < 200; i++) {
+            repository.createUser(USER_DTO);
+        }
+        repository.snapshot();
+        Assertions.assertEquals(1, countFiles("wal-"));
+        final var afterSnapshot = repository.createUser(USER_DTO).getId();
+
+        try (var recovered = new DurableInMemoryRepository(config(4096))) {
+            Assertions.assertEquals(USER_DTO.getEmail(), recovered.getUser(afterSnapshot).getEmail());
+        }
+    }
+
+    @Test
+    void testTornRecordAtTheEndOfTheLogIsIgnored() throws IOException {
+        final var repository = new DurableInMemoryRepository(config(1 << 20));
+        final var kept = repository.createUser(USER_DTO).getId();
+        final var torn = repository.createUser(USER_DTO).getId();
+        corruptLastRecord();
+
+        try (var recovered = new DurableInMemoryRepository(config(1 << 20))) {
+            Assertions.assertEquals(USER_DTO.getEmail(), recovered.getUser(kept).getEmail());
+            Assertions.assertThrows(NoSuchElementException.class, () -> recovered.getUser(torn));
+            final var next = recovered.createUser(USER_DTO).getId();
+            Assertions.assertEquals(USER_DTO.getEmail(), recovered.getUser(next).getEmail());
+        }
+    }
+
+    @Test
+    void testWritesTheLogRejectsAreNotApplied() throws IOException {
+        final var repository = new DurableInMemoryRepository(config(4096));
+        final var user = repository.createUser(USER_DTO);
+        // Directories in the place of the next segments make the log fail when it rolls over.
+        final var blocked = blockNextSegments(1_000);
+        var created = 0;
+        try {
+            while (true) {
+                repository.createUser(USER_DTO);
+                created++;
+            }
+        } catch (UncheckedIOException e) {
+            // The create that needed a new segment.
+        }
+        final var size = repository.size();
+        Assertions.assertThrows(RuntimeException.class, () -> repository.createUser(USER_DTO));
+        Assertions.assertThrows(RuntimeException.class, () -> repository.updateUser(user.getId(), UPDATE_USER_DTO));
+        Assertions.assertThrows(RuntimeException.class, () -> repository.updateUser(user.getId(), 1, UPDATE_USER_DTO));
+        Assertions.assertThrows(RuntimeException.class, () -> repository.deleteUser(user.getId()));
+        Assertions.assertEquals(size, repository.size());
+        Assertions.assertEquals(created + 3, size);
+        Assertions.assertEquals(USER_DTO.getEmail(), repository.getUser(user.getId()).getEmail());
+        Assertions.assertEquals(1, repository.getUser(user.getId()).getVersion());
+
+        repository.close();
+        for (var directory : blocked) {
+            Files.deleteIfExists(directory);
+        }
+        try (var recovered = new DurableInMemoryRepository(config(4096))) {
+            Assertions.assertEquals(size, recovered.size());
+            Assertions.assertEquals(USER_DTO.getEmail(), recovered.getUser(user.getId()).getEmail());
+            Assertions.assertEquals(1, recovered.getUser(user.getId()).getVersion());
+        }
+    }
+
+    private List<Path> blockNextSegments(int count) throws IOException {
+        final var blocked = new ArrayList<Path>();
+        for (var lsn = 1; lsn <= count; lsn++) {
+            final var segment = fDirectory.resolve(String.format("wal-%020d.log", lsn));
+            if (!Files.exists(segment))
+                blocked.add(Files.createDirectory(segment));
+        }
+        return blocked;
+    }
+
+    private long countFiles(String prefix) throws IOException {
+        try (var files = Files.list(fDirectory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    private void corruptLastRecord() throws IOException {
+        final Path segment;
+        try (var files = Files.list(fDirectory)) {
+            segment = files.filter(path -> path.getFileName().toString().startsWith("wal-"))
+                    .sorted().collect(Collectors.toList()).get(0);
+        }
+        try (var channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Skip the first record, then flip a byte in the payload of the second one.
+            final var header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            final var secondRecord = 16 + header.flip().getInt();
+            channel.write(ByteBuffer.wrap(new byte[]{0x7f}), secondRecord + 20);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class GroupCommitRepositoryTest {
+
+    private static final int THREADS = 32;
+
+    private final CountingRepository fUsers = new CountingRepository();
+
+    private static UserDto userDto(int i) {
+        return new UserDto("Mike Selby", "8765436548", "mike" + i + "@mark.com");
+    }
+
+    /**
+     * Creates a user on each of the threads at once, and returns them in the order of the threads.
+     */
+    private static List<User> createConcurrently(GroupCommitRepository repository) throws Exception {
+        final var executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final var start = new CountDownLatch(1);
+            final var futures = new ArrayList<Future<User>>();
+            for (var i = 0; i < THREADS; i++) {
+                final var userDto = userDto(i);
+                futures.add(executor.submit((Callable<User>) () -> {
+                    start.await();
+                    return repository.createUser(userDto);
+                }));
+            }
+            start.countDown();
+            final var users = new ArrayList<User>();
+            for (var future : futures) {
+                users.add(future.get(30, TimeUnit.SECONDS));
+            }
+            return users;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentCreatesShareCommits() throws Exception {
+        try (var repository = new GroupCommitRepository(fUsers, 200_000, 1_000)) {
+            final var users = createConcurrently(repository);
+            final var ids = new HashSet<>();
+            for (var i = 0; i < THREADS; i++) {
+                Assertions.assertEquals(userDto(i).getEmail(), users.get(i).getEmail());
+                Assertions.assertEquals(users.get(i).getEmail(), repository.getUser(users.get(i).getId()).getEmail());
+                ids.add(users.get(i).getId());
+            }
+            Assertions.assertEquals(THREADS, ids.size());
+            Assertions.assertTrue(fUsers.fBatches.get() < THREADS, "Every create was committed on its own.");
+        }
+    }
+
+    @Test
+    void testFullGroupIsCommittedWithoutWaitingForTheDelay() throws Exception {
+        // A delay far longer than the test, which only a full group cuts short.
+        try (var repository = new GroupCommitRepository(fUsers, TimeUnit.HOURS.toMicros(1), THREADS)) {
+            Assertions.assertEquals(THREADS, createConcurrently(repository).size());
+            Assertions.assertEquals(1, fUsers.fBatches.get());
+        }
+    }
+
+    @Test
+    void testFailedGroupIsCreatedOneByOne() throws Exception {
+        fUsers.fFailBatches = true;
+        try (var repository = new GroupCommitRepository(fUsers, 1_000, 1_000)) {
+            final var users = createConcurrently(repository);
+            for (var user : users) {
+                Assertions.assertEquals(user.getEmail(), repository.getUser(user.getId()).getEmail());
+            }
+        }
+    }
+
+    @Test
+    void testCreateAfterCloseFails() throws Exception {
+        final var repository = new GroupCommitRepository(fUsers, 1_000, 1_000);
+        Assertions.assertEquals("mike1@mark.com", repository.createUser(userDto(1)).getEmail());
+        repository.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.createUser(userDto(2)));
+    }
+
+    @Test
+    void testCreatesFailWhenTheCommitterDies() throws Exception {
+        fUsers.fBreakCommitter = true;
+        try (var repository = new GroupCommitRepository(fUsers, 1_000, 1_000)) {
+            final var thrown = Assertions.assertThrows(IllegalStateException.class, () -> repository.createUser(userDto(1)));
+            Assertions.assertTrue(thrown.getCause() instanceof AssertionError);
+            Assertions.assertThrows(IllegalStateException.class, () -> repository.createUser(userDto(2)));
+        }
+    }
+
+    private static final class CountingRepository extends InMemoryRepository {
+
+        private final AtomicInteger fBatches = new AtomicInteger();
+        private volatile boolean fFailBatches;
+        private volatile boolean fBreakCommitter;
+
+        @Override
+        public List<User> createUsers(List<UserDto> userDtos) {
+            fBatches.incrementAndGet();
+            if (fFailBatches)
+                throw new IllegalStateException("The batch failed.");
+            if (fBreakCommitter)
+                throw new AssertionError("The committer broke.");
+            return super.createUsers(userDtos);
+        }
+    }
+}
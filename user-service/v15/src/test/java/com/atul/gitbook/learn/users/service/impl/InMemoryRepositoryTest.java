@@ -0,0 +1,287 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.collections.UuidOrder;
+import com.atul.gitbook.learn.search.NameSearch;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class InMemoryRepositoryTest {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+
+    @Test
+    void testGetUserWhenUserIsNotPresent() {
+        final var repository = new InMemoryRepository();
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.getUser(UUID.randomUUID()));
+    }
+
+    @Test
+    void testUpdateUserWhenUserIsNotPresent() {
+        final var repository = new InMemoryRepository();
+        final var updateUserDto = new UpdateUserDto("Mike Selby", "8765436548", "selby@mark.com");
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.updateUser(UUID.randomUUID(), updateUserDto));
+    }
+
+    @Test
+    void testDeleteUserWhenUserIsNotPresent() {
+        final var repository = new InMemoryRepository();
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.deleteUser(UUID.randomUUID()));
+    }
+
+    @Test
+    void testCreateUpdateAndDeleteUser() {
+        final var repository = new InMemoryRepository();
+        final var user = repository.createUser(USER_DTO);
+        Assertions.assertEquals(USER_DTO.getName(), repository.getUser(user.getId()).getName());
+
+        final var updated = repository.updateUser(user.getId(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        Assertions.assertEquals(user.getId(), updated.getId());
+        Assertions.assertEquals("mike@mark.com", updated.getEmail());
+        Assertions.assertEquals("mike@mark.com", repository.getUser(user.getId()).getEmail());
+
+        repository.deleteUser(user.getId());
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.getUser(user.getId()));
+    }
+
+    @Test
+    void testFindByEmailAndPhoneFollowTheUser() {
+        final var repository = new InMemoryRepository();
+        final var user = repository.createUser(USER_DTO);
+        final var other = repository.createUser(new UserDto("Mike Selby", "8765436549", "Selby@Mark.com"));
+        Assertions.assertEquals(2, repository.findByEmail(" SELBY@mark.com").size());
+        // Like btrim in the database, only spaces are stripped.
+        Assertions.assertTrue(repository.findByEmail("\tselby@mark.com").isEmpty());
+        Assertions.assertEquals(List.of(user.getId()), ids(repository.findByPhone("(876) 543-6548")));
+
+        repository.updateUser(user.getId(), new UpdateUserDto("Mike Selby", "8765436540", "mike@mark.com"));
+        Assertions.assertEquals(List.of(other.getId()), ids(repository.findByEmail("selby@mark.com")));
+        Assertions.assertEquals(List.of(user.getId()), ids(repository.findByEmail("mike@mark.com")));
+        Assertions.assertTrue(repository.findByPhone("8765436548").isEmpty());
+        Assertions.assertEquals(List.of(user.getId()), ids(repository.findByPhone("8765436540")));
+
+        repository.deleteUser(user.getId());
+        Assertions.assertTrue(repository.findByEmail("mike@mark.com").isEmpty());
+        Assertions.assertTrue(repository.findByPhone("8765436540").isEmpty());
+    }
+
+    @Test
+    void testSearchByNameFollowsRenames() {
+        final var repository = new InMemoryRepository();
+        final var selby = repository.createUser(USER_DTO);
+        final var selbourne = repository.createUser(new UserDto("Anna Selbourne", "8765436549", "anna@mark.com"));
+        Assertions.assertEquals(List.of(selby.getId(), selbourne.getId()), ids(repository.searchByName("selby", 10)));
+
+        repository.updateUser(selby.getId(), new UpdateUserDto("Mike Doe", "8765436548", "selby@mark.com"));
+        Assertions.assertEquals(List.of(selbourne.getId()), ids(repository.searchByName("selby", 10)));
+        Assertions.assertEquals(List.of(selby.getId()), ids(repository.searchByName("doe", 10)));
+
+        repository.deleteUser(selbourne.getId());
+        Assertions.assertTrue(repository.searchByName("selby", 10).isEmpty());
+    }
+
+    @Test
+    void testSearchByNameFindsWhatAScanFinds() {
+        final var repository = new InMemoryRepository();
+        final var scanning = new ScanningRepository();
+        final var random = new Random(42);
+        final var syllables = List.of("sel", "by", "an", "na", "mi", "ke", "jo", "hn", "do", "e", "mar", "shal");
+        for (var i = 0; i < 2_000; i++) {
+            final var name = new StringBuilder();
+            for (var j = 0; j < 2 + random.nextInt(4); j++) {
+                name.append(syllables.get(random.nextInt(syllables.size())));
+                if (random.nextInt(3) == 0)
+                    name.append(' ');
+            }
+            final var user = new User(UUID.randomUUID(), name.toString(), "8765436548", "selby@mark.com", false);
+            repository.putUser(user);
+            scanning.putUser(user);
+        }
+        for (var query : List.of("selby", "anna", "mike", "jo", "marshal", "do e", "xyz")) {
+            Assertions.assertEquals(ids(scanning.searchByName(query, 25)), ids(repository.searchByName(query, 25)), query);
+        }
+    }
+
+    @Test
+    void testConditionalUpdateOnlyAppliesToTheExpectedVersion() {
+        final var repository = new InMemoryRepository();
+        final var user = repository.createUser(USER_DTO);
+        Assertions.assertEquals(User.INITIAL_VERSION, user.getVersion());
+
+        final var updated = repository.updateUser(user.getId(), user.getVersion(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        Assertions.assertEquals(user.getVersion() + 1, updated.getVersion());
+        Assertions.assertEquals("mike@mark.com", updated.getEmail());
+
+        final var stale = new UpdateUserDto("Mike Selby", "8765436548", "stale@mark.com");
+        Assertions.assertThrows(ConcurrentModificationException.class, () -> repository.updateUser(user.getId(), user.getVersion(), stale));
+        Assertions.assertEquals("mike@mark.com", repository.getUser(user.getId()).getEmail());
+        Assertions.assertEquals(updated.getVersion(), repository.getUser(user.getId()).getVersion());
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.updateUser(UUID.randomUUID(), User.INITIAL_VERSION, stale));
+    }
+
+    @Test
+    void testGetUsersReturnsPresentUsersInOrder() {
+        final var repository = new InMemoryRepository();
+        final var first = repository.createUser(USER_DTO);
+        final var second = repository.createUser(new UserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        final var users = repository.getUsers(List.of(second.getId(), UUID.randomUUID(), first.getId(), second.getId()));
+        Assertions.assertEquals(2, users.size());
+        Assertions.assertEquals(second.getId(), users.get(0).getId());
+        Assertions.assertEquals("mike@mark.com", users.get(0).getEmail());
+        Assertions.assertEquals(first.getId(), users.get(1).getId());
+        Assertions.assertTrue(repository.getUsers(List.of()).isEmpty());
+    }
+
+    @Test
+    void testCreateUsersReturnsThemInOrder() {
+        final var repository = new InMemoryRepository();
+        final var userDtos = new ArrayList<UserDto>();
+        for (var i = 0; i < 10; i++) {
+            userDtos.add(new UserDto("User " + i, "8765436548", "selby@mark.com"));
+        }
+        final var users = repository.createUsers(userDtos);
+        Assertions.assertEquals(userDtos.size(), users.size());
+        for (var i = 0; i < users.size(); i++) {
+            Assertions.assertEquals("User " + i, repository.getUser(users.get(i).getId()).getName());
+        }
+    }
+
+    @Test
+    void testGetUsersAfterPagesThroughAllUsersInIdOrder() {
+        final var repository = new InMemoryRepository();
+        for (var i = 0; i < 250; i++) {
+            repository.createUser(USER_DTO);
+        }
+        final var ids = new ArrayList<UUID>();
+        UUID after = null;
+        while (true) {
+            final var page = repository.getUsersAfter(after, 32);
+            if (page.isEmpty())
+                break;
+            for (var user : page) {
+                ids.add(user.getId());
+            }
+            after = page.get(page.size() - 1).getId();
+        }
+        final var expected = new ArrayList<>(ids);
+        expected.sort(UuidOrder.COMPARATOR);
+        Assertions.assertEquals(repository.size(), ids.size());
+        Assertions.assertEquals(expected, ids);
+    }
+
+    @Test
+    void testImportUsersCreatesThemInBatches() {
+        final var repository = new InMemoryRepository();
+        final var initialSize = repository.size();
+        final var users = new ArrayList<User>();
+        for (var i = 0; i < 2_500; i++) {
+            users.add(new User(UUID.randomUUID(), "User " + i, "8765436548", "selby@mark.com", false));
+        }
+        Assertions.assertEquals(users.size(), repository.importUsers(users.iterator()));
+        Assertions.assertEquals(initialSize + users.size(), repository.size());
+    }
+
+    @Test
+    void testConcurrentCreatesAreNotLost() throws Exception {
+        final var repository = new InMemoryRepository();
+        final var initialSize = repository.size();
+        final var threads = 8;
+        final var usersPerThread = 5_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final var tasks = new ArrayList<Callable<Void>>();
+            for (var i = 0; i < threads; i++) {
+                tasks.add(() -> {
+                    for (var j = 0; j < usersPerThread; j++) {
+                        final var user = repository.createUser(USER_DTO);
+                        repository.getUser(user.getId());
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(initialSize + threads * usersPerThread, repository.size());
+    }
+
+    @Test
+    void testReadsRacingWithWritesReturnTheRightUser() throws Exception {
+        final var repository = new InMemoryRepository();
+        final var stable = new ArrayList<UUID>();
+        for (var i = 0; i < 1_000; i++) {
+            stable.add(repository.createUser(new UserDto("User " + i, "8765436548", "selby@mark.com")).getId());
+        }
+        final var readers = 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        try {
+            final var tasks = new ArrayList<Callable<Void>>();
+            // The writer keeps inserting and deleting, so readers race with resizes and backward shifts.
+            tasks.add(() -> {
+                for (var round = 0; round < 20; round++) {
+                    final var created = new ArrayList<UUID>();
+                    for (var j = 0; j < 5_000; j++) {
+                        created.add(repository.createUser(USER_DTO).getId());
+                    }
+                    for (var id : created) {
+                        repository.deleteUser(id);
+                    }
+                }
+                return null;
+            });
+            for (var i = 0; i < readers; i++) {
+                tasks.add(() -> {
+                    for (var j = 0; j < 200_000; j++) {
+                        final var index = j % stable.size();
+                        final var user = repository.getUser(stable.get(index));
+                        Assertions.assertEquals(stable.get(index), user.getId());
+                        Assertions.assertEquals("User " + index, user.getName());
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<UUID> ids(List<User> users) {
+        final var ids = new ArrayList<UUID>();
+        for (var user : users) {
+            ids.add(user.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Ranks every user, as repositories without a name index do.
+     */
+    private static final class ScanningRepository extends InMemoryRepository {
+
+        @Override
+        public List<User> searchByName(String query, int limit) {
+            final var search = new NameSearch(query, limit);
+            forEachUser(search::offer);
+            return search.getUsers();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.UserDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class ShardedRepositoryTest {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+
+    @Test
+    void testCreateUpdateAndDeleteUser() {
+        try (var repository = new ShardedRepository(4)) {
+            final var user = repository.createUser(USER_DTO);
+            Assertions.assertEquals(USER_DTO.getName(), repository.getUser(user.getId()).getName());
+
+            final var updated = repository.updateUser(user.getId(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+            Assertions.assertEquals(user.getId(), updated.getId());
+            Assertions.assertEquals("mike@mark.com", updated.getEmail());
+            Assertions.assertEquals("mike@mark.com", repository.getUser(user.getId()).getEmail());
+
+            repository.deleteUser(user.getId());
+            Assertions.assertThrows(NoSuchElementException.class, () -> repository.getUser(user.getId()));
+            Assertions.assertThrows(NoSuchElementException.class, () -> repository.deleteUser(user.getId()));
+            Assertions.assertThrows(NoSuchElementException.class, () -> repository.updateUser(UUID.randomUUID(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com")));
+        }
+    }
+
+    @Test
+    void testConcurrentWritesAreNotLost() throws Exception {
+        try (var repository = new ShardedRepository(4)) {
+            final var initialSize = repository.size();
+            final var threads = 8;
+            final var usersPerThread = 2_000;
+            final ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                final var tasks = new ArrayList<Callable<Void>>();
+                for (var i = 0; i < threads; i++) {
+                    tasks.add(() -> {
+                        for (var j = 0; j < usersPerThread; j++) {
+                            final var user = repository.createUser(USER_DTO);
+                            Assertions.assertEquals(user.getId(), repository.getUser(user.getId()).getId());
+                            if (j % 2 == 0)
+                                repository.deleteUser(user.getId());
+                        }
+                        return null;
+                    });
+                }
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            Assertions.assertEquals(initialSize + threads * usersPerThread / 2, repository.size());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.exceptions.ForbiddenException;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import com.atul.gitbook.learn.users.service.IUserRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+class UserExportTest {
+
+    private static final int USER_COUNT = 2_000_000;
+    private static final int SAMPLE_EVERY = 250_000;
+    // A List<User> of the exported users would take several times this.
+    private static final long MAX_HEAP_GROWTH = 32 * 1024 * 1024;
+
+    @Test
+    void testExportRequiresAdministrator() {
+        final var repository = new GeneratedUsersRepository(10);
+        final var service = new UserService(repository);
+        Assertions.assertThrows(ForbiddenException.class, () -> service.exportUsers(repository.getDefaultUser().getId()));
+    }
+
+    @Test
+    void testExportHeapStaysBoundedWhateverTheNumberOfUsers() throws Exception {
+        final var repository = new GeneratedUsersRepository(USER_COUNT);
+        final var out = new LineCountingOutputStream();
+        final var baseline = usedHeapAfterGc();
+
+        new UserService(repository).exportUsers(repository.getDefaultAdministrator().getId()).writeTo(out);
+
+        Assertions.assertEquals(USER_COUNT, out.fLines);
+        Assertions.assertTrue(out.fBytes > USER_COUNT * 100L);
+        final var growth = repository.fMaxUsedHeap - baseline;
+        Assertions.assertTrue(growth < MAX_HEAP_GROWTH, "Heap grew by " + growth + " bytes during the export.");
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        final var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Makes up its users as they are iterated over, like rows coming off a cursor, and samples the
+     * heap along the way.
+     */
+    private static final class GeneratedUsersRepository extends IUserRepository {
+
+        private final int fUserCount;
+        private long fMaxUsedHeap;
+
+        private GeneratedUsersRepository(int userCount) {
+            fUserCount = userCount;
+            setDefaultAdministrator(new User(UUID.randomUUID(), "King Kong", "9999999999", "king@kong.com", true));
+            setDefaultUser(new User(UUID.randomUUID(), "David Marshal", "9999999999", "david@marshall.com", false));
+        }
+
+        @Override
+        public void forEachUser(Consumer<User> consumer) {
+            for (var i = 0; i < fUserCount; i++) {
+                consumer.accept(new User(new UUID(0, i), "User " + i, "8765436548", "user" + i + "@mark.com", false));
+                if (i % SAMPLE_EVERY == 0)
+                    fMaxUsedHeap = Math.max(fMaxUsedHeap, usedHeapAfterGc());
+            }
+        }
+
+        @Override
+        public User getUser(UUID id) {
+            if (id.equals(getDefaultAdministrator().getId()))
+                return getDefaultAdministrator();
+            if (id.equals(getDefaultUser().getId()))
+                return getDefaultUser();
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public User createUser(UserDto userDto) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<User> getUsersAfter(UUID after, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public User updateUser(UUID id, UpdateUserDto userDto) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public User updateUser(UUID id, long expectedVersion, UpdateUserDto userDto) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteUser(UUID id) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class LineCountingOutputStream extends OutputStream {
+
+        private long fBytes;
+        private long fLines;
+
+        @Override
+        public void write(int b) {
+            fBytes++;
+            if (b == '\n')
+                fLines++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            fBytes += length;
+            for (var i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n')
+                    fLines++;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.UserDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class VersionedRepositoryTest {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+
+    @Test
+    void testCreateUpdateAndDeleteUser() {
+        final var repository = new VersionedRepository();
+        final var user = repository.createUser(USER_DTO);
+        Assertions.assertEquals(USER_DTO.getName(), repository.getUser(user.getId()).getName());
+
+        final var updated = repository.updateUser(user.getId(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        Assertions.assertEquals(user.getId(), updated.getId());
+        Assertions.assertEquals("mike@mark.com", updated.getEmail());
+        Assertions.assertEquals("mike@mark.com", repository.getUser(user.getId()).getEmail());
+
+        repository.deleteUser(user.getId());
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.getUser(user.getId()));
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.deleteUser(user.getId()));
+        Assertions.assertThrows(NoSuchElementException.class, () -> repository.updateUser(UUID.randomUUID(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com")));
+    }
+
+    @Test
+    void testConditionalUpdateOnlyAppliesToTheExpectedVersion() {
+        final var repository = new VersionedRepository();
+        final var user = repository.createUser(USER_DTO);
+        final var updated = repository.updateUser(user.getId(), user.getVersion(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        Assertions.assertEquals(user.getVersion() + 1, updated.getVersion());
+        Assertions.assertThrows(ConcurrentModificationException.class,
+                () -> repository.updateUser(user.getId(), user.getVersion(), new UpdateUserDto("Mike Selby", "8765436548", "stale@mark.com")));
+        Assertions.assertEquals("mike@mark.com", repository.getUser(user.getId()).getEmail());
+    }
+
+    @Test
+    void testGetUsersReturnsPresentUsersInOrder() {
+        final var repository = new VersionedRepository();
+        final var first = repository.createUser(USER_DTO);
+        final var second = repository.createUser(new UserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        final var users = repository.getUsers(List.of(second.getId(), UUID.randomUUID(), first.getId(), second.getId()));
+        Assertions.assertEquals(2, users.size());
+        Assertions.assertEquals(second.getId(), users.get(0).getId());
+        Assertions.assertEquals("mike@mark.com", users.get(0).getEmail());
+        Assertions.assertEquals(first.getId(), users.get(1).getId());
+        Assertions.assertTrue(repository.getUsers(List.of()).isEmpty());
+    }
+
+    @Test
+    void testSnapshotIsNotAffectedByLaterWrites() {
+        final var repository = new VersionedRepository();
+        final var user = repository.createUser(USER_DTO);
+        final var snapshot = repository.snapshot();
+
+        repository.updateUser(user.getId(), new UpdateUserDto("Mike Selby", "8765436549", "mike@mark.com"));
+        repository.deleteUser(repository.getDefaultUser().getId());
+        repository.createUser(USER_DTO);
+
+        Assertions.assertEquals("selby@mark.com", snapshot.get(user.getId()).getEmail());
+        Assertions.assertNotNull(snapshot.get(repository.getDefaultUser().getId()));
+        Assertions.assertEquals(3, snapshot.size());
+        Assertions.assertEquals(3, repository.size());
+    }
+
+    @Test
+    void testConcurrentWritesAreNotLost() throws Exception {
+        final var repository = new VersionedRepository();
+        final var initialSize = repository.size();
+        final var threads = 8;
+        final var usersPerThread = 2_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final var tasks = new ArrayList<Callable<Void>>();
+            for (var i = 0; i < threads; i++) {
+                tasks.add(() -> {
+                    for (var j = 0; j < usersPerThread; j++) {
+                        final var user = repository.createUser(USER_DTO);
+                        final var snapshot = repository.snapshot();
+                        final var count = new int[1];
+                        snapshot.forEach((id, value) -> count[0]++);
+                        Assertions.assertEquals(snapshot.size(), count[0]);
+                        if (j % 2 == 0)
+                            repository.deleteUser(user.getId());
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(initialSize + threads * usersPerThread / 2, repository.size());
+    }
+}
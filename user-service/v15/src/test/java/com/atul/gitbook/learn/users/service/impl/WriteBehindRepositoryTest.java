@@ -0,0 +1,250 @@
+package com.atul.gitbook.learn.users.service.impl;
+
+import com.atul.gitbook.learn.journal.JournalConfig;
+import com.atul.gitbook.learn.offheap.UserSlabStore;
+import com.atul.gitbook.learn.users.models.UpdateUserDto;
+import com.atul.gitbook.learn.users.models.User;
+import com.atul.gitbook.learn.users.models.UserDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+class WriteBehindRepositoryTest {
+
+    private static final UserDto USER_DTO = new UserDto("Mike Selby", "8765436548", "selby@mark.com");
+    // Long enough for the periodic flush to never run during a test.
+    private static final long WINDOW_MILLIS = 3_600_000;
+
+    private final CountingRepository fUsers = new CountingRepository();
+
+    @TempDir
+    Path fDirectory;
+
+    private static UpdateUserDto update(int i) {
+        return new UpdateUserDto("Mike Selby", "8765436548", "mike" + i + "@mark.com");
+    }
+
+    @Test
+    void testUpdatesOfAUserAreCoalescedIntoOneWrite() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            final var user = repository.createUser(USER_DTO);
+            for (var i = 0; i < 100; i++) {
+                final var updated = repository.updateUser(user.getId(), update(i));
+                Assertions.assertEquals(user.getVersion() + 1 + i, updated.getVersion());
+            }
+            Assertions.assertEquals("mike99@mark.com", repository.getUser(user.getId()).getEmail());
+            Assertions.assertEquals("mike99@mark.com", repository.getUsers(List.of(user.getId())).get(0).getEmail());
+            Assertions.assertEquals(USER_DTO.getEmail(), fUsers.getUser(user.getId()).getEmail());
+            Assertions.assertEquals(1, repository.getPendingCount());
+
+            repository.flush();
+            Assertions.assertEquals(1, fUsers.fUpdates.get());
+            Assertions.assertEquals(0, repository.getPendingCount());
+            Assertions.assertEquals(100.0, repository.getCoalescingRatio());
+            final var written = fUsers.getUser(user.getId());
+            Assertions.assertEquals("mike99@mark.com", written.getEmail());
+            Assertions.assertEquals(user.getVersion() + 100, written.getVersion());
+        }
+    }
+
+    @Test
+    void testCoalescedUpdatesDontShareAVersion() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            final var user = repository.createUser(USER_DTO);
+            final var first = repository.updateUser(user.getId(), update(1));
+            final var second = repository.updateUser(user.getId(), update(2));
+            Assertions.assertNotEquals(first.getVersion(), second.getVersion());
+            // The first writer hasn't seen the second update, so its version no longer matches.
+            Assertions.assertThrows(ConcurrentModificationException.class,
+                    () -> repository.updateUser(user.getId(), first.getVersion(), update(3)));
+            final var written = fUsers.getUser(user.getId());
+            Assertions.assertEquals("mike2@mark.com", written.getEmail());
+            Assertions.assertEquals(second.getVersion(), written.getVersion());
+        }
+    }
+
+    @Test
+    void testCoalescedUpdatesAreWrittenToEveryRepository() throws Exception {
+        final var repositories = List.of(new InMemoryRepository(), new OffHeapRepository(UserSlabStore.DEFAULT_SLAB_SIZE),
+                new ShardedRepository(2), new VersionedRepository(),
+                new DurableInMemoryRepository(new JournalConfig(fDirectory, 1 << 20, 16, 1, 0)));
+        for (var users : repositories) {
+            try (var repository = new WriteBehindRepository(users, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+                final var user = repository.createUser(USER_DTO);
+                repository.updateUser(user.getId(), update(1));
+                final var last = repository.updateUser(user.getId(), update(2));
+                repository.flush();
+                Assertions.assertEquals(0, repository.getPendingCount(), users.getClass().getSimpleName());
+                final var written = users.getUser(user.getId());
+                Assertions.assertEquals("mike2@mark.com", written.getEmail());
+                Assertions.assertEquals(last.getVersion(), written.getVersion(), users.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    void testPendingUpdateIsRebasedOnAWriteMadeElsewhere() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            final var user = repository.createUser(USER_DTO);
+            final var pending = repository.updateUser(user.getId(), update(1));
+            final var elsewhere = fUsers.updateUser(user.getId(), update(2));
+            repository.flush();
+            Assertions.assertEquals(1, repository.getPendingCount());
+            repository.flush();
+            final var written = fUsers.getUser(user.getId());
+            Assertions.assertEquals("mike1@mark.com", written.getEmail());
+            Assertions.assertTrue(written.getVersion() > Math.max(pending.getVersion(), elsewhere.getVersion()));
+        }
+    }
+
+    @Test
+    void testCloseWritesThePendingUpdates() throws Exception {
+        final User user;
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            user = repository.createUser(USER_DTO);
+            repository.updateUser(user.getId(), update(1));
+        }
+        Assertions.assertEquals("mike1@mark.com", fUsers.getUser(user.getId()).getEmail());
+    }
+
+    @Test
+    void testCloseFailsIfThePendingUpdatesCantBeWritten() {
+        final var failure = new IllegalStateException("The database is down.");
+        final var users = new CountingRepository() {
+            @Override
+            public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+                throw failure;
+            }
+        };
+        final var repository = new WriteBehindRepository(users, WINDOW_MILLIS, 100, new SimpleMeterRegistry());
+        final var user = repository.createUser(USER_DTO);
+        repository.updateUser(user.getId(), update(1));
+        final var thrown = Assertions.assertThrows(IllegalStateException.class, repository::close);
+        Assertions.assertSame(failure, thrown.getCause());
+    }
+
+    @Test
+    void testUpdateAfterCloseFails() throws Exception {
+        final var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry());
+        final var user = repository.createUser(USER_DTO);
+        repository.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.updateUser(user.getId(), update(1)));
+        Assertions.assertEquals(0, repository.getPendingCount());
+        Assertions.assertEquals(USER_DTO.getEmail(), fUsers.getUser(user.getId()).getEmail());
+    }
+
+    @Test
+    void testUpdatesAreWrittenThroughWhenTheBufferIsFull() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 1, new SimpleMeterRegistry())) {
+            final var first = repository.createUser(USER_DTO);
+            final var second = repository.createUser(USER_DTO);
+            repository.updateUser(first.getId(), update(1));
+            repository.updateUser(second.getId(), update(2));
+            Assertions.assertEquals(1, repository.getPendingCount());
+            Assertions.assertEquals(1, fUsers.fUpdates.get());
+            Assertions.assertEquals("mike2@mark.com", fUsers.getUser(second.getId()).getEmail());
+        }
+    }
+
+    @Test
+    void testConditionalUpdateIsCheckedAgainstThePendingUpdate() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            final var user = repository.createUser(USER_DTO);
+            final var pending = repository.updateUser(user.getId(), update(1));
+            Assertions.assertThrows(ConcurrentModificationException.class,
+                    () -> repository.updateUser(user.getId(), user.getVersion(), update(2)));
+            final var updated = repository.updateUser(user.getId(), pending.getVersion(), update(3));
+            Assertions.assertEquals(pending.getVersion() + 1, updated.getVersion());
+            Assertions.assertEquals("mike3@mark.com", repository.getUser(user.getId()).getEmail());
+            Assertions.assertEquals(0, repository.getPendingCount());
+        }
+    }
+
+    @Test
+    void testFindByEmailSeesThePendingUpdate() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            final var user = repository.createUser(USER_DTO);
+            repository.updateUser(user.getId(), update(1));
+            Assertions.assertTrue(repository.findByEmail(USER_DTO.getEmail()).isEmpty());
+            final var found = repository.findByEmail("Mike1@mark.com");
+            Assertions.assertEquals(1, found.size());
+            Assertions.assertEquals(user.getVersion() + 1, found.get(0).getVersion());
+            Assertions.assertEquals(1, repository.findByPhone(USER_DTO.getPhone()).size());
+        }
+    }
+
+    @Test
+    void testSearchByNameSeesThePendingRename() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            final var user = repository.createUser(USER_DTO);
+            repository.updateUser(user.getId(), new UpdateUserDto("Anna Doe", USER_DTO.getPhone(), USER_DTO.getEmail()));
+            Assertions.assertTrue(repository.searchByName("selby", 10).isEmpty());
+            final var found = repository.searchByName("doe", 10);
+            Assertions.assertEquals(1, found.size());
+            Assertions.assertEquals("Anna Doe", found.get(0).getName());
+        }
+    }
+
+    @Test
+    void testDeleteDropsThePendingUpdate() throws Exception {
+        try (var repository = new WriteBehindRepository(fUsers, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            final var user = repository.createUser(USER_DTO);
+            repository.updateUser(user.getId(), update(1));
+            repository.deleteUser(user.getId());
+            Assertions.assertThrows(NoSuchElementException.class, () -> repository.getUser(user.getId()));
+            Assertions.assertEquals(0, repository.getPendingCount());
+            Assertions.assertThrows(NoSuchElementException.class, () -> repository.updateUser(user.getId(), update(2)));
+        }
+    }
+
+    @Test
+    void testUpdateOfAUserDeletedWhileItWasReadFails() throws Exception {
+        final var repository = new AtomicReference<WriteBehindRepository>();
+        final var deleteOnRead = new AtomicBoolean();
+        final var users = new CountingRepository() {
+            @Override
+            public User getUser(UUID id) {
+                final var user = super.getUser(id);
+                // The delete runs entirely after the update read the user, before it is queued.
+                if (deleteOnRead.compareAndSet(true, false))
+                    repository.get().deleteUser(id);
+                return user;
+            }
+        };
+        try (var writeBehind = new WriteBehindRepository(users, WINDOW_MILLIS, 100, new SimpleMeterRegistry())) {
+            repository.set(writeBehind);
+            final var user = writeBehind.createUser(USER_DTO);
+            deleteOnRead.set(true);
+            Assertions.assertThrows(NoSuchElementException.class, () -> writeBehind.updateUser(user.getId(), update(1)));
+            Assertions.assertEquals(0, writeBehind.getPendingCount());
+            Assertions.assertThrows(NoSuchElementException.class, () -> writeBehind.getUser(user.getId()));
+        }
+    }
+
+    private static class CountingRepository extends InMemoryRepository {
+
+        private final AtomicInteger fUpdates = new AtomicInteger();
+
+        @Override
+        public User updateUser(UUID id, UpdateUserDto userDto) {
+            fUpdates.incrementAndGet();
+            return super.updateUser(id, userDto);
+        }
+
+        @Override
+        public User updateUserToVersion(UUID id, long expectedVersion, long version, UpdateUserDto userDto) {
+            fUpdates.incrementAndGet();
+            return super.updateUserToVersion(id, expectedVersion, version, userDto);
+        }
+    }
+}